@@ -64,6 +64,30 @@ class Pipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
 		super(props);
 	}
 }
+
+class PipelinePool extends be.fivebyfive.lingua.stanfordcorenlp.PipelinePool {
+	public PipelinePool() {
+		super();
+	}
+}
+
+class PipelineIndex extends be.fivebyfive.lingua.stanfordcorenlp.PipelineIndex {
+	public PipelineIndex() {
+		super();
+	}
+}
+
+class PipelineSegmentWriter extends be.fivebyfive.lingua.stanfordcorenlp.PipelineSegmentWriter {
+	public PipelineSegmentWriter(String path) throws java.io.IOException {
+		super(new java.io.File(path));
+	}
+}
+
+class PipelineSegment extends be.fivebyfive.lingua.stanfordcorenlp.PipelineSegment {
+	public PipelineSegment(String path) throws java.io.IOException {
+		super(new java.io.File(path));
+	}
+}
 __END__
 
 =head1 NAME
@@ -198,6 +222,22 @@ functionality of Lingua::StanfordCoreNLP, run C<make> in the C<src> directory, t
 copy the resulting C<LinguaSCNLP.jar> into C<lib/Lingua/StanfordCoreNLP> before
 doing C<perl Build.PL>.
 
+=head2 Benchmarks
+
+C<src/bench> holds a L<JMH|http://openjdk.java.net/projects/code-tools/jmh/> benchmark
+suite for the Java side: C<Pipeline-E<gt>process>, C<processToJson> and
+C<processColumnar>, plus rendering (C<toString>, C<toCompactString>, C<joinList>),
+C<toHashMap>, C<slice> and C<generateID> on the result classes. A synthetic annotator
+stands in for the CoreNLP models, so the numbers measure the wrapper itself, over
+documents of 1 to 1000 sentences. Put C<jmh-core>, C<jmh-generator-annprocess> and
+their dependencies (C<jopt-simple>, C<commons-math3>) in C<src/jmh>, then run
+
+ $ cd src
+ $ make bench BENCHARGS="-f 1 -wi 3 -i 5"
+
+Anything in C<BENCHARGS> is passed on to JMH (e.g. C<-p sentences=100> or a benchmark
+name pattern).
+
 
 =head1 PREREQUISITES
 
@@ -261,8 +301,81 @@ Collapsed dependencies with processed coordinations using CollapsedCCProcessedDe
 
 The default mode is "processed".
 
+C<lingua.layers> limits what goes into the results to a comma-separated list of
+layers: "pos", "ner", "lemma", "dependencies" and "coref" (by default, all of
+them). Words and sentences are always there; tags of the layers left out are
+undef, and their dependency and coreference lists empty. Conversion of those
+layers is skipped entirely. It does not change which annotators run, so leave
+out of C<annotators> whatever no remaining layer (or annotator) needs, e.g.
+
+ annotators    = tokenize, ssplit, pos, lemma
+ lingua.layers = lemma
+
+C<lingua.threads> sets the number of worker threads used by C<processBatch> and
+C<processAsync>. It defaults to the number of available processors.
+
+C<lingua.sentence-threads> splits a single document across that many threads
+(default 1, i.e. off). After C<ssplit>, the sentence-level annotators (C<pos>,
+C<lemma>, C<ner>, C<regexner> and C<parse>) run over runs of sentences side by
+side on a fork-join pool, one annotator after the other, and C<dcoref> runs once
+they are all done; C<process> also converts the sentences side by side, and
+hands each over, in order, as soon as it and those before it are converted.
+It pays off for long documents with C<parse>; for many small ones,
+C<processBatch> or C<processAsync> keep the threads busier. The pool is shared by
+all calls on the pipeline, so concurrent calls do not multiply its threads.
+
+C<lingua.queue-size> is the number of documents that C<processAsync> lets wait
+for a thread (default 100), and C<lingua.queue-policy> what it does when that
+many are waiting: "block" (the default) until there is room, or "reject".
+
+C<lingua.cache-size>, C<lingua.cache-weight> and C<lingua.cache-dir> turn on
+a cache of C<process> results; see L</PipelineCache>.
+
+C<lingua.sentence-cache-size> turns on a cache of that many individual
+sentences; see L</PipelineSentenceCache>.
+
+C<lingua.chunk-size> is the largest number of characters of new text that
+C<processChunked> annotates at a time (default 20000), and
+C<lingua.chunk-overlap> the number of paragraphs (or sentences) from the
+previous window that are annotated again as context for coreference (default 0,
+i.e. coreference is resolved within each window only).
+
+Three guards keep pathological input from tying up a pipeline. Each is off
+unless set, and each reports itself by name:
+
+=over
+
+=item C<lingua.max-input>
+
+The largest document, in characters, that C<process> and friends accept. Longer
+ones are refused with a C<PipelineGuardException> whose C<getGuard> is
+"max-input".
 
-=head1 EXPORTED CLASS
+=item C<lingua.timeout>
+
+A deadline in milliseconds per document. It is checked before every
+annotator and, for sentence-level annotators, before every sentence; once it has
+passed, annotation stops with a C<PipelineGuardException> ("timeout"). It can not
+interrupt a single annotator working on a single sentence, so combine it with
+the next one (or CoreNLP's own C<parse.maxtime>).
+
+=item C<lingua.max-sentence-length>
+
+Sentences with more tokens than this are not parsed (so they get no
+dependencies), and C<dcoref> is skipped for documents that contain one. Such
+sentences are marked with the guard "max-sentence-length"; see C<getGuard> under
+L</PipelineSentence> and C<getGuards> under L</PipelineList>.
+
+=back
+
+C<lingua.metrics>, if "true", turns on the counters described under
+L</PipelineMetrics>, and registers them with JMX under
+C<lingua.metrics-name> (by default "pipeline-" and a number that is unique
+within the JVM). C<initPipeline> registers them again under the current name,
+or unregisters them if C<lingua.metrics> has been turned off.
+
+
+=head1 EXPORTED CLASSES
 
 Lingua::StanfordCoreNLP exports the following Java-classes via L<Inline::Java>:
 
@@ -293,24 +406,486 @@ lemma, ner, parse, dcoref", and "lingua.dependency-mode" which has the value
 
 Updates annotator options. Expects a C<java.util.Properties> object. If you call
 this after having called C<process>, you will have to call C<initPipeline> to
-update the annotator.
+update the annotator. (C<initPipeline> takes a copy of the properties, so
+changing them has no effect on a pipeline that is already loaded.)
 
 =item getPipeline
 
 Returns a reference to the C<StanfordCoreNLP> pipeline used for annotation.
-You probably won't want to touch this.
+You probably won't want to touch this. (It is built from the same properties
+on first use, and shares its annotators with the pipeline unless
+C<createAnnotator> is overridden; C<process> runs C<getAnnotationPipeline>.)
+
+=item getAnnotationPipeline
+
+Returns the C<AnnotationPipeline> that C<process> runs: one single-annotator
+C<StanfordCoreNLP> per entry in the "annotators" property.
 
 =item initPipeline
 
-Reinitializes the C<StanfordCoreNLP> pipeline used for annotation.
+Reinitializes the C<StanfordCoreNLP> pipeline used for annotation. This is
+done automatically by the first call to C<process>.
+
+=item initPipelineAsync
+
+=item initPipelineAsync($warmupText)
+
+=item initPipelineAsync($warmupText, $rounds)
+
+Loads the annotators in a background thread and returns a
+C<java.util.concurrent.Future> whose C<get> method returns the pipeline once
+it is done. If C<$warmupText> is given, it is annotated and converted
+C<$rounds> times (once by default) after loading, so that the hot code paths
+are compiled before any real documents arrive; this bypasses the caches and
+the metrics. C<process> can be called while this is going on; it will simply
+wait for the models. If a C<process> call gets to load them first, they are
+not loaded again.
+
+=item isReady
+
+Returns true once the annotators are loaded and any warm-up started by
+C<initPipelineAsync> has finished.
+
+=item isLoaded
+
+=item unload
+
+C<isLoaded> tells whether the annotators are loaded. C<unload> lets go of them
+(calls already running finish normally); the next call that needs them loads
+them again.
+
+=item getLoadTimes
+
+Returns a C<java.util.Map> from annotator name to the number of milliseconds
+it took to load, in the order the annotators are listed in "annotators".
+Empty until the pipeline has been loaded.
+
+=item getWarmupTime
+
+Returns the time in milliseconds taken by the warm-up text, or -1 if there
+was none.
 
 =item process($str)
 
 Process a string. Returns a C<Lingua::StanfordCoreNLP::PipelineSentenceList>.
 
+=item process($str, $listener)
+
+Process a string without building a C<PipelineSentenceList>. Each sentence is
+handed to the C<sentence> method of C<$listener> (a C<PipelineListener>) as
+soon as it has been converted, and the CoreNLP annotations behind it are
+released. Finally, the coreference chains of the whole document are passed to
+C<corefChains>. Keeping only what you need of each sentence lets you annotate
+very long documents within a fixed heap.
+
+=item processIncremental($previous, $str)
+
+Process an edited version of a string, given C<$previous>, the result of an
+earlier C<processIncremental> call for it (or undef). Sentences whose text is
+unchanged keep their part-of-speech tags, named entities, lemmas, parses and
+even their C<PipelineToken>s, and only the new or edited ones are run through
+those annotators again. Coreference is still resolved over the whole string,
+and sentence numbers are those of the new string. Each result holds on to the
+annotations of its sentences (parse trees included) for the next call, so let
+go of old results once they have been superseded. Those annotations are not
+serialized: a result read back in is annotated from scratch next time.
+
+ my $result = $pipeline->processIncremental(undef, $text);
+ # ... the user edits $text ...
+ $result = $pipeline->processIncremental($result, $text);
+
+=item getSentenceCache
+
+Returns the C<PipelineSentenceCache> used by C<process>, or undef if sentence
+caching is not enabled.
+
+=item getCache
+
+Returns the C<PipelineCache> used by C<process>, or undef if caching is not
+enabled. Useful for its hit and miss counters.
+
+=item processChunked($str)
+
+=item processChunked($str, $listener)
+
+Like C<process>, but splits C<$str> at paragraph (or, failing that, sentence)
+boundaries into windows of at most C<lingua.chunk-size> characters, and
+annotates them one at a time, so that memory use does not grow with the size
+of the document. The last sentence of each window is annotated again with the
+next one, so that windows meet where the sentence splitter (rather than the
+paragraph and sentence boundaries above) ends a sentence. Sentence numbers,
+including those of coreference mentions, are numbered from the start of the
+whole document. Coreference chains can not span windows unless
+C<lingua.chunk-overlap> is set; if it is, a chain that crosses a window boundary
+is merged with the chain it continues, through the mentions they share in the
+context, and reported once. With a C<$listener>, C<corefChains> may be called
+several times, with the chains that are complete so far.
+
+=item processToJson($str)
+
+Process a string, returning the whole result as a single JSON string. This
+saves the many calls into Java that walking a C<PipelineSentenceList> takes,
+and can be decoded with, e.g., L<JSON::PP> (note that it is a character
+string, not UTF-8 bytes):
+
+ my $result = JSON::PP->new->decode($pipeline->processToJson($text));
+
+ for my $sentence (@{$result->{sentences}}) {
+    for my $token (@{$sentence->{tokens}}) {
+       my ($word, $pos, $ner, $lemma) = @$token;
+    }
+    for my $dep (@{$sentence->{dependencies}}) {
+       my ($relation, $longRelation, $govIndex, $depIndex) = @$dep;
+    }
+ }
+ for my $chain (@{$result->{corefChains}}) {
+    my ($sentNum, $startIndex, $endIndex, $headIndex) = @{$chain->{representative}};
+    my @mentions = @{$chain->{mentions}};   # same format
+ }
+
+Java callers can pass a C<java.lang.Appendable> (such as a C<Writer>) as a
+second argument to have the JSON written to it as the sentences are converted.
+
+=item processColumnar($str)
+
+Process a string, returning a C<PipelineColumnarDocument> instead of a
+C<PipelineSentenceList>. The columnar form holds the same tokens,
+dependencies and coreferences as a few arrays per sentence rather than one
+object per token, and is much cheaper to keep around and to read in bulk.
+
+=item processBatch(\@strs)
+
+Process several strings concurrently on a pool of C<lingua.threads> worker
+threads, all sharing the same loaded C<StanfordCoreNLP> models. Returns an array
+of C<Lingua::StanfordCoreNLP::PipelineSentenceList>s, in the same order as
+C<@strs>. Java callers can also pass a C<java.util.List<String>>, and get a
+C<java.util.List> back.
+
+ my @results = @{$pipeline->processBatch([ $text1, $text2, $text3 ])};
+
+=item processAsync($str)
+
+Queues a string for annotation on a pool of C<lingua.threads> threads, and
+returns a C<java.util.concurrent.CompletableFuture> that completes with the
+C<PipelineSentenceList>. When C<lingua.queue-size> documents are already
+waiting, C<processAsync> either waits for room or returns a future that has
+failed with a C<RejectedExecutionException>, depending on
+C<lingua.queue-policy>. Cancelling the future takes the document off the queue
+or, if annotation has already started, interrupts it.
+
+=item getAsyncPending
+
+The number of documents queued or being annotated by C<processAsync>.
+
+=item getMetrics
+
+Returns a snapshot of the counters kept with C<lingua.metrics> on (see
+L</PipelineMetrics>), as a C<java.util.Map> from name to number. Empty if
+metrics are off and C<processAsync> has not been used.
+
+Once it has, and whether or not metrics are on, the map also covers the two
+stages of C<processAsync>: C<async.queue> (waiting for a thread) and
+C<async.annotate> (being annotated), each with C<.calls>, C<.time-ms>,
+C<.max-ms>, C<.per-second> (calls per second since the pipeline's first
+C<processAsync>, or the last C<resetMetrics>), C<.active> (the current queue
+depth, or documents being annotated) and C<.max-active>. C<async.rejected>
+counts documents turned away by the "reject" C<lingua.queue-policy>.
+
+=item getMetricsString
+
+The same snapshot as text, one "name value" line per counter, which is the
+easiest form to read from Perl:
+
+ my %metrics = map { split / / } split /\n/, $pipeline->getMetricsString;
+ print "parse: $metrics{'stage.parse.time-ms'} ms\n";
+
+=item getMetricsCollector
+
+Returns the live C<PipelineMetrics>, or undef if metrics are off.
+
+=item resetMetrics
+
+Sets all counters back to zero.
+
+=item shutdown
+
+Stops the worker threads used by C<processBatch> and C<processAsync> (documents
+already queued are still annotated). They are restarted when next needed. Also unregisters the metrics MBean, if any.
+
 =back
 
 
+=head2 Lingua::StanfordCoreNLP::PipelinePool
+
+Hands out pipelines by configuration name, for running several annotator
+configurations side by side in one JVM. Every annotator is loaded once and
+shared by all configurations that set it up the same way, i.e. with the same
+C<I<name>.*> properties (and the same properties without dots in their name,
+such as C<encoding>, and those CoreNLP reads for it under another prefix:
+C<ssplit.*> for "tokenize", C<tokenize.*> for "ssplit", C<clean.*> for
+"cleanxml" and C<sutime.*> for "ner"), so a fast indexing profile and a full
+analytics profile hold only one POS tagger between them.
+
+ my $pool = new Lingua::StanfordCoreNLP::PipelinePool();
+ $pool->define('index', $indexProps);   # tokenize, ssplit, pos, lemma
+ $pool->define('full',  $fullProps);    # the defaults
+
+ my $result = $pool->get('index')->process($text);
+
+=over
+
+=item define($name, $properties)
+
+Adds (or replaces) a configuration. A copy of C<$properties> is taken.
+
+=item get($name)
+
+Returns the C<Pipeline> for configuration C<$name>; always the same one. Its
+annotators are loaded when it is first used.
+
+=item evict($name)
+
+=item evictIdle($millis)
+
+Unload one configuration, or every configuration that has not been used for
+C<$millis> milliseconds (C<evictIdle> returns a C<java.util.List> of their
+names), and drop the annotators that no loaded configuration still uses, nor
+one that is being loaded. These are also taken out of StanfordCoreNLP's own
+annotator pool, but annotators that were already there before the pool loaded
+them are left alone. The pipelines stay valid and reload on their next use, so
+it is safe to run C<evictIdle> periodically.
+
+Taking them out of StanfordCoreNLP's pool means reaching into its private
+fields. Where that fails (another CoreNLP version, or a security manager), the
+annotator stays loaded there; this is printed to STDERR and counted in
+C<getReleaseErrors>.
+
+=item getReleaseErrors
+
+=item getLastReleaseError
+
+The number of dropped annotators StanfordCoreNLP may still hold on to, and
+what went wrong with the last one (or undef).
+
+=item getMetrics
+
+=item getMetricsString
+
+A C<java.util.Map> (or "key value" lines) of C<configurations>, C<loaded>
+(configurations), C<annotators>, C<releases> (annotators dropped so far) and
+C<release-errors>.
+
+=item getNames
+
+=item isLoaded($name)
+
+=item getAnnotatorCount
+
+The defined configurations, whether one is loaded, and the number of
+distinct annotators currently held by the pool.
+
+=item shutdown
+
+Unloads everything and stops all worker threads.
+
+=back
+
+
+=head2 Lingua::StanfordCoreNLP::PipelineSegmentWriter
+
+Writes annotated documents into a compact binary segment file, which
+C<Lingua::StanfordCoreNLP::PipelineSegment> can read back without running
+CoreNLP again. Tags and relations are stored once per segment, in symbol
+tables, and everything else in columns of numbers. A segment holds at most
+2GB; start a new one when C<getSize> gets close.
+
+ my $writer = new Lingua::StanfordCoreNLP::PipelineSegmentWriter('corpus-0.seg');
+ $writer->add($pipeline->process($_)) for @texts;
+ $writer->close;
+
+=over
+
+=item add($sentenceList)
+
+Appends a C<PipelineSentenceList>, and returns its document number in the
+segment, counting from 0.
+
+=item endDocument
+
+The writer is also a C<PipelineListener>, so that
+C<$pipeline-E<gt>process($text, $writer)> writes sentences as they come. Call
+C<endDocument> (which returns the document number) after each document.
+
+=item getDocumentCount
+
+=item getSentenceCount
+
+=item getSize
+
+What has been written so far; the size is in bytes.
+
+=item close
+
+Writes the symbol tables and the index. The segment can not be read before.
+
+=back
+
+
+=head2 Lingua::StanfordCoreNLP::PipelineSegment
+
+A segment file, memory-mapped. Opening one only reads its symbol tables;
+documents and sentences are read in place, through C<PipelineSegmentDocument>
+and C<PipelineSegmentSentence> views, as they are asked for. A segment can be
+shared between threads.
+
+ my $segment = new Lingua::StanfordCoreNLP::PipelineSegment('corpus-0.seg');
+ my $result  = $segment->getDocument(42)->toSentenceList;
+
+=over
+
+=item getDocumentCount
+
+=item getSentenceCount
+
+=item getDocument($doc)
+
+The C<PipelineSegmentDocument> with number C<$doc>.
+
+=item getSentence($doc, $i)
+
+=item getSentence($sentence)
+
+A C<PipelineSegmentSentence>, by document number and index in the document,
+or by its number in the whole segment.
+
+=back
+
+
+=head2 Lingua::StanfordCoreNLP::PipelineIndex
+
+An in-memory inverted index over annotated documents, for finding sentences
+by lemma, tag or dependency without walking every C<PipelineSentenceList>.
+Sentences are numbered through the whole index, in the order they were added,
+and every query returns a sorted array of such numbers. Postings are stored
+as variable-length deltas, so a lemma found in neighbouring sentences takes
+about a byte per sentence. Tokens without a lemma (see C<lingua.layers>) are
+indexed by their word. Documents can be added at any time, also while other
+threads are querying.
+
+ my $index = new Lingua::StanfordCoreNLP::PipelineIndex();
+ $index->add($pipeline->process($_)) for @texts;
+
+ # sentences where "Jane" is the subject of "look"
+ my $hits = $index->dependency('nsubj', 'look', 'Jane');
+ my $doc  = $index->getDocument($hits->[0]);
+
+=over
+
+=item add($sentenceList)
+
+Indexes a C<PipelineSentenceList> (say, one read back with
+C<PipelineSegmentDocument-E<gt>toSentenceList>), and returns its document
+number. Like C<PipelineSegmentWriter>, the index is also a
+C<PipelineListener>, with an C<endDocument> method to call after each
+document.
+
+=item lemma($lemma)
+
+=item pos($tag)
+
+=item ner($tag)
+
+The sentences with a token that has the lemma or tag.
+
+=item dependency($relation, $governor, $dependent)
+
+The sentences with a C<$relation> dependency between the lemmas C<$governor>
+and C<$dependent>, either of which can be undef for any.
+
+=item and($sentences1, $sentences2)
+
+The sentences in both of two query results.
+
+=item corefMentions($lemma, $nerTag)
+
+The mentions of each coreference chain that has a mention containing
+C<$lemma>, as arrays of sentence number, start index, end index and head
+index. With C<$nerTag>, only mentions whose head token has that NER tag.
+
+=item getDocument($sentence)
+
+=item getSentenceIndex($sentence)
+
+The document of a sentence, and its index within that document.
+
+=item getDocumentCount
+
+=item getSentenceCount
+
+=item getMetrics
+
+=item getMetricsString
+
+=item resetMetrics
+
+The size of the index (C<documents>, C<sentences>, C<chains>, C<keys> and
+C<posting-bytes>) and, for each kind of query, the number of calls, the
+total and the longest time taken in microseconds, and the number of results,
+as C<query.lemma.calls>, C<query.lemma.time-us>, C<query.lemma.max-us>,
+C<query.lemma.results> and so on. C<getMetricsString> has one "key value"
+line per entry. C<resetMetrics> only resets the query counters.
+
+=back
+
+
+=head2 Concurrency
+
+A single C<Lingua::StanfordCoreNLP::Pipeline> can be shared by any number of
+(Java) threads. The models are loaded exactly once, by whichever call to
+C<process> comes first, and other callers wait for that load instead of
+starting their own. Each call to C<process> uses the annotators and properties
+that were current when it started; a concurrent C<initPipeline> only affects
+calls that start after it has finished.
+
+
+=head2 Server
+
+Each Perl process that loads Lingua::StanfordCoreNLP starts its own JVM and
+loads its own copy of the models. Processes that only need results can
+instead share one long-running C<be.fivebyfive.lingua.stanfordcorenlp.PipelineServer>,
+which keeps a single C<Pipeline> loaded and annotates requests from any
+number of connections concurrently (within C<lingua.threads>,
+C<lingua.queue-size> and C<lingua.queue-policy>, see C<processAsync>). It
+listens on localhost TCP (port 9099 by default) or, on Java 16 and later, on
+a Unix domain socket, and loads the models before it starts listening:
+
+ cd src && make server SERVERARGS="--socket /tmp/corenlp.sock --properties corenlp.properties"
+
+Each connection is read from and answered on its own thread: a virtual
+thread on Java 21 and later (unless started with C<--platform-threads>), so
+that thousands of clients, mostly idle or waiting on I/O of their own, cost
+little. Only C<lingua.threads> documents are annotated at once, however many
+connections there are; the rest wait in the C<processAsync> queue. The
+server's C<getMetricsString> (which C<Lingua::StanfordCoreNLP::Client> also
+returns) adds C<server.intake> (reading requests), C<server.serialize>
+(writing JSON responses) and C<server.connection> to the C<async.queue> and
+C<async.annotate> stages, in the same form, as well as C<server.bytes-in>,
+C<server.bytes-out> and C<server.virtual-threads> (1 or 0).
+
+L<Lingua::StanfordCoreNLP::Client> talks to it without starting a JVM, and
+returns results as decoded C<processToJson> output:
+
+ use Lingua::StanfordCoreNLP::Client;
+
+ my $client = Lingua::StanfordCoreNLP::Client->new(socket => '/tmp/corenlp.sock');
+ my $result = $client->process('Jane looked at the IBM computer.');
+
+Requests and responses are frames of a type byte, a big-endian 32-bit length
+and that many bytes of UTF-8; see F<PipelineServer.java> for the details.
+From Java, C<new PipelineServer($pipeline)> serves an existing pipeline, with
+C<listen($port)> (0 for any free port, see C<getPort>), C<listen($file)> and
+C<stop>.
+
 =head1 JAVA CLASSES
 
 In addition, Lingua::StanfordCoreNLP indirectly exports the following Java-classes,
@@ -328,6 +903,14 @@ and methods for getting and comparing it.
 
 Returns a C<java.util.UUID> object which represents the item's ID.
 
+=item getLongID
+
+Returns the ID folded into a C<long>: its low 64 bits, with the high 64 bits
+mixed in. IDs generated under one C<initializeCounters> (or
+C<randomizeCounters>) setting never share one, and those of different settings
+do not line up, so this is the cheap way to key items; the C<UUID> and string
+forms are only built when asked for.
+
 =item getIDString
 
 Returns the ID as a string.
@@ -336,6 +919,439 @@ Returns the ID as a string.
 
 Returns true if C<$b> has an identical ID to this item.
 
+=item generateID
+
+=item nextID
+
+Static methods returning a fresh ID, as a C<UUID> or as a C<long>. IDs come
+from per-thread blocks of one shared counter, so they are unique across threads
+without locking. C<initializeCounters($least, $most)> and
+C<randomizeCounters> (re)set the counter and the high bits of the C<UUID>.
+
+=item freeze
+
+=item isFrozen
+
+Makes the item (and any lists and items it contains) read-only, or tells if it
+is. Lists have the same two methods.
+
+=item writeTo($out)
+
+=item writeCompactTo($out)
+
+Write the output of C<toString> or C<toCompactString> to C<$out>, a
+C<java.lang.Appendable> (a C<StringBuilder>, or a C<java.io.Writer> to stream
+straight to a file). Nothing is rendered into intermediate strings, so this is
+the way to dump large results. C<PipelineToken> and C<PipelineDependency> also
+take their C<toCompactString> flag as a second argument, and
+C<PipelineSentence> takes C<join>'s separator.
+
+=back
+
+
+=head2 PipelineCache
+
+A cache of C<process> results, keyed by a SHA-1 digest of the text together
+with the properties that can change the result: C<annotators>, those each of
+its annotators reads, C<lingua.dependency-mode>, C<lingua.layers> and
+C<lingua.max-sentence-length>. Pipelines that differ only in their threads,
+caches, metrics, limits or queueing share keys. It is enabled by setting one or both of
+these properties before the pipeline is loaded:
+
+=over
+
+=item lingua.cache-size
+
+Maximum number of cached results kept in memory (default 1000). The least
+recently used result is evicted first.
+
+=item lingua.cache-weight
+
+Maximum total number of tokens in the cached results kept in memory
+(default unlimited).
+
+=item lingua.cache-dir
+
+A directory in which every result is also stored on disk, so that it is still
+available after a restart. Nothing is ever removed from it, except for files
+that can no longer be read (say, after an upgrade that changed the classes).
+Files are only read back into this module's result classes, lists, strings
+and numbers; a file holding anything else is refused, counted as a disk error
+and removed.
+
+=back
+
+Results returned by a caching pipeline are shared between callers, and are
+therefore frozen: trying to change them (for instance with C<addCorefChain>)
+throws an exception. The following methods report on the cache:
+
+=over
+
+=item getHits
+
+=item getDiskHits
+
+=item getMisses
+
+=item getEvictions
+
+Number of lookups found in memory, found on disk, and not found at all, and
+number of results evicted from memory.
+
+=item size
+
+=item getWeight
+
+Number of results, and of tokens in them, currently held in memory.
+
+=item getDiskErrors
+
+=item getLastDiskError
+
+Number of files in C<lingua.cache-dir> that could not be read or written (the
+lookups count as misses), and the exception behind the most recent one.
+
+=item clear
+
+Empties the in-memory cache.
+
+=back
+
+
+=head2 PipelineSentenceCache
+
+A cache of annotated sentences, enabled by setting C<lingua.sentence-cache-size>
+to the number of sentences to keep (least recently used sentences are evicted
+first). When it is on, C<process> splits the text into sentences first, and
+looks each one up by its text (with whitespace normalized). Only sentences that
+are not found are run through the "pos", "lemma", "ner", "regexner" and
+"parse" annotators; found ones get their annotations from the cache. Document
+level annotators like "dcoref" always run over the whole document.
+
+This only has an effect if "ssplit" is among the annotators, and only the
+sentence-local annotators listed above that directly follow it are skipped.
+Sentences taken from the cache get new copies of the tokens and dependencies
+converted the first time round, so their IDs are never shared with another
+document. The cache keeps copies of its own, so the results C<process> returns
+can be changed freely, and "dcoref" gets dependency graphs made anew for each
+document.
+
+=over
+
+=item getHits
+
+=item getMisses
+
+=item getEvictions
+
+=item getHitRate
+
+Number of sentences found and not found in the cache, number of sentences
+evicted, and the fraction of lookups that were hits.
+
+=item size
+
+=item clear
+
+Number of sentences in the cache, and emptying it.
+
+=back
+
+
+=head2 PipelineColumnarDocument
+
+A document returned by C<processColumnar>. All words, lemmas and sentences are
+stored in a single character buffer (see C<getChars>), and all coreference
+mentions in a set of parallel arrays.
+
+=over
+
+=item size
+
+=item get($i)
+
+The number of sentences, and the C<PipelineColumnarSentence> at index C<$i>.
+
+=item getString($start, $end)
+
+The characters from C<$start> to C<$end> of the shared buffer as a string.
+
+=item getChainCount
+
+=item getMentionCount
+
+=item getMentionChains
+
+=item getMentionSentNums
+
+=item getMentionStartIndices
+
+=item getMentionEndIndices
+
+=item getMentionHeadIndices
+
+=item getRepresentativeMentions
+
+The coreference mentions of the document: mention C<$i> belongs to chain
+C<getMentionChains-E<gt>[$i]>, and so on. C<getRepresentativeMentions> gives,
+for each chain, the index of its representative mention. Indices are
+zero-based, as in C<PipelineCorefMention>.
+
+=back
+
+
+=head2 PipelineColumnarSentence
+
+A sentence of a C<PipelineColumnarDocument>, stored as parallel arrays.
+
+=over
+
+=item size
+
+=item getDependencyCount
+
+Number of tokens and of dependencies in the sentence.
+
+=item getSentence
+
+=item getWord($i)
+
+=item getLemma($i)
+
+=item getPOSTag($i)
+
+=item getNERTag($i)
+
+Single values, as strings.
+
+=item getWords
+
+=item getLemmas
+
+=item getPOSTags
+
+=item getNERTags
+
+=item getRelations
+
+Whole columns as arrays of strings.
+
+=item getWordStarts
+
+=item getWordEnds
+
+=item getLemmaStarts
+
+=item getLemmaEnds
+
+Whole columns of offsets into the document's character buffer.
+
+=item getPOSCodes
+
+=item getNERCodes
+
+=item getRelationCodes
+
+Whole columns of tags and relations as C<PipelineSymbolTable> codes (-2 for a
+tag or relation that has no code; C<getPOSTags> and the like still return it).
+
+=item getGovernorIndices
+
+=item getDependentIndices
+
+Token indices of the governor and the dependent of each dependency.
+
+=back
+
+
+=head2 PipelineSegmentDocument
+
+A document of a C<PipelineSegment>.
+
+=over
+
+=item size
+
+=item get($i)
+
+The number of sentences, and the C<PipelineSegmentSentence> at index C<$i>.
+
+=item getID
+
+=item getFirstSentence
+
+The number of the document, and of its first sentence, in the segment.
+
+=item getChainCount
+
+=item getMentionCount($chain)
+
+=item getMention($chain, $i)
+
+=item getRepresentativeMention($chain)
+
+The coreference chains of the document. Mentions are arrays of sentence number,
+start index, end index and head index, as in C<PipelineCorefMention>.
+C<getRepresentativeMention> returns undef for a chain without one.
+
+=item toSentenceList
+
+Copies the whole document into a C<PipelineSentenceList>, as C<process> would
+have returned it.
+
+=back
+
+
+=head2 PipelineSegmentSentence
+
+A sentence of a C<PipelineSegment>, read from the file on every call.
+
+=over
+
+=item size
+
+=item getDependencyCount
+
+=item getSentence
+
+=item getGuard
+
+=item getWord($i)
+
+=item getLemma($i)
+
+=item getPOSTag($i)
+
+=item getNERTag($i)
+
+=item getGovernorIndex($i)
+
+=item getDependentIndex($i)
+
+=item getRelation($i)
+
+=item getLongRelation($i)
+
+As in C<PipelineColumnarSentence>, but for one token or dependency at a time.
+
+=item toSentence
+
+Copies the sentence into a C<PipelineSentence>.
+
+=back
+
+
+=head2 PipelinePostings
+
+The sorted, delta-encoded list of sentence (or chain) numbers behind each key
+of a C<PipelineIndex>: C<add($id)>, C<size>, C<getByteSize> and C<toArray>.
+
+=head2 PipelineIDMap
+
+A map from C<long> IDs to items (see C<toIDMap> under L</PipelineList>), stored
+in primitive arrays.
+
+=over
+
+=item get($id)
+
+=item containsKey($id)
+
+=item put($id, $item)
+
+=item size
+
+=item isEmpty
+
+=item keys
+
+The IDs in the map, as a C<long[]> in no particular order.
+
+=back
+
+
+=head2 PipelineGuardException
+
+The C<RuntimeException> thrown when a document trips C<lingua.max-input> or
+C<lingua.timeout> (see L</PROPERTIES>). C<getGuard> returns "max-input" or
+"timeout".
+
+
+=head2 PipelineMetrics
+
+Counters kept by a pipeline with C<lingua.metrics> on. They survive
+C<initPipeline>, and cost one C<System.nanoTime> pair per annotator and
+document; with metrics off nothing is timed at all. The snapshot returned by
+C<getMetrics> (or C<snapshot> on this class) has the following entries:
+
+=over
+
+=item documents, sentences, tokens, characters
+
+Totals over all documents processed.
+
+=item annotation-time-ms, conversion-time-ms
+
+Wall time spent in the annotators, and in turning their output into
+C<Pipeline*> objects (or columns).
+
+=item tokens-per-second, sentences-per-second
+
+Throughput over the sum of the two.
+
+=item stage.I<name>.calls, stage.I<name>.time-ms, stage.I<name>.max-ms, stage.I<name>.tokens, stage.I<name>.tokens-per-second
+
+Per annotator: number of runs, total and longest wall time, the number of tokens
+it was run over, and those tokens over its time. Sentences taken from the
+sentence cache, or skipped by a guard, are not counted for the annotators that
+did not see them. With C<lingua.sentence-threads>, a sentence-level annotator
+counts one run per document, timed from the start of its first thread to the
+end of its last.
+
+=item document-size.le-I<n>, document-size.gt-1048576
+
+Histogram of document sizes in characters, in buckets of up to 1k, 4k, 16k,
+64k, 256k and 1M characters, and larger.
+
+=back
+
+The same numbers are attributes of the MBean
+C<be.fivebyfive.lingua.stanfordcorenlp:type=PipelineMetrics,name="...">, which
+also has a C<reset> operation.
+
+
+=head2 PipelineSymbolTable
+
+Maps tags and relation names to small integer codes. There is one shared table
+for each kind of label: C<POS_TAGS>, C<NER_TAGS>, C<RELATIONS> and
+C<LONG_RELATIONS>. Codes are stable for the lifetime of the JVM.
+C<PipelineToken> and C<PipelineDependency> keep their labels as codes in these
+tables, so that however many tokens are cached, each tag is stored once.
+
+A table holds at most 4096 symbols (C<DEFAULT_LIMIT>), which real tag sets do
+not come near; collapsed relations such as "prep_of" are more open ended. A
+label that no longer fits gets the code -2 (C<UNCODED>), and is then kept as a
+String by whoever holds it, so nothing is lost.
+
+=over
+
+=item code($symbol)
+
+The code of C<$symbol>, which is added to the table if needed. Returns -1
+(C<NONE>) for an undefined symbol, and -2 if the table is full.
+
+=item find($symbol)
+
+The same, but never adds C<$symbol>.
+
+=item symbol($code)
+
+The symbol for C<$code>.
+
+=item size
+
+The number of symbols in the table.
+
 =back
 
 
@@ -388,13 +1404,19 @@ Get the index of the "head word" of the mention.
 
 Get the index of the sentence in which the mention is found.
 
+=item getTokenView
+
+Get the tokens of the mention as a L</PipelineTokenView> onto its sentence's
+tokens.
+
 =item getTokens
 
-Get the tokens of the mention as a C<PipelineTokenList>.
+The same, as a C<PipelineTokenList>. It is copied out of the view on the first
+call, and the same list is returned after that; C<getTokenView> copies nothing.
 
 =item getHeadToken
 
-Get the head-word token of the mention.
+Get the head-word token of the mention, from its sentence's tokens.
 
 =item toString
 
@@ -403,6 +1425,13 @@ Get a string representation of the mention, of the format "mention [@sentNum:sta
 =back
 
 
+=head2 PipelineTokenView
+
+A read-only C<java.util.List> of the tokens from C<getStart> up to C<getEnd>
+of a C<PipelineTokenList> (C<getTokens>), which it looks into rather than
+copies. C<toTokenList> copies them out; C<toString> joins their words with
+spaces.
+
 =head2 PipelineDependency
 
 Represents a dependency in the Stanford Typed Dependency format.
@@ -436,6 +1465,14 @@ Short name of the relation.
 
 Long description of the relation.
 
+=item getRelationCode
+
+=item getLongRelationCode
+
+The same, as codes in C<PipelineSymbolTable.RELATIONS> and
+C<LONG_RELATIONS>; cheaper to compare when filtering many dependencies. -2 if
+the relation has no code.
+
 =item toCompactString
 
 =item toCompactString($includeIndices)
@@ -478,6 +1515,11 @@ found in the sentence.
 A C<PipelineCorefChainList> of the coreference chains between
 this and other sentences.
 
+=item getGuard
+
+The name of the guard that kept an annotator from this sentence (only ever
+"max-sentence-length"), or undef.
+
 =item toCompactString
 
 =item toString
@@ -489,6 +1531,37 @@ C<toCompactString> separates fields by "\n", whereas C<toString> separates them
 =back
 
 
+=head2 PipelineJsonWriter
+
+A C<PipelineListener> that writes the results it receives, as JSON in the
+format described under C<processToJson>, to a C<java.lang.Appendable>. Call
+C<finish> after the last result to write the coreference chains and close the
+JSON object. The static method C<write($sentenceList, $appendable)> writes a
+complete C<PipelineSentenceList>.
+
+
+=head2 PipelineListener
+
+Interface for receiving the results of C<process($str, $listener)> one
+sentence at a time.
+
+=over
+
+=item sentence($sentence)
+
+Called with each C<PipelineSentence>, in document order. Its C<getCorefChains>
+list is always empty.
+
+=item corefChains($chains)
+
+Called once, after the last sentence, with a C<PipelineCorefChainList> of all
+the coreference chains in the document (once after each window, for
+C<processChunked>). Mention sentence numbers refer to the
+order in which sentences were passed to C<sentence>.
+
+=back
+
+
 =head2 PipelineToken
 
 A token, with POS- and NER-tag and lemma.
@@ -511,6 +1584,13 @@ The token's Named-Entity tag.
 
 The lemma of the the token.
 
+=item getPOSCode
+
+=item getNERCode
+
+The tags as codes in C<PipelineSymbolTable.POS_TAGS> and C<NER_TAGS>, -1 for
+none, or -2 for a tag that has no code.
+
 =item toCompactString
 
 =item toCompactString($lemmaize)
@@ -552,6 +1632,17 @@ Returns a string containing the output of either the C<toString> or
 C<toCompactString> methods of the elements in C<PipelineList>, separated
 by C<$sep>.
 
+=item writeTo($out)
+
+=item writeTo($out, $sep)
+
+=item writeCompactTo($out)
+
+=item writeCompactTo($out, $sep)
+
+Like C<toString> and C<joinList> (or their compact versions), but write to the
+C<java.lang.Appendable> C<$out>; see L</PipelineItem>.
+
 =item toArray
 
 Return the elements of the list as an array-reference.
@@ -561,6 +1652,26 @@ Return the elements of the list as an array-reference.
 Return the list as a C<< java.util.HashMap<String,PipelineItem> >>, with
 items' stringified ID:s as keys.
 
+=item getGuards
+
+C<PipelineSentenceList> only: the names of the guards that tripped while the
+document was annotated, as a C<java.util.List>. C<PipelineColumnarDocument> has
+the same method.
+
+=item view($start, $end)
+
+=item slice($start, $end)
+
+C<PipelineTokenList> only: tokens C<$start> up to (but not including) C<$end>,
+as a L</PipelineTokenView> that shares this list's tokens, or (for C<slice>)
+copied into a new C<PipelineTokenList>. The ends are swapped if C<$end> is
+smaller than C<$start>, and the result is empty if either is out of range.
+
+=item toIDMap
+
+Return the list as a L</PipelineIDMap>, keyed on the items' C<getLongID>.
+This skips building a C<UUID> and a string per item.
+
 =item toCompactString
 
 =item toString
@@ -0,0 +1,161 @@
+package Lingua::StanfordCoreNLP::Client;
+
+use strict;
+use warnings;
+
+use IO::Socket::INET;
+use JSON::PP ();
+
+our $VERSION = '0.11';
+
+# See PipelineServer.java for the protocol.
+
+sub new {
+	my ($class, %args) = @_;
+	my $sock;
+
+	if (defined $args{socket}) {
+		require IO::Socket::UNIX;
+		$sock = IO::Socket::UNIX->new(Peer => $args{socket})
+			or die "Lingua::StanfordCoreNLP::Client: $args{socket}: $!\n";
+	} else {
+		my $host = defined $args{host} ? $args{host} : '127.0.0.1';
+		my $port = defined $args{port} ? $args{port} : 9099;
+		$sock = IO::Socket::INET->new(PeerAddr => $host, PeerPort => $port, Proto => 'tcp')
+			or die "Lingua::StanfordCoreNLP::Client: $host:$port: $@\n";
+	}
+	binmode $sock;
+
+	return bless { sock => $sock, json => JSON::PP->new->utf8 }, $class;
+}
+
+sub process {
+	my ($self, $text) = @_;
+	return $self->{json}->decode($self->_request('J', $text));
+}
+
+sub processToJson {
+	my ($self, $text) = @_;
+	my $json = $self->_request('J', $text);
+	utf8::decode($json);
+	return $json;
+}
+
+sub getMetricsString {
+	my $self = shift;
+	return $self->_request('M', '');
+}
+
+sub ping {
+	my $self = shift;
+	$self->_request('P', '');
+	return 1;
+}
+
+sub close {
+	my $self = shift;
+	CORE::close($self->{sock}) if $self->{sock};
+	delete $self->{sock};
+}
+
+sub _request {
+	my ($self, $type, $body) = @_;
+	my $sock = $self->{sock}
+		or die "Lingua::StanfordCoreNLP::Client: not connected\n";
+
+	utf8::encode($body);
+	print $sock pack('a N/a*', $type, $body)
+		or die "Lingua::StanfordCoreNLP::Client: write: $!\n";
+
+	my ($status, $length) = unpack('a N', _read($sock, 5));
+	my $response = _read($sock, $length);
+
+	if ($status eq 'G') {
+		my ($guard, $message) = split /\t/, $response, 2;
+		utf8::decode($message);
+		die "Lingua::StanfordCoreNLP::Client: $guard: $message\n";
+	} elsif ($status eq 'E') {
+		utf8::decode($response);
+		die "Lingua::StanfordCoreNLP::Client: $response\n";
+	}
+	return $response;
+}
+
+sub _read {
+	my ($sock, $length) = @_;
+	my $buf = '';
+	while (length($buf) < $length) {
+		my $n = read($sock, $buf, $length - length($buf), length($buf));
+		die "Lingua::StanfordCoreNLP::Client: connection closed\n" unless $n;
+	}
+	return $buf;
+}
+
+1;
+
+__END__
+
+=head1 NAME
+
+Lingua::StanfordCoreNLP::Client - Talk to a Lingua::StanfordCoreNLP server
+
+=head1 SYNOPSIS
+
+ # in one process (see PipelineServer in Lingua::StanfordCoreNLP):
+ #   make -C src server SERVERARGS="--socket /tmp/corenlp.sock"
+
+ use Lingua::StanfordCoreNLP::Client;
+
+ my $client = Lingua::StanfordCoreNLP::Client->new(socket => '/tmp/corenlp.sock');
+ my $result = $client->process('Jane looked at the IBM computer.');
+
+ for my $sentence (@{$result->{sentences}}) {
+    print join(' ', map { $_->[0] } @{$sentence->{tokens}}), "\n";
+ }
+
+=head1 DESCRIPTION
+
+A client for C<PipelineServer>, which keeps one Pipeline, with its models
+loaded, in a long-running JVM that any number of processes can share. The
+client does not start a JVM or load Inline::Java.
+
+=over
+
+=item new(host => $host, port => $port)
+
+=item new(socket => $path)
+
+Connects to a server on localhost TCP (by default 127.0.0.1:9099) or on a
+Unix domain socket. Dies if it cannot connect. A client sends one request at
+a time; processes and threads wanting more should each open their own.
+
+=item process($str)
+
+Annotates C<$str> and returns the result as a hash, decoded from the JSON
+described under C<processToJson> in L<Lingua::StanfordCoreNLP>. C<$str> is
+taken as a character string and sent as UTF-8.
+
+=item processToJson($str)
+
+The same, as a JSON string.
+
+=item getMetricsString
+
+The server's C<getMetricsString>: its pipeline's metrics, and the
+C<server.*> and C<async.*> stage counters described under "Server" in
+L<Lingua::StanfordCoreNLP>.
+
+=item ping
+
+=item close
+
+=back
+
+Requests that fail, including those stopped by a guard (see
+C<lingua.max-input> and friends), die with the server's message.
+
+=head1 SEE ALSO
+
+L<Lingua::StanfordCoreNLP>.
+
+=cut
@@ -20,11 +20,43 @@ package be.fivebyfive.lingua.stanfordcorenlp;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.PrintStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
 import java.util.ArrayList;
+import java.text.BreakIterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 import edu.stanford.nlp.dcoref.CorefChain;
@@ -33,6 +65,8 @@ import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
 
 import edu.stanford.nlp.ling.CoreLabel;
 
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
@@ -43,6 +77,7 @@ import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.pipeline.*;
 
 import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.trees.semgraph.SemanticGraph;
 import edu.stanford.nlp.trees.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
@@ -56,13 +91,222 @@ public class Pipeline {
    public final static String DEP_BASIC     = "basic";
    public final static String DEP_COLLAPSED = "collapsed";
    public final static String DEP_PROCESSED = "processed";
+   public final static String THREADS_PROPERTY = "lingua.threads";
+   public final static String SENTENCE_THREADS_PROPERTY = "lingua.sentence-threads";
+   public final static String CHUNK_SIZE_PROPERTY    = "lingua.chunk-size";
+   public final static String CHUNK_OVERLAP_PROPERTY = "lingua.chunk-overlap";
+   public final static int    DEFAULT_CHUNK_SIZE     = 20000;
+   public final static String CACHE_SIZE_PROPERTY    = "lingua.cache-size";
+   public final static String CACHE_WEIGHT_PROPERTY  = "lingua.cache-weight";
+   public final static String CACHE_DIR_PROPERTY     = "lingua.cache-dir";
+   public final static String SENTENCE_CACHE_PROPERTY = "lingua.sentence-cache-size";
+   public final static String METRICS_PROPERTY        = "lingua.metrics";
+   public final static String METRICS_NAME_PROPERTY   = "lingua.metrics-name";
+   public final static String MAX_INPUT_PROPERTY      = "lingua.max-input";
+   public final static String TIMEOUT_PROPERTY        = "lingua.timeout";
+   public final static String MAX_SENTENCE_PROPERTY   = "lingua.max-sentence-length";
+   public final static String QUEUE_SIZE_PROPERTY     = "lingua.queue-size";
+   public final static String QUEUE_POLICY_PROPERTY   = "lingua.queue-policy";
+   public final static String QUEUE_BLOCK             = "block";
+   public final static String QUEUE_REJECT            = "reject";
+   public final static int    DEFAULT_QUEUE_SIZE      = 100;
+   public final static String LAYERS_PROPERTY         = "lingua.layers";
+   public final static String LAYER_POS               = "pos";
+   public final static String LAYER_NER               = "ner";
+   public final static String LAYER_LEMMA             = "lemma";
+   public final static String LAYER_DEPENDENCIES      = "dependencies";
+   public final static String LAYER_COREF             = "coref";
+
+   // what gets converted into the results when lingua.layers is not set;
+   // words and sentence texts always are
+   public final static Set<String> ALL_LAYERS = Collections.unmodifiableSet(new HashSet<String>(
+      Arrays.asList(LAYER_POS, LAYER_NER, LAYER_LEMMA, LAYER_DEPENDENCIES, LAYER_COREF)
+   ));
+
+   // annotators whose work on one sentence does not depend on any other,
+   // and whose results PipelineSentenceCache knows how to restore
+   protected final static List<String> SENTENCE_LOCAL_ANNOTATORS
+      = Collections.unmodifiableList(Arrays.asList("pos", "lemma", "ner", "regexner", "parse"));
+
+   // annotators skipped for sentences longer than lingua.max-sentence-length,
+   // and document-level ones skipped when any sentence was
+   protected final static List<String> LENGTH_GUARDED_ANNOTATORS
+      = Collections.unmodifiableList(Arrays.asList("parse"));
+   protected final static List<String> TREE_DEPENDENT_ANNOTATORS
+      = Collections.unmodifiableList(Arrays.asList("dcoref"));
+
+   // most processToJson() reserves up front; JSON runs to about 8 chars per
+   // char of text, but a large text should not reserve that before the
+   // first token exists
+   protected final static int JSON_CAPACITY = 1 << 20;
+
+   private final static Pattern PARAGRAPH_BREAK = Pattern.compile("\\n[ \\t\\r\\f]*\\n\\s*");
    
-   protected String depMode = DEP_PROCESSED;
-   protected StanfordCoreNLP pipeline = null;
-   protected Properties props = null;
+   protected volatile Properties props = null;
+   protected ExecutorService workers = null;
+   protected AsyncQueue      asyncQueue = null;
+   protected volatile ForkJoinPool sentencePool = null;
+
+   /*
+    * Everything process() needs from initPipeline(), published as one
+    * immutable unit so that a running process() never sees a half-built
+    * annotator or a dependency mode that changed under it.
+    */
+   protected static final class Config {
+      final AnnotationPipeline annotator;
+      final List<String>       names;
+      final List<Annotator>    stages;
+      final Map<String, Long>  loadTimes;
+      final String             depMode;
+      final Set<String>        layers;
+      final boolean            coref;
+      final Properties         props;
+      final String             signature;
+      final PipelineCache      cache;
+
+      final PipelineSentenceCache sentenceCache;
+      // stages [0, splitEnd) run up to and including ssplit, stages
+      // [splitEnd, localEnd) are sentence-local; splitEnd is -1 without ssplit
+      final int                   splitEnd;
+      final int                   localEnd;
+
+      // null (and no timing at all) unless lingua.metrics is on
+      final PipelineMetrics         metrics;
+      final PipelineMetrics.Stage[] stageMetrics;
+
+      // see getPipeline()
+      private StanfordCoreNLP       coreNLP = null;
+
+      // guards; 0 means off
+      final int                     maxInput;
+      final long                    timeout;
+      final int                     maxSentenceLength;
+
+      // sentences of one document annotated side by side; 1 means off
+      final int                     sentenceThreads;
+
+      Config(List<String> names, List<Annotator> stages,
+             Map<String, Long> loadTimes, String depMode, Properties props,
+             PipelineCache cache, PipelineSentenceCache sentenceCache,
+             PipelineMetrics metrics) {
+         this.annotator = new AnnotationPipeline();
+         for (Annotator a : stages) {
+            this.annotator.addAnnotator(a);
+         }
+         this.names     = Collections.unmodifiableList(names);
+         this.stages    = Collections.unmodifiableList(stages);
+         this.loadTimes = Collections.unmodifiableMap(loadTimes);
+         this.depMode   = depMode;
+         this.layers    = layers(props);
+         this.coref     = this.layers.contains(LAYER_COREF);
+         this.props     = props;
+         this.signature = PipelineCache.signature(props);
+         this.cache     = cache;
+
+         int split = names.indexOf("ssplit") + 1;
+         int local = split;
+         while (split > 0 && local < names.size()
+                 && SENTENCE_LOCAL_ANNOTATORS.contains(names.get(local))) {
+            local++;
+         }
+         this.splitEnd      = split > 0 ? split : -1;
+         this.localEnd      = local;
+         this.sentenceCache = this.splitEnd > 0 ? sentenceCache : null;
+
+         this.maxInput          = intProperty(props, MAX_INPUT_PROPERTY, 0);
+         this.timeout           = intProperty(props, TIMEOUT_PROPERTY, 0);
+         this.maxSentenceLength = intProperty(props, MAX_SENTENCE_PROPERTY, 0);
+         this.sentenceThreads   = this.splitEnd > 0
+            ? Math.max(intProperty(props, SENTENCE_THREADS_PROPERTY, 1), 1) : 1;
+
+         this.metrics      = metrics;
+         this.stageMetrics = new PipelineMetrics.Stage[names.size()];
+         if (metrics != null) {
+            for (int i = 0; i < names.size(); i++) {
+               this.stageMetrics[i] = metrics.stage(names.get(i));
+            }
+         }
+      }
+
+      void annotate(Annotation document) {
+         annotate(document, 0, stages.size(), 0);
+      }
+
+      // the tokens of document, or of its sentences if it has no token list
+      private int tokenCount(Annotation document) {
+         List<CoreLabel> tokens = document.get(TokensAnnotation.class);
+         if (tokens != null) {
+            return tokens.size();
+         }
+         int n = 0;
+         List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+         if (sentences != null) {
+            for (CoreMap sentence : sentences) {
+               List<CoreLabel> sentenceTokens = sentence.get(TokensAnnotation.class);
+               n += sentenceTokens != null ? sentenceTokens.size() : 0;
+            }
+         }
+         return n;
+      }
 
+      synchronized StanfordCoreNLP coreNLP() {
+         if (coreNLP == null) {
+            coreNLP = new StanfordCoreNLP(props, false);
+         }
+         return coreNLP;
+      }
+
+      // deadline is a System.nanoTime() value, or 0 for none; it is
+      // checked before each stage
+      void annotate(Annotation document, int from, int to, long deadline) {
+         annotate(document, from, to, deadline, true);
+      }
+
+      // untimed, for callers that time the stage themselves
+      void annotate(Annotation document, int from, int to, long deadline, boolean timed) {
+         for (int i = from; i < to; i++) {
+            if (deadline != 0 && System.nanoTime() - deadline > 0) {
+               throw new PipelineGuardException(
+                  PipelineGuardException.TIMEOUT,
+                  "gave up before " + names.get(i) + " after " + timeout + "ms"
+               );
+            }
+            if (metrics != null && timed) {
+               long start = System.nanoTime();
+               stages.get(i).annotate(document);
+               stageMetrics[i].record(System.nanoTime() - start, tokenCount(document));
+            } else {
+               stages.get(i).annotate(document);
+            }
+         }
+      }
+   }
+
+   private volatile Config  config      = null;
+   private volatile boolean ready       = false;
+   private volatile long    warmupTime  = -1;
+
+   // kept across initPipeline(), so that counters survive a reload
+   private PipelineMetrics  metrics     = null;
+   private String           metricsName = null;
+
+   // numbers the default MBean names, which must not collide
+   private final static AtomicInteger metricsNames = new AtomicInteger();
+
+   /*
+    * A StanfordCoreNLP over the same properties, built on first use. Its
+    * annotators come out of CoreNLP's annotator pool, so unless
+    * createAnnotator() is overridden, they are the ones already loaded.
+    * process() runs getAnnotationPipeline().
+    */
    public StanfordCoreNLP getPipeline() {
-      return pipeline;
+      Config c = config;
+      return c != null ? c.coreNLP() : null;
+   }
+
+   public AnnotationPipeline getAnnotationPipeline() {
+      Config c = config;
+      return c != null ? c.annotator : null;
    }
 
    public Properties getProperties() {
@@ -85,77 +329,809 @@ public class Pipeline {
       }
    }
 
-   public void initPipeline() {
-      String dmode = props.getProperty(DEP_PROPERTY);
-      if (dmode != null) {
-         depMode = props.getProperty(DEP_PROPERTY);
+   public synchronized void initPipeline() {
+      Properties snapshot = new Properties();
+      snapshot.putAll(props);
+
+      List<String>      names     = annotatorNames(snapshot);
+      List<Annotator>   stages    = new ArrayList<Annotator>(names.size());
+      Map<String, Long> loadTimes = new LinkedHashMap<String, Long>();
+
+      for (String name : names) {
+         long start = System.nanoTime();
+         stages.add(createAnnotator(name, snapshot));
+         loadTimes.put(name, (System.nanoTime() - start) / 1000000);
+      }
+
+      String dmode = snapshot.getProperty(DEP_PROPERTY);
+      config = new Config(
+         names,
+         stages,
+         loadTimes,
+         dmode != null ? dmode : DEP_PROCESSED,
+         snapshot,
+         createCache(snapshot),
+         createSentenceCache(snapshot),
+         initMetrics(snapshot)
+      );
+      ready = true;
+   }
+
+   public Future<Pipeline> initPipelineAsync() {
+      return initPipelineAsync(null, 0);
+   }
+
+   public Future<Pipeline> initPipelineAsync(String warmupText) {
+      return initPipelineAsync(warmupText, 1);
+   }
+
+   public Future<Pipeline> initPipelineAsync(final String warmupText, final int rounds) {
+      ready = false;
+      final Config before = config;
+
+      FutureTask<Pipeline> task = new FutureTask<Pipeline>(new Callable<Pipeline>() {
+         public Pipeline call() {
+            Config c;
+            synchronized (Pipeline.this) {
+               // a process() call may have loaded the models in the meantime
+               if (config == before || config == null) {
+                  initPipeline();
+               }
+               ready = false;
+               c = config;
+            }
+            if (warmupText != null) {
+               long start = System.nanoTime();
+               for (int i = 0; i < rounds; i++) {
+                  warmup(c, warmupText);
+               }
+               warmupTime = (System.nanoTime() - start) / 1000000;
+            }
+            ready = true;
+            return Pipeline.this;
+         }
+      });
+
+      Thread t = new Thread(task, "lingua-corenlp-init");
+      t.setDaemon(true);
+      t.start();
+
+      return task;
+   }
+
+   // process(), minus the caches, the metrics and the guards
+   protected void warmup(Config c, String text) {
+      Annotation document = new Annotation(text);
+      c.annotator.annotate(document);
+
+      List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+      if (sentences != null) {
+         for (CoreMap sentence : sentences) {
+            convertSentence(sentence, c.depMode, c.layers);
+         }
+      }
+   }
+
+   public boolean isReady() {
+      return ready;
+   }
+
+   public boolean isLoaded() {
+      return config != null;
+   }
+
+   /*
+    * Lets go of the annotators; the next call that needs them loads them
+    * again. Calls already running finish with the old ones.
+    */
+   public synchronized void unload() {
+      config = null;
+      ready  = false;
+   }
+
+   public Map<String, Long> getLoadTimes() {
+      Config c = config;
+      return c != null ? c.loadTimes : Collections.<String, Long>emptyMap();
+   }
+
+   public long getWarmupTime() {
+      return warmupTime;
+   }
+
+   protected Annotator createAnnotator(String name, Properties props) {
+      return loadAnnotator(name, props);
+   }
+
+   protected static Annotator loadAnnotator(String name, Properties props) {
+      Properties single = new Properties();
+      single.putAll(props);
+      single.setProperty("annotators", name);
+
+      return new StanfordCoreNLP(single, false);
+   }
+
+   protected PipelineCache createCache(Properties props) {
+      String size = props.getProperty(CACHE_SIZE_PROPERTY);
+      String dir  = props.getProperty(CACHE_DIR_PROPERTY);
+      if (size == null && dir == null) {
+         return null;
+      }
+
+      String weight = props.getProperty(CACHE_WEIGHT_PROPERTY);
+      return new PipelineCache(
+         size   != null ? Integer.parseInt(size.trim()) : 1000,
+         weight != null ? Long.parseLong(weight.trim()) : Long.MAX_VALUE,
+         dir    != null ? new File(dir) : null
+      );
+   }
+
+   protected PipelineSentenceCache createSentenceCache(Properties props) {
+      String size = props.getProperty(SENTENCE_CACHE_PROPERTY);
+      return size != null ? new PipelineSentenceCache(Integer.parseInt(size.trim())) : null;
+   }
+
+   private PipelineMetrics initMetrics(Properties props) {
+      if (!Boolean.parseBoolean(props.getProperty(METRICS_PROPERTY, "false").trim())) {
+         if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+         }
+         return null;
+      }
+      if (metricsName == null) {
+         metricsName = "pipeline-" + metricsNames.incrementAndGet();
+      }
+      if (metrics == null) {
+         metrics = new PipelineMetrics();
+      }
+      // again on every reload, in case lingua.metrics-name changed
+      metrics.register(props.getProperty(METRICS_NAME_PROPERTY, metricsName));
+      return metrics;
+   }
+
+   public PipelineMetrics getMetricsCollector() {
+      Config c = config;
+      return c != null ? c.metrics : null;
+   }
+
+   /*
+    * The lingua.metrics counters, and once processAsync() has been used,
+    * the async.queue and async.annotate stages (see PipelineMetrics.Stage)
+    * and async.rejected.
+    */
+   public Map<String, Number> getMetrics() {
+      PipelineMetrics m = getMetricsCollector();
+      AsyncQueue      q;
+      synchronized (this) {
+         q = asyncQueue;
+      }
+      if (q == null) {
+         return m != null ? m.snapshot() : Collections.<String, Number>emptyMap();
+      }
+      Map<String, Number> out = new TreeMap<String, Number>();
+      if (m != null) {
+         out.putAll(m.snapshot());
+      }
+      q.snapshot(out);
+      return Collections.unmodifiableMap(out);
+   }
+
+   // one "key value" line per entry of getMetrics()
+   public String getMetricsString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Number> e : getMetrics().entrySet()) {
+         sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
       }
-      pipeline = new StanfordCoreNLP(props, false);
+      return sb.toString();
+   }
+
+   public void resetMetrics() {
+      PipelineMetrics m = getMetricsCollector();
+      if (m != null) {
+         m.reset();
+      }
+      synchronized (this) {
+         if (asyncQueue != null) {
+            asyncQueue.reset();
+         }
+      }
+   }
+
+   public PipelineSentenceCache getSentenceCache() {
+      Config c = config;
+      return c != null ? c.sentenceCache : null;
+   }
+
+   public PipelineCache getCache() {
+      Config c = config;
+      return c != null ? c.cache : null;
+   }
+
+   protected static List<String> annotatorNames(Properties props) {
+      List<String> names = new ArrayList<String>();
+      for (String name : props.getProperty("annotators", "").split(",")) {
+         name = name.trim();
+         if (name.length() > 0) {
+            names.add(name);
+         }
+      }
+      return names;
+   }
+
+   protected static Set<String> layers(Properties props) {
+      String value = props.getProperty(LAYERS_PROPERTY);
+      if (value == null) {
+         return ALL_LAYERS;
+      }
+
+      Set<String> layers = new HashSet<String>();
+      for (String layer : value.split(",")) {
+         layer = layer.trim();
+         if (layer.length() == 0) {
+            continue;
+         }
+         if (!ALL_LAYERS.contains(layer)) {
+            throw new IllegalArgumentException(
+               "layers(): unknown layer " + layer + " in " + LAYERS_PROPERTY
+               + ", expected some of " + ALL_LAYERS
+            );
+         }
+         layers.add(layer);
+      }
+      return Collections.unmodifiableSet(layers);
+   }
+
+   protected Config getConfig() {
+      Config c = config;
+      if (c == null) {
+         synchronized (this) {
+            c = config;
+            if (c == null) {
+               initPipeline();
+               c = config;
+            }
+         }
+      }
+      return c;
    }
    
    public PipelineSentenceList process(String text) {
-      if (pipeline == null) {
-         initPipeline();
+      Config c = getConfig();
+      String key = null;
+
+      if (c.cache != null) {
+         key = PipelineCache.key(c.signature, text);
+         PipelineSentenceList cached = c.cache.get(key);
+         if (cached != null) {
+            return cached;
+         }
       }
 
-      PipelineSentenceList outList = new PipelineSentenceList();
+      Collector collector = new Collector();
+      process(c, text, collector);
+
+      if (c.cache != null) {
+         c.cache.put(key, collector.outList);
+      }
+      return collector.outList;
+   }//process
+
+   public void process(String text, PipelineListener listener) {
+      process(getConfig(), text, listener);
+   }
+
+   /*
+    * Annotates an edited version of the text behind previous, a result of
+    * an earlier call (or null). Sentences whose text did not change keep
+    * their sentence-local annotations and converted tokens; only the others
+    * go through pos, ner, parse and the like. Document-level annotators
+    * (dcoref) still run over the whole text, so coref chains and sentence
+    * numbers are those of the new text. The result remembers the
+    * annotations of its sentences for the next call.
+    */
+   public PipelineSentenceList processIncremental(PipelineSentenceList previous, String text) {
+      Config c = getConfig();
+      PipelineSentenceCache lookup = previous != null ? previous.incremental : null;
+      PipelineSentenceCache store  = new PipelineSentenceCache(Integer.MAX_VALUE, true);
+
+      Collector collector = new Collector();
+      process(c, text, collector, lookup != null ? lookup : store, store);
+      collector.outList.incremental = store;
+      return collector.outList;
+   }//processIncremental
+
+   protected void process(Config c, String text, PipelineListener listener) {
+      process(c, text, listener, c.sentenceCache, c.sentenceCache);
+   }
+
+   /*
+    * Sentences found in lookup are not annotated again; the ones that are
+    * get added to store, and so do the ones found, if store is another cache.
+    */
+   protected void process(Config c, String text, PipelineListener listener,
+                          PipelineSentenceCache lookup, PipelineSentenceCache store) {
+      checkInput(c, text);
+
       Annotation document = new Annotation(text);
+      Annotated  done     = annotate(c, document, lookup, deadline(c));
+      PipelineSentenceCache.Entry[] reused = done.reused;
 
-      if (document == null) {
-         return null;
+      List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+      List<PipelineTokenList> tokens = new ArrayList<PipelineTokenList>(sentences.size());
+      long conversion = 0;
+      int  tokenCount = 0;
+
+      // the document-level token list would keep every CoreLabel alive
+      // until we are done; the sentences hold their own references
+      document.remove(TokensAnnotation.class);
+
+      // with lingua.sentence-threads, sentences are converted side by side,
+      // and each handed to the listener below, in order, as soon as it is
+      // done; conversion then counts the time spent waiting for them
+      List<ForkJoinTask<PipelineSentence>> converted = null;
+      if (c.sentenceThreads > 1 && sentences.size() > 1) {
+         long start = c.metrics != null ? System.nanoTime() : 0;
+         converted = convertSentences(c, sentences, reused);
+         if (c.metrics != null) {
+            conversion += System.nanoTime() - start;
+         }
+      }
+
+      try {
+         for (int i = 0; i < sentences.size(); i++) {
+            CoreMap sentence = sentences.get(i);
+            PipelineSentence ps;
+
+            if (reused != null && reused[i] != null) {
+               ps = reused[i].sentence(sentence.get(TextAnnotation.class));
+               if (store != null && store != lookup) {
+                  store.put(sentence, reused[i]);
+               }
+            } else {
+               long start = c.metrics != null ? System.nanoTime() : 0;
+               ps = converted != null
+                  ? converted.get(i).join()
+                  : convertSentence(sentence, c.depMode, c.layers);
+               if (c.metrics != null) {
+                  conversion += System.nanoTime() - start;
+               }
+               if (done.isTooLong(i)) {
+                  ps.setGuard(PipelineGuardException.MAX_SENTENCE_LENGTH);
+               } else if (reused != null && store != null) {
+                  store.put(sentence, ps);
+               }
+            }
+            tokens.add(ps.getTokens());
+            tokenCount += ps.getTokens().size();
+            releaseSentence(sentence);
+            listener.sentence(ps);
+         }//for -- SentenceAnnotation
+      } finally {
+         // a failed conversion, or listener, leaves the rest unwanted
+         if (converted != null) {
+            cancelAll(converted);
+         }
+      }
+
+      long start = c.metrics != null ? System.nanoTime() : 0;
+      PipelineCorefChainList chains = c.coref
+         ? convertCorefChains(document.get(CorefChainAnnotation.class), tokens)
+         : new PipelineCorefChainList();
+      if (c.metrics != null) {
+         conversion += System.nanoTime() - start;
+         c.metrics.document(text.length(), sentences.size(), tokenCount, conversion);
+      }
+      listener.corefChains(chains);
+   }//process
+
+   /*
+    * What annotate() did beyond running every annotator over the whole
+    * document: the sentence cache entry used for each sentence (or null),
+    * and which sentences were too long to parse. Null arrays mean none.
+    */
+   protected static final class Annotated {
+      PipelineSentenceCache.Entry[] reused  = null;
+      boolean[]                     tooLong = null;
+
+      boolean isTooLong(int i) {
+         return tooLong != null && tooLong[i];
+      }
+
+      // whether sentence i still needs a sentence-local stage; guarded
+      // for one that leaves out the too long ones
+      boolean needs(int i, boolean guarded) {
+         return (reused == null || reused[i] == null) && !(guarded && isTooLong(i));
+      }
+   }
+
+   protected static void checkInput(Config c, String text) {
+      if (c.maxInput > 0 && text.length() > c.maxInput) {
+         throw new PipelineGuardException(
+            PipelineGuardException.MAX_INPUT,
+            text.length() + " characters, the limit is " + c.maxInput
+         );
+      }
+   }
+
+   protected static long deadline(Config c) {
+      return c.timeout > 0 ? System.nanoTime() + c.timeout * 1000000L : 0;
+   }
+
+   protected Annotated annotate(Config c, Annotation document, boolean reuse, long deadline) {
+      return annotate(c, document, reuse ? c.sentenceCache : null, deadline);
+   }
+
+   /*
+    * With no sentence cache and no guards, simply runs every annotator over
+    * the document. Otherwise, runs the annotators up to ssplit, restores the
+    * sentence-local annotations of every sentence found in cache (if not
+    * null), and runs each sentence-local annotator over
+    * the sentences that still need it: not the cached ones, and not, for
+    * parse, those longer than lingua.max-sentence-length. With a deadline,
+    * they go one sentence at a time, so that it is checked between
+    * sentences. The document-level annotators (dcoref) come last, over the
+    * whole document, unless some sentence went without a parse.
+    *
+    * With lingua.sentence-threads, each sentence-local annotator runs on a
+    * fork-join pool instead, over runs of sentences side by side, and the
+    * next one starts once they are all done; its stage metrics get the
+    * elapsed time of the whole, not the sum of the runs. dcoref comes last,
+    * as above.
+    */
+   protected Annotated annotate(final Config c, final Annotation document,
+                                PipelineSentenceCache cache, final long deadline) {
+      final Annotated done = new Annotated();
+
+      if (c.splitEnd < 0 || (cache == null && c.maxSentenceLength <= 0 && deadline == 0
+                             && c.sentenceThreads == 1)) {
+         c.annotate(document, 0, c.stages.size(), deadline);
+         return done;
+      }
+      c.annotate(document, 0, c.splitEnd, deadline);
+
+      final List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+      int                 n         = sentences.size();
+      boolean             anyLong   = false;
+
+      if (cache != null) {
+         done.reused = new PipelineSentenceCache.Entry[n];
+         for (int i = 0; i < n; i++) {
+            done.reused[i] = cache.restore(sentences.get(i));
+         }
+      }
+      if (c.maxSentenceLength > 0) {
+         done.tooLong = new boolean[n];
+         for (int i = 0; i < n; i++) {
+            done.tooLong[i] = (done.reused == null || done.reused[i] == null)
+               && sentences.get(i).get(TokensAnnotation.class).size() > c.maxSentenceLength;
+            anyLong |= done.tooLong[i];
+         }
+      }
+
+      for (int stage = c.splitEnd; stage < c.localEnd; stage++) {
+         if (c.sentenceThreads > 1 && n > 1) {
+            final int     s       = stage;
+            final boolean guarded = anyLong && LENGTH_GUARDED_ANNOTATORS.contains(c.names.get(stage));
+            long          start   = System.nanoTime();
+            forkJoin(c, n, new SentenceWork() {
+               public void run(int from, int to) {
+                  annotateStage(c, document, sentences, s, from, to, done, guarded, deadline, false);
+               }
+            });
+            if (c.metrics != null) {
+               int tokenCount = 0;
+               for (int i = 0; i < n; i++) {
+                  if (done.needs(i, guarded)) {
+                     tokenCount += sentences.get(i).get(TokensAnnotation.class).size();
+                  }
+               }
+               c.stageMetrics[stage].record(System.nanoTime() - start, tokenCount);
+            }
+         } else {
+            boolean guarded = anyLong && LENGTH_GUARDED_ANNOTATORS.contains(c.names.get(stage));
+            annotateStage(c, document, sentences, stage, 0, n, done, guarded, deadline, true);
+         }
+      }//for -- sentence-local stages
+
+      for (int stage = c.localEnd; stage < c.stages.size(); stage++) {
+         if (!(anyLong && TREE_DEPENDENT_ANNOTATORS.contains(c.names.get(stage)))) {
+            c.annotate(document, stage, stage + 1, deadline);
+         }
+      }
+      return done;
+   }//annotate
+
+   // a sentence-local stage of annotate(), over sentences [from, to); guarded
+   // leaves out those too long for it
+   private static void annotateStage(Config c, Annotation document, List<CoreMap> sentences, int stage,
+                                     int from, int to, Annotated done, boolean guarded, long deadline,
+                                     boolean timed) {
+      List<CoreMap> todo = new ArrayList<CoreMap>(to - from);
+      for (int i = from; i < to; i++) {
+         if (done.needs(i, guarded)) {
+            todo.add(sentences.get(i));
+         }
+      }
+
+      if (deadline != 0) {
+         for (CoreMap sentence : todo) {
+            c.annotate(subset(document, Collections.singletonList(sentence)), stage, stage + 1, deadline, timed);
+         }
+      } else if (todo.size() == sentences.size()) {
+         c.annotate(document, stage, stage + 1, 0, timed);
+      } else if (!todo.isEmpty()) {
+         c.annotate(subset(document, todo), stage, stage + 1, 0, timed);
+      }
+   }
+
+   // the sentence maps are shared, so annotations land in document
+   private static Annotation subset(Annotation document, List<CoreMap> sentences) {
+      List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+      for (CoreMap sentence : sentences) {
+         tokens.addAll(sentence.get(TokensAnnotation.class));
+      }
+      Annotation partial = new Annotation(document.get(TextAnnotation.class));
+      partial.set(TokensAnnotation.class, tokens);
+      partial.set(SentencesAnnotation.class, sentences);
+      return partial;
+   }
+
+   /*
+    * Starts converting every sentence not in reused (which may be null) on
+    * the sentence pool, one task each, and returns the tasks, with null for
+    * the reused ones; join() them in order to hand each over once it is done.
+    */
+   protected List<ForkJoinTask<PipelineSentence>> convertSentences(final Config c, List<CoreMap> sentences,
+                                                                   PipelineSentenceCache.Entry[] reused) {
+      ForkJoinPool pool = sentencePool(c);
+      List<ForkJoinTask<PipelineSentence>> converted
+         = new ArrayList<ForkJoinTask<PipelineSentence>>(sentences.size());
+      for (int i = 0; i < sentences.size(); i++) {
+         if (reused != null && reused[i] != null) {
+            converted.add(null);
+            continue;
+         }
+         final CoreMap sentence = sentences.get(i);
+         converted.add(pool.submit(new Callable<PipelineSentence>() {
+            public PipelineSentence call() {
+               return convertSentence(sentence, c.depMode, c.layers);
+            }
+         }));
+      }
+      return converted;
+   }
+
+   protected PipelineSentence convertSentence(CoreMap sentence, String depMode) {
+      return convertSentence(sentence, depMode, ALL_LAYERS);
+   }
+
+   // layers left out are null in the tokens, or empty
+   protected PipelineSentence convertSentence(CoreMap sentence, String depMode, Set<String> layers) {
+      String str = sentence.get(TextAnnotation.class);
+      PipelineTokenList ptl = new PipelineTokenList();
+      PipelineDependencyList pel = new PipelineDependencyList();
+      boolean withPOS   = layers.contains(LAYER_POS);
+      boolean withNER   = layers.contains(LAYER_NER);
+      boolean withLemma = layers.contains(LAYER_LEMMA);
+
+      for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+         String word = token.get(TextAnnotation.class);
+         String pos = withPOS ? token.get(PartOfSpeechAnnotation.class) : null;
+         String ner = withNER ? token.get(NamedEntityTagAnnotation.class) : null;
+         String lemma = withLemma ? token.get(LemmaAnnotation.class) : null;
+
+         ptl.add(new PipelineToken(word, pos, ner, lemma));
       }
 
-      pipeline.annotate(document);
+      SemanticGraph dependencies = layers.contains(LAYER_DEPENDENCIES)
+         ? dependencyGraph(sentence, depMode) : null;
+
+      if (dependencies != null) {
+         for (SemanticGraphEdge edge : dependencies.edgeListSorted()) {
+            GrammaticalRelation rel = edge.getRelation();
+
+            int govTokenIndex = edge.getGovernor().index() - 1;
+            int depTokenIndex = edge.getDependent().index() - 1;
+
+            if (govTokenIndex >= 0 && depTokenIndex >= 0
+                    && govTokenIndex < ptl.size()
+                    && depTokenIndex < ptl.size()) {
+               pel.add(new PipelineDependency(
+                       ptl.get(govTokenIndex),
+                       ptl.get(depTokenIndex),
+                       govTokenIndex,
+                       depTokenIndex,
+                       rel));
+            } else {
+               System.err.println(
+                  "Index of " + edge.toString() + " out of range!"
+               );
+            }
+         }
+      }
+      return new PipelineSentence(str, ptl, pel);
+   }//convertSentence
+
+   protected static SemanticGraph dependencyGraph(CoreMap sentence, String depMode) {
+      // (one get() per key type; a conditional expression over the three
+      // classes does not type-check with Java 8 inference)
+      if (depMode.equals(DEP_BASIC)) {
+         return sentence.get(BasicDependenciesAnnotation.class);
+      } else if (depMode.equals(DEP_COLLAPSED)) {
+         return sentence.get(CollapsedDependenciesAnnotation.class);
+      }
+      return sentence.get(CollapsedCCProcessedDependenciesAnnotation.class);
+   }
+
+   public String processToJson(String text) {
+      StringBuilder out = new StringBuilder((int)Math.min(text.length() * 8L, JSON_CAPACITY));
+      processToJson(text, out);
+      return out.toString();
+   }
+
+   public void processToJson(String text, Appendable out) {
+      PipelineJsonWriter writer = new PipelineJsonWriter(out);
+      process(text, writer);
+      writer.finish();
+   }
+
+   public PipelineColumnarDocument processColumnar(String text) {
+      Config c = getConfig();
+      checkInput(c, text);
+
+      Annotation document = new Annotation(text);
+      Annotated  done     = annotate(c, document, false, deadline(c));
+
+      long start = c.metrics != null ? System.nanoTime() : 0;
+      int  tokenCount = 0;
+      boolean withPOS   = c.layers.contains(LAYER_POS);
+      boolean withNER   = c.layers.contains(LAYER_NER);
+      boolean withLemma = c.layers.contains(LAYER_LEMMA);
+      boolean withDeps  = c.layers.contains(LAYER_DEPENDENCIES);
+      PipelineColumnarDocument doc = new PipelineColumnarDocument();
+      if (done.tooLong != null) {
+         for (boolean tooLong : done.tooLong) {
+            if (tooLong) {
+               doc.addGuard(PipelineGuardException.MAX_SENTENCE_LENGTH);
+               break;
+            }
+         }
+      }
 
       for (CoreMap sentence : document.get(SentencesAnnotation.class)) {
+         List<CoreLabel> labels = sentence.get(TokensAnnotation.class);
+         int n = labels.size();
+         tokenCount += n;
+
+         int[]   wordStart  = new int[n];
+         int[]   wordEnd    = new int[n];
+         int[]   lemmaStart = new int[n];
+         int[]   lemmaEnd   = new int[n];
+         short[] posCodes   = new short[n];
+         short[] nerCodes   = new short[n];
+         String[][] uncoded = new String[3][];
+
          String str = sentence.get(TextAnnotation.class);
-         PipelineTokenList ptl = new PipelineTokenList();
-         PipelineDependencyList pel = new PipelineDependencyList();
+         int sentenceStart = doc.append(str);
+         int sentenceEnd   = str != null ? sentenceStart + str.length() : -1;
 
-         for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
-            String word = token.get(TextAnnotation.class);
-            String pos = token.get(PartOfSpeechAnnotation.class);
-            String ner = token.get(NamedEntityTagAnnotation.class);
-            String lemma = token.get(LemmaAnnotation.class);
+         for (int i = 0; i < n; i++) {
+            CoreLabel token = labels.get(i);
+            String word  = token.get(TextAnnotation.class);
+            String lemma = withLemma ? token.get(LemmaAnnotation.class) : null;
 
-            ptl.add(new PipelineToken(word, pos, ner, lemma));
+            wordStart[i]  = doc.append(word);
+            wordEnd[i]    = word != null ? wordStart[i] + word.length() : -1;
+            if (lemma != null && lemma.equals(word)) {
+               lemmaStart[i] = wordStart[i];
+               lemmaEnd[i]   = wordEnd[i];
+            } else {
+               lemmaStart[i] = doc.append(lemma);
+               lemmaEnd[i]   = lemma != null ? lemmaStart[i] + lemma.length() : -1;
+            }
+            posCodes[i] = withPOS
+               ? code(PipelineSymbolTable.POS_TAGS, token.get(PartOfSpeechAnnotation.class), uncoded, 0, i, n)
+               : PipelineSymbolTable.NONE;
+            nerCodes[i] = withNER
+               ? code(PipelineSymbolTable.NER_TAGS, token.get(NamedEntityTagAnnotation.class), uncoded, 1, i, n)
+               : PipelineSymbolTable.NONE;
          }
 
-         SemanticGraph dependencies = sentence.get(
-            depMode.equals(DEP_BASIC)
-                 ? BasicDependenciesAnnotation.class
-                 : depMode.equals(DEP_COLLAPSED)
-                     ? CollapsedDependenciesAnnotation.class
-                     : CollapsedCCProcessedDependenciesAnnotation.class
-         );
+         SemanticGraph dependencies = withDeps ? dependencyGraph(sentence, c.depMode) : null;
+         int     depCount = 0;
+         int[]   govs     = new int[0];
+         int[]   deps     = new int[0];
+         short[] rels     = new short[0];
 
          if (dependencies != null) {
-            for (SemanticGraphEdge edge : dependencies.edgeListSorted()) {
-               GrammaticalRelation rel = edge.getRelation();
+            List<SemanticGraphEdge> edges = dependencies.edgeListSorted();
+            govs = new int[edges.size()];
+            deps = new int[edges.size()];
+            rels = new short[edges.size()];
 
+            for (SemanticGraphEdge edge : edges) {
                int govTokenIndex = edge.getGovernor().index() - 1;
                int depTokenIndex = edge.getDependent().index() - 1;
 
                if (govTokenIndex >= 0 && depTokenIndex >= 0
-                       && govTokenIndex < ptl.size()
-                       && depTokenIndex < ptl.size()) {
-                  pel.add(new PipelineDependency(
-                          ptl.get(govTokenIndex),
-                          ptl.get(depTokenIndex),
-                          govTokenIndex,
-                          depTokenIndex,
-                          rel));
-               } else {
-                  System.err.println(
-                     "Index of " + edge.toString() + " out of range!"
-                  );
+                       && govTokenIndex < n && depTokenIndex < n) {
+                  govs[depCount] = govTokenIndex;
+                  deps[depCount] = depTokenIndex;
+                  rels[depCount] = PipelineDependency.relationCode(edge.getRelation());
+                  if (rels[depCount] == PipelineSymbolTable.UNCODED) {
+                     code(PipelineSymbolTable.RELATIONS, edge.getRelation().toString(), uncoded, 2, depCount, edges.size());
+                  }
+                  depCount++;
                }
             }
          }
-         outList.add(new PipelineSentence(str, ptl, pel));
+
+         doc.addSentence(new PipelineColumnarSentence(
+            doc, sentenceStart, sentenceEnd,
+            wordStart, wordEnd, lemmaStart, lemmaEnd, posCodes, nerCodes,
+            depCount, govs, deps, rels,
+            uncoded[0], uncoded[1], uncoded[2]
+         ));
+         releaseSentence(sentence);
       }//for -- SentenceAnnotation
-      Map<Integer, CorefChain> graph = document.get(CorefChainAnnotation.class);
 
+      Map<Integer, CorefChain> graph = c.coref ? document.get(CorefChainAnnotation.class) : null;
+      if (graph != null) {
+         for (CorefChain crc : graph.values()) {
+            CorefMention rm = crc.getRepresentativeMention();
+            if (rm == null) {
+               continue;
+            }
+            int chain = doc.addChain();
+            boolean repSeen = false;
+            for (CorefMention cm : crc.getMentionsInTextualOrder()) {
+               doc.addMention(chain, cm.sentNum - 1, cm.startIndex - 1,
+                  cm.endIndex - 1, cm.headIndex - 1, cm == rm);
+               repSeen |= cm == rm;
+            }
+            if (!repSeen) {
+               doc.addMention(chain, rm.sentNum - 1, rm.startIndex - 1,
+                  rm.endIndex - 1, rm.headIndex - 1, true);
+            }
+         }
+      }
+
+      doc.finish();
+      if (c.metrics != null) {
+         c.metrics.document(text.length(), doc.size(), tokenCount, System.nanoTime() - start);
+      }
+      return doc;
+   }//processColumnar
+
+   // the code of symbol in table; one without a code is kept in
+   // uncoded[column][i], in a column of n allocated on first use
+   private static short code(PipelineSymbolTable table, String symbol,
+                             String[][] uncoded, int column, int i, int n) {
+      short code = table.code(symbol);
+      if (code == PipelineSymbolTable.UNCODED) {
+         if (uncoded[column] == null) {
+            uncoded[column] = new String[n];
+         }
+         uncoded[column][i] = symbol;
+      }
+      return code;
+   }
+
+   protected PipelineCorefChainList convertCorefChains(
+           Map<Integer, CorefChain> graph,
+           List<PipelineTokenList> tokens) {
+      return convertCorefChains(graph, tokens, 0);
+   }
+
+   /*
+    * Mentions index into tokens with their own sentence numbers, but are
+    * numbered sentOffset sentences further into the document.
+    */
+   protected PipelineCorefChainList convertCorefChains(
+           Map<Integer, CorefChain> graph,
+           List<PipelineTokenList> tokens,
+           int sentOffset) {
+      PipelineCorefChainList chains = new PipelineCorefChainList();
 
       if (graph != null) {
          for (CorefChain crc : graph.values()) {
@@ -164,33 +1140,660 @@ public class Pipeline {
             
             if (rm != null) {
                PipelineCorefChain crChain = new PipelineCorefChain();
-               PipelineCorefMention repRef = PipelineCorefMention.fromMention(rm);               
+               PipelineCorefMention repRef = PipelineCorefMention.fromMention(rm, sentOffset);
+               PipelineTokenList repTokens = tokens.get(repRef.getSentNum() - sentOffset);
                repRef.setTokens(
-                    outList.get(repRef.getSentNum()).getTokens()
-                       .slice(repRef.getStartIndex(), repRef.getEndIndex())
-               );
-               repRef.setHeadToken( 
-                    outList
-                       .get(repRef.getSentNum())
-                       .getTokens()
-                       .get(repRef.getHeadIndex())
+                    repTokens.view(repRef.getStartIndex(), repRef.getEndIndex())
                );
                crChain.setRepresentativeMention(repRef);
                if (crms.size() > 0) {
                   for (CorefMention cm: crms) {
-                     PipelineCorefMention cr = PipelineCorefMention.fromMention(cm);
+                     PipelineCorefMention cr = PipelineCorefMention.fromMention(cm, sentOffset);
                      cr.setTokens(
-                        outList.get(cr.getSentNum()).getTokens()
-                           .slice(cr.getStartIndex(), cr.getEndIndex())
+                        tokens.get(cr.getSentNum() - sentOffset)
+                           .view(cr.getStartIndex(), cr.getEndIndex())
                      );
                      crChain.addMention(cr);
                   }
                }
-               outList.get(repRef.getSentNum()).addCorefChain(crChain);
+               chains.add(crChain);
             }//if(rm
          }//for
       }//if(graph
 
-      return outList;
-   }//process
+      return chains;
+   }//convertCorefChains
+
+   /*
+    * Drops the heavy per-sentence annotations once a sentence has been
+    * converted. dcoref has already run, and the coref chains only refer to
+    * sentences and tokens by index.
+    */
+   protected static void releaseSentence(CoreMap sentence) {
+      sentence.remove(TokensAnnotation.class);
+      sentence.remove(TreeAnnotation.class);
+      sentence.remove(BasicDependenciesAnnotation.class);
+      sentence.remove(CollapsedDependenciesAnnotation.class);
+      sentence.remove(CollapsedCCProcessedDependenciesAnnotation.class);
+   }
+
+   public PipelineSentenceList processChunked(String text) {
+      Collector collector = new Collector();
+      processChunked(text, collector);
+      return collector.outList;
+   }
+
+   /*
+    * Annotates text one window at a time. Windows are made up of whole
+    * paragraphs (or sentences, if a paragraph is too large) and hold at most
+    * lingua.chunk-size characters of new text. The last sentence of a window
+    * is held back and annotated again at the start of the next one, so that
+    * windows meet where the sentence splitter, not splitSegments(), put a
+    * boundary. With lingua.chunk-overlap set, each window is preceded by the
+    * sentences of that many segments before it, so that coreference can
+    * reach back across the boundary; sentences from that context have
+    * already been emitted and are only used to resolve mentions. A chain
+    * that reaches into the next window's context is held back as well, and
+    * merged with the chains found there that share a mention with it.
+    */
+   public void processChunked(String text, PipelineListener listener) {
+      Config c       = getConfig();
+      int    size    = intProperty(c.props, CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+      int    overlap = intProperty(c.props, CHUNK_OVERLAP_PROPERTY, 0);
+
+      checkInput(c, text);
+      long deadline = deadline(c);
+
+      List<String> segments = splitSegments(text, size);
+      int[]        bounds   = new int[segments.size() + 1];
+      for (int i = 0; i < segments.size(); i++) {
+         bounds[i + 1] = bounds[i] + segments.get(i).length();
+      }
+
+      // the sentences emitted by the previous window, and where they begin
+      List<PipelineTokenList>  recent       = new ArrayList<PipelineTokenList>();
+      List<Integer>            recentBegins = new ArrayList<Integer>();
+      List<PipelineCorefChain> pending      = new ArrayList<PipelineCorefChain>();
+      int                      emitted    = 0;
+      int                      pos        = 0;
+      int                      seg        = 0;
+      int                      tokenCount = 0;
+      long                     conversion = 0;
+
+      while (pos < text.length()) {
+         while (bounds[seg + 1] <= pos) {
+            seg++;
+         }
+
+         // the context starts at a sentence of the previous window, no
+         // earlier than the lingua.chunk-overlap-th segment before pos
+         int ctxFrom  = recent.size();
+         int ctxLimit = Math.max(
+            bounds[Math.max((pos > bounds[seg] ? seg + 1 : seg) - overlap, 0)],
+            pos - size / 2
+         );
+         while (overlap > 0 && ctxFrom > 0 && recentBegins.get(ctxFrom - 1) >= ctxLimit) {
+            ctxFrom--;
+         }
+         int ctxBegin = ctxFrom < recent.size() ? recentBegins.get(ctxFrom) : pos;
+         int ctxLen   = pos - ctxBegin;
+
+         // chains that do not reach into the context are complete
+         int ctxFirst = emitted - (recent.size() - ctxFrom);
+         PipelineCorefChainList complete = new PipelineCorefChainList();
+         for (Iterator<PipelineCorefChain> it = pending.iterator(); it.hasNext(); ) {
+            PipelineCorefChain chain = it.next();
+            if (lastSentence(chain) < ctxFirst) {
+               complete.add(chain);
+               it.remove();
+            }
+         }
+         if (!complete.isEmpty()) {
+            listener.corefChains(complete);
+         }
+
+         int end = seg + 1;
+         while (end < segments.size() && bounds[end + 1] - pos <= size) {
+            end++;
+         }
+         boolean last = end == segments.size();
+
+         Annotation document = new Annotation(text.substring(ctxBegin, bounds[end]));
+         Annotated  done     = annotate(c, document, false, deadline);
+         document.remove(TokensAnnotation.class);
+         long convStart = c.metrics != null ? System.nanoTime() : 0;
+
+         // a sentence is context if it ends inside it; one that starts there
+         // but runs past pos is emitted again, as a whole
+         List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+         int ctxCount = 0;
+         for (CoreMap sentence : sentences) {
+            Integer sentEnd = sentence.get(CharacterOffsetEndAnnotation.class);
+            if (sentEnd == null || sentEnd > ctxLen) {
+               break;
+            }
+            ctxCount++;
+         }
+         int     newCount = sentences.size() - ctxCount;
+         Integer heldBegin = !last && newCount > 1
+            ? sentences.get(sentences.size() - 1).get(CharacterOffsetBeginAnnotation.class)
+            : null;
+         if (heldBegin != null) {
+            newCount--;
+         }
+
+         List<PipelineTokenList> windowTokens = new ArrayList<PipelineTokenList>(sentences.size());
+         List<PipelineTokenList> newRecent    = new ArrayList<PipelineTokenList>(newCount);
+         List<Integer>           newBegins    = new ArrayList<Integer>(newCount);
+         for (int i = 0; i < sentences.size(); i++) {
+            CoreMap sentence = sentences.get(i);
+            int    known    = recent.size() - ctxCount + i;
+
+            if (i < ctxCount) {
+               // reuse the tokens that were handed out with the sentence,
+               // unless the context was tokenized differently this time
+               List<CoreLabel> labels = sentence.get(TokensAnnotation.class);
+               if (known >= 0 && labels != null && recent.get(known).size() == labels.size()) {
+                  windowTokens.add(recent.get(known));
+               } else {
+                  windowTokens.add(convertSentence(sentence, c.depMode, c.layers).getTokens());
+               }
+            } else if (i < ctxCount + newCount) {
+               Integer begin = sentence.get(CharacterOffsetBeginAnnotation.class);
+               PipelineSentence ps = convertSentence(sentence, c.depMode, c.layers);
+               if (done.isTooLong(i)) {
+                  ps.setGuard(PipelineGuardException.MAX_SENTENCE_LENGTH);
+               }
+               windowTokens.add(ps.getTokens());
+               newRecent.add(ps.getTokens());
+               newBegins.add(ctxBegin + (begin != null ? begin : ctxLen));
+               tokenCount += ps.getTokens().size();
+               listener.sentence(ps);
+            } else {
+               // held back, for its mentions only
+               windowTokens.add(convertSentence(sentence, c.depMode, c.layers).getTokens());
+            }
+            releaseSentence(sentence);
+         }//for -- SentenceAnnotation
+
+         int sentOffset = emitted - ctxCount;
+         if (c.coref) {
+            mergeCorefChains(
+               pending,
+               convertCorefChains(document.get(CorefChainAnnotation.class), windowTokens, sentOffset),
+               emitted,
+               emitted + newCount
+            );
+         }
+         if (c.metrics != null) {
+            // (this includes the time spent in listener.sentence())
+            conversion += System.nanoTime() - convStart;
+         }
+
+         emitted     += newCount;
+         recent       = newRecent;
+         recentBegins = newBegins;
+         pos          = heldBegin != null ? ctxBegin + heldBegin : bounds[end];
+      }//while
+
+      PipelineCorefChainList rest = new PipelineCorefChainList();
+      rest.addAll(pending);
+      listener.corefChains(rest);
+
+      if (c.metrics != null) {
+         c.metrics.document(text.length(), emitted, tokenCount, conversion);
+      }
+   }//processChunked
+
+   private static int lastSentence(PipelineCorefChain chain) {
+      int last = -1;
+      for (PipelineCorefMention m : chain.getMentions()) {
+         last = Math.max(last, m.getSentNum());
+      }
+      return last;
+   }
+
+   /*
+    * Adds the chains of a window to pending. Mentions in sentences from
+    * next on have not been emitted yet, and are left for the next window.
+    * A chain that shares a mention with pending chains is merged into the
+    * first of them (and the others with it); one that does not, and has no
+    * mention from fresh on, was reported with the previous window.
+    */
+   private static void mergeCorefChains(List<PipelineCorefChain> pending,
+                                        PipelineCorefChainList chains, int fresh, int next) {
+      Map<String, PipelineCorefChain> byMention = new HashMap<String, PipelineCorefChain>();
+      for (PipelineCorefChain chain : pending) {
+         for (PipelineCorefMention m : chain.getMentions()) {
+            byMention.put(mentionKey(m), chain);
+         }
+      }
+
+      for (PipelineCorefChain chain : chains) {
+         PipelineCorefChain target = null;
+         boolean            isNew  = false;
+         for (PipelineCorefMention m : chain.getMentions()) {
+            PipelineCorefChain other = byMention.get(mentionKey(m));
+            if (other != null && other != target) {
+               if (target == null) {
+                  target = other;
+               } else {
+                  for (PipelineCorefMention o : other.getMentions()) {
+                     target.addMention(o);
+                     byMention.put(mentionKey(o), target);
+                  }
+                  pending.remove(other);
+               }
+            }
+            isNew |= m.getSentNum() >= fresh && m.getSentNum() < next;
+         }
+         if (target == null) {
+            if (!isNew) {
+               continue;
+            }
+            target = new PipelineCorefChain();
+            PipelineCorefMention rep = chain.getRepresentativeMention();
+            if (rep.getSentNum() < next) {
+               target.setRepresentativeMention(rep);
+            }
+            pending.add(target);
+         }
+         for (PipelineCorefMention m : chain.getMentions()) {
+            String key = mentionKey(m);
+            if (m.getSentNum() < next && byMention.get(key) != target) {
+               target.addMention(m);
+               byMention.put(key, target);
+            }
+         }
+         if (target.getRepresentativeMention() == null) {
+            if (target.getMentions().isEmpty()) {
+               pending.remove(target);
+            } else {
+               target.setRepresentativeMention(target.getMentions().get(0));
+            }
+         }
+      }
+   }//mergeCorefChains
+
+   private static String mentionKey(PipelineCorefMention m) {
+      return m.getSentNum() + ":" + m.getStartIndex() + ":" + m.getEndIndex();
+   }
+
+   /*
+    * Splits text into paragraphs, and paragraphs longer than max into
+    * sentences (and, as a last resort, sentences into max-sized pieces at
+    * whitespace). Separators stay with the preceding segment, so the
+    * segments always add up to the original text.
+    */
+   protected static List<String> splitSegments(String text, int max) {
+      List<String> segments = new ArrayList<String>();
+      Matcher m = PARAGRAPH_BREAK.matcher(text);
+      int from = 0;
+
+      while (from < text.length()) {
+         int to = m.find() ? m.end() : text.length();
+         String paragraph = text.substring(from, to);
+
+         if (paragraph.length() <= max) {
+            segments.add(paragraph);
+         } else {
+            BreakIterator bi = BreakIterator.getSentenceInstance();
+            bi.setText(paragraph);
+            int sFrom = bi.first();
+            for (int sTo = bi.next(); sTo != BreakIterator.DONE; sFrom = sTo, sTo = bi.next()) {
+               String sentence = paragraph.substring(sFrom, sTo);
+               while (sentence.length() > max) {
+                  int cut = max;
+                  while (cut > 0 && !Character.isWhitespace(sentence.charAt(cut - 1))) {
+                     cut--;
+                  }
+                  if (cut == 0) {
+                     cut = max;
+                  }
+                  segments.add(sentence.substring(0, cut));
+                  sentence = sentence.substring(cut);
+               }
+               if (sentence.length() > 0) {
+                  segments.add(sentence);
+               }
+            }
+         }
+         from = to;
+      }
+      return segments;
+   }
+
+   protected static int intProperty(Properties props, String key, int def) {
+      String value = props.getProperty(key);
+      return value != null ? Integer.parseInt(value.trim()) : def;
+   }
+
+   public List<PipelineSentenceList> processBatch(List<String> texts) {
+      getConfig();
+
+      ExecutorService pool = getWorkers();
+      List<Future<PipelineSentenceList>> futures
+         = new ArrayList<Future<PipelineSentenceList>>(texts.size());
+
+      for (final String text : texts) {
+         futures.add(pool.submit(new Callable<PipelineSentenceList>() {
+            public PipelineSentenceList call() {
+               return process(text);
+            }
+         }));
+      }
+
+      List<PipelineSentenceList> results
+         = new ArrayList<PipelineSentenceList>(texts.size());
+      try {
+         for (Future<PipelineSentenceList> f : futures) {
+            results.add(f.get());
+         }
+      } catch (InterruptedException e) {
+         cancelAll(futures);
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("processBatch(): interrupted", e);
+      } catch (ExecutionException e) {
+         cancelAll(futures);
+         throw new RuntimeException("processBatch(): " + e.getCause(), e.getCause());
+      }
+      return results;
+   }//processBatch
+
+   public PipelineSentenceList[] processBatch(String[] texts) {
+      List<String> list = new ArrayList<String>(texts.length);
+      for (String text : texts) {
+         list.add(text);
+      }
+      return processBatch(list).toArray(new PipelineSentenceList[texts.length]);
+   }
+
+   /*
+    * Annotates text on a pool of lingua.threads threads. At most
+    * lingua.queue-size documents wait for a thread; past that, the
+    * "block" policy makes processAsync() wait for room, and "reject"
+    * returns a future that has already failed with a
+    * RejectedExecutionException. Cancelling the future takes a waiting
+    * document off the queue, or interrupts one that is being annotated.
+    */
+   public CompletableFuture<PipelineSentenceList> processAsync(final String text) {
+      final AsyncQueue q = getAsyncQueue();
+      final CompletableFuture<PipelineSentenceList> result
+         = new CompletableFuture<PipelineSentenceList>();
+
+      try {
+         if (!q.acquire()) {
+            q.rejected.increment();
+            result.completeExceptionally(new RejectedExecutionException(
+               "processAsync(): queue full (" + q.capacity + " documents)"
+            ));
+            return result;
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         result.completeExceptionally(e);
+         return result;
+      }
+
+      // QUEUED -> RUNNING, or QUEUED -> CANCELLED; whichever gets there
+      // first hands the queue slot back
+      final AtomicInteger state     = new AtomicInteger(AsyncQueue.QUEUED);
+      final long          submitted = System.nanoTime();
+      final Future<?>     task;
+      q.queued.enter();
+      try {
+         task = q.executor.submit(new Runnable() {
+            public void run() {
+               if (!state.compareAndSet(AsyncQueue.QUEUED, AsyncQueue.RUNNING)) {
+                  return;
+               }
+               long started = System.nanoTime();
+               q.queued.leave(started - submitted);
+               q.annotating.enter();
+               try {
+                  result.complete(process(text));
+               } catch (Throwable e) {
+                  result.completeExceptionally(e);
+               } finally {
+                  q.annotating.leave(System.nanoTime() - started);
+                  q.permits.release();
+               }
+            }
+         });
+      } catch (RejectedExecutionException e) {
+         q.queued.abandon();
+         q.permits.release();
+         result.completeExceptionally(e);
+         return result;
+      }
+
+      result.whenComplete(new BiConsumer<PipelineSentenceList, Throwable>() {
+         public void accept(PipelineSentenceList r, Throwable e) {
+            if (result.isCancelled()) {
+               if (state.compareAndSet(AsyncQueue.QUEUED, AsyncQueue.CANCELLED)) {
+                  q.queued.abandon();
+                  q.permits.release();
+                  task.cancel(false);
+               } else {
+                  task.cancel(true);
+               }
+            }
+         }
+      });
+      return result;
+   }//processAsync
+
+   protected static final class AsyncQueue {
+      final static int QUEUED    = 0;
+      final static int RUNNING   = 1;
+      final static int CANCELLED = 2;
+
+      final ThreadPoolExecutor    executor;
+      final Semaphore             permits;
+      final int                   capacity;
+      final boolean               block;
+      final PipelineMetrics.Stage queued     = new PipelineMetrics.Stage("queue");
+      final PipelineMetrics.Stage annotating = new PipelineMetrics.Stage("annotate");
+      final LongAdder             rejected   = new LongAdder();
+      volatile long               since      = System.nanoTime();
+
+      AsyncQueue(int threads, int queueSize, boolean block) {
+         this.capacity = threads + queueSize;
+         this.permits  = new Semaphore(capacity);
+         this.block    = block;
+         this.executor = new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+               public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "lingua-corenlp-async");
+                  t.setDaemon(true);
+                  return t;
+               }
+            }
+         );
+      }
+
+      boolean acquire() throws InterruptedException {
+         if (block) {
+            permits.acquire();
+            return true;
+         }
+         return permits.tryAcquire();
+      }
+
+      void snapshot(Map<String, Number> out) {
+         queued.snapshot(out, "async.queue", since);
+         annotating.snapshot(out, "async.annotate", since);
+         out.put("async.rejected", rejected.sum());
+      }
+
+      void reset() {
+         queued.reset();
+         annotating.reset();
+         rejected.reset();
+         since = System.nanoTime();
+      }
+   }
+
+   // documents waiting for, or being annotated by, processAsync()
+   public synchronized int getAsyncPending() {
+      return asyncQueue != null ? asyncQueue.capacity - asyncQueue.permits.availablePermits() : 0;
+   }
+
+   protected synchronized AsyncQueue getAsyncQueue() {
+      if (asyncQueue == null) {
+         String policy = props.getProperty(QUEUE_POLICY_PROPERTY, QUEUE_BLOCK).trim();
+         if (!policy.equals(QUEUE_BLOCK) && !policy.equals(QUEUE_REJECT)) {
+            throw new IllegalArgumentException(
+               "getAsyncQueue(): " + QUEUE_POLICY_PROPERTY + " must be "
+               + QUEUE_BLOCK + " or " + QUEUE_REJECT + ", not " + policy
+            );
+         }
+         asyncQueue = new AsyncQueue(
+            Math.max(threadCount(), 1),
+            Math.max(intProperty(props, QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE), 0),
+            policy.equals(QUEUE_BLOCK)
+         );
+      }
+      return asyncQueue;
+   }
+
+   private int threadCount() {
+      String tprop = props.getProperty(THREADS_PROPERTY);
+      return tprop != null
+         ? Integer.parseInt(tprop.trim())
+         : Runtime.getRuntime().availableProcessors();
+   }
+
+   public synchronized void shutdown() {
+      if (workers != null) {
+         workers.shutdown();
+         workers = null;
+      }
+      if (asyncQueue != null) {
+         asyncQueue.executor.shutdown();
+         asyncQueue = null;
+      }
+      if (sentencePool != null) {
+         sentencePool.shutdown();
+         sentencePool = null;
+      }
+      if (metrics != null) {
+         metrics.unregister();
+      }
+   }
+
+   protected synchronized ExecutorService getWorkers() {
+      if (workers == null) {
+         workers = Executors.newFixedThreadPool(Math.max(threadCount(), 1), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "lingua-corenlp-worker");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return workers;
+   }
+
+   // sized by the config that asks for it; a reload that changes
+   // lingua.sentence-threads gets a new pool
+   protected synchronized ForkJoinPool getSentencePool(int parallelism) {
+      if (sentencePool != null && sentencePool.getParallelism() != parallelism) {
+         sentencePool.shutdown();
+         sentencePool = null;
+      }
+      if (sentencePool == null) {
+         sentencePool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+               ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+               t.setName("lingua-corenlp-sentence-" + index.getAndIncrement());
+               t.setDaemon(true);
+               return t;
+            }
+         }, null, false);
+      }
+      return sentencePool;
+   }
+
+   protected interface SentenceWork {
+      void run(int from, int to);
+   }
+
+   /*
+    * Runs work over the sentences [0, n) on the sentence pool, in runs of
+    * about n / (4 * lingua.sentence-threads) sentences, so that a run of long
+    * ones does not keep the other threads waiting. Returns once all are done.
+    */
+   protected void forkJoin(Config c, int n, SentenceWork work) {
+      int grain = Math.max(n / (4 * c.sentenceThreads), 1);
+      sentencePool(c).invoke(new SentenceTask(work, 0, n, grain));
+   }
+
+   private ForkJoinPool sentencePool(Config c) {
+      // initPipeline() holds the lock while it loads models
+      ForkJoinPool pool = sentencePool;
+      if (pool == null || pool.getParallelism() != c.sentenceThreads) {
+         pool = getSentencePool(c.sentenceThreads);
+      }
+      return pool;
+   }
+
+   private static final class SentenceTask extends RecursiveAction {
+      private final static long serialVersionUID = 1L;
+
+      private final SentenceWork work;
+      private final int          from;
+      private final int          to;
+      private final int          grain;
+
+      SentenceTask(SentenceWork work, int from, int to, int grain) {
+         this.work  = work;
+         this.from  = from;
+         this.to    = to;
+         this.grain = grain;
+      }
+
+      protected void compute() {
+         if (to - from <= grain) {
+            work.run(from, to);
+         } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new SentenceTask(work, from, mid, grain), new SentenceTask(work, mid, to, grain));
+         }
+      }
+   }
+
+   private static void cancelAll(List<? extends Future<?>> futures) {
+      for (Future<?> f : futures) {
+         if (f != null) {
+            f.cancel(true);
+         }
+      }
+   }
+
+   /*
+    * Gathers streamed results into a PipelineSentenceList, attaching each
+    * coref chain to the sentence of its representative mention.
+    */
+   private static class Collector implements PipelineListener {
+      final PipelineSentenceList outList = new PipelineSentenceList();
+
+      public void sentence(PipelineSentence sentence) {
+         if (sentence.getGuard() != null) {
+            outList.addGuard(sentence.getGuard());
+         }
+         outList.add(sentence);
+      }
+
+      public void corefChains(PipelineCorefChainList chains) {
+         for (PipelineCorefChain crChain : chains) {
+            outList.get(crChain.getRepresentativeMention().getSentNum())
+               .addCorefChain(crChain);
+         }
+      }
+   }
 }
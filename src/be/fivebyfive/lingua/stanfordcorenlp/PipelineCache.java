@@ -0,0 +1,309 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * An LRU cache of frozen process() results, bounded by entry count and by
+ * weight (number of tokens), with an optional directory of serialized
+ * results behind it that survives restarts. Keys are SHA-1 digests of the
+ * properties that affect the output and the text, so the text itself is
+ * not retained.
+ */
+public class PipelineCache {
+   // the lingua.* properties that change what process() returns; the
+   // rest (threads, caches, metrics, limits, queueing) only change how
+   private final static Set<String> OUTPUT_PROPERTIES = new HashSet<String>(Arrays.asList(
+      Pipeline.DEP_PROPERTY, Pipeline.LAYERS_PROPERTY, Pipeline.MAX_SENTENCE_PROPERTY
+   ));
+
+   // the only classes readFromDisk() will load, besides those of this
+   // package and arrays of primitives
+   private final static Set<String> DISK_CLASSES = new HashSet<String>(Arrays.asList(
+      "java.lang.Boolean", "java.lang.Integer", "java.lang.Long", "java.lang.Number",
+      "java.lang.Object", "java.lang.Short", "java.lang.String", "java.util.ArrayList"
+   ));
+   private final static String DISK_PACKAGE = PipelineCache.class.getPackage().getName() + ".";
+
+   private final int  maxEntries;
+   private final long maxWeight;
+   private final File directory;
+
+   private final LinkedHashMap<String, PipelineSentenceList> entries
+      = new LinkedHashMap<String, PipelineSentenceList>(16, 0.75f, true);
+   private final Map<String, Integer> weights = new HashMap<String, Integer>();
+   private long weight = 0;
+
+   private long hits      = 0;
+   private long diskHits  = 0;
+   private long misses    = 0;
+   private long evictions = 0;
+
+   // failures of the directory, which are otherwise treated as misses
+   private long      diskErrors    = 0;
+   private Exception lastDiskError = null;
+
+   public PipelineCache(int maxEntries) {
+      this(maxEntries, Long.MAX_VALUE, null);
+   }
+
+   public PipelineCache(int maxEntries, long maxWeight, File directory) {
+      this.maxEntries = maxEntries;
+      this.maxWeight  = maxWeight;
+      this.directory  = directory;
+      if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+         throw new IllegalArgumentException(
+            "PipelineCache: can't create directory " + directory
+         );
+      }
+   }
+
+   public synchronized long getHits()      { return hits; }
+   public synchronized long getDiskHits()  { return diskHits; }
+   public synchronized long getMisses()    { return misses; }
+   public synchronized long getEvictions() { return evictions; }
+   public synchronized int  size()         { return entries.size(); }
+   public synchronized long getWeight()    { return weight; }
+   public synchronized long getDiskErrors(){ return diskErrors; }
+   public synchronized Exception getLastDiskError() { return lastDiskError; }
+   public File              getDirectory() { return directory; }
+
+   public PipelineSentenceList get(String key) {
+      synchronized (this) {
+         PipelineSentenceList result = entries.get(key);
+         if (result != null) {
+            hits++;
+            return result;
+         }
+      }
+
+      PipelineSentenceList result = readFromDisk(key);
+
+      synchronized (this) {
+         if (result != null) {
+            diskHits++;
+            store(key, result);
+         } else {
+            misses++;
+         }
+      }
+      return result;
+   }
+
+   public void put(String key, PipelineSentenceList result) {
+      result.freeze();
+      synchronized (this) {
+         store(key, result);
+      }
+      writeToDisk(key, result);
+   }
+
+   public synchronized void clear() {
+      entries.clear();
+      weights.clear();
+      weight = 0;
+   }
+
+   public static String key(String signature, String text) {
+      try {
+         MessageDigest md = MessageDigest.getInstance("SHA-1");
+         md.update(signature.getBytes("UTF-8"));
+         md.update((byte)0);
+         md.update(text.getBytes("UTF-8"));
+
+         StringBuilder hex = new StringBuilder(40);
+         for (byte b : md.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+         }
+         return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException("PipelineCache.key(): " + e.getMessage(), e);
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineCache.key(): " + e.getMessage(), e);
+      }
+   }
+
+   /*
+    * The properties a result depends on: "annotators", those each listed
+    * annotator reads (as PipelinePool.annotatorKey() picks them), and
+    * OUTPUT_PROPERTIES. Pipelines that differ only in the rest share keys.
+    */
+   public static String signature(Properties props) {
+      Map<String, String> relevant = new TreeMap<String, String>();
+      for (String name : Pipeline.annotatorNames(props)) {
+         relevant.putAll(PipelinePool.annotatorProperties(name, props));
+      }
+      for (Map.Entry<String, String> e : toMap(props).entrySet()) {
+         if (e.getKey().equals("annotators") || OUTPUT_PROPERTIES.contains(e.getKey())) {
+            relevant.put(e.getKey(), e.getValue());
+         }
+      }
+
+      StringBuilder sig = new StringBuilder();
+      for (Map.Entry<String, String> e : relevant.entrySet()) {
+         sig.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+      }
+      return sig.toString();
+   }
+
+   private static Map<String, String> toMap(Properties props) {
+      Map<String, String> map = new HashMap<String, String>();
+      for (String name : props.stringPropertyNames()) {
+         map.put(name, props.getProperty(name));
+      }
+      return map;
+   }
+
+   private void store(String key, PipelineSentenceList result) {
+      int w = 1;
+      for (PipelineSentence s : result) {
+         w += s.getTokens().size();
+      }
+
+      if (entries.put(key, result) != null) {
+         weight -= weights.get(key);
+      }
+      weights.put(key, w);
+      weight += w;
+
+      Iterator<String> eldest = entries.keySet().iterator();
+      while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+         String k = eldest.next();
+         if (k.equals(key) && entries.size() == 1) {
+            break;
+         }
+         eldest.remove();
+         weight -= weights.remove(k);
+         evictions++;
+      }
+   }
+
+   private PipelineSentenceList readFromDisk(String key) {
+      if (directory == null) {
+         return null;
+      }
+      File file = new File(directory, key + ".ser");
+      if (!file.isFile()) {
+         return null;
+      }
+
+      ObjectInputStream in = null;
+      try {
+         in = new ResultInputStream(new BufferedInputStream(new FileInputStream(file)));
+         PipelineSentenceList result = (PipelineSentenceList)in.readObject();
+         result.freeze();
+         return result;
+      } catch (Exception e) {
+         // stale or damaged entry -- treat as a miss, and drop it
+         diskError(e);
+         closeQuietly(in);
+         in = null;
+         file.delete();
+         return null;
+      } finally {
+         closeQuietly(in);
+      }
+   }
+
+   private void writeToDisk(String key, PipelineSentenceList result) {
+      if (directory == null) {
+         return;
+      }
+      File file = new File(directory, key + ".ser");
+      File tmp  = new File(directory, key + ".ser." + Thread.currentThread().getId() + ".tmp");
+
+      ObjectOutputStream out = null;
+      try {
+         out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+         out.writeObject(result);
+         out.close();
+         out = null;
+         if (!tmp.renameTo(file)) {
+            tmp.delete();
+         }
+      } catch (IOException e) {
+         diskError(e);
+         closeQuietly(out);
+         tmp.delete();
+      }
+   }
+
+   /*
+    * Refuses any class outside DISK_CLASSES and this package before it is
+    * loaded, so a planted .ser file can't instantiate arbitrary gadgets.
+    */
+   private final static class ResultInputStream extends ObjectInputStream {
+      ResultInputStream(InputStream in) throws IOException {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+         // "[[J" and "[Lsome.Class;" are checked by their element type
+         String name = desc.getName();
+         int    dims = name.lastIndexOf('[') + 1;
+         if (dims > 0) {
+            name = name.charAt(dims) == 'L' ? name.substring(dims + 1, name.length() - 1) : null;
+         }
+         if (name != null && !DISK_CLASSES.contains(name)
+               && !(name.startsWith(DISK_PACKAGE) && name.indexOf('.', DISK_PACKAGE.length()) < 0)) {
+            throw new InvalidClassException(desc.getName(), "not a cached result type");
+         }
+         return super.resolveClass(desc);
+      }
+   }
+
+   private synchronized void diskError(Exception e) {
+      diskErrors++;
+      lastDiskError = e;
+   }
+
+   private static void closeQuietly(Closeable c) {
+      if (c != null) {
+         try {
+            c.close();
+         } catch (IOException e) {
+            // nothing to do
+         }
+      }
+   }
+}
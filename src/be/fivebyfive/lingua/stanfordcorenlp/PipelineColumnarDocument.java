@@ -0,0 +1,130 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * A whole annotated document in columnar form: every word, lemma and
+ * sentence lives in one shared char buffer, and coref mentions are kept as
+ * parallel arrays (one entry per mention, representative mentions included).
+ */
+public class PipelineColumnarDocument {
+   private StringBuilder builder = new StringBuilder();
+   private char[]        chars   = null;
+
+   private final List<PipelineColumnarSentence> sentences
+      = new ArrayList<PipelineColumnarSentence>();
+
+   private int   mentionCount   = 0;
+   private int[] mentionChain   = new int[16];
+   private int[] mentionSent    = new int[16];
+   private int[] mentionStart   = new int[16];
+   private int[] mentionEnd     = new int[16];
+   private int[] mentionHead    = new int[16];
+   private int   chainCount     = 0;
+   private int[] representative = new int[16];
+
+   private final List<String> guards = new ArrayList<String>();
+
+   public int                      size()           { return sentences.size(); }
+   public PipelineColumnarSentence get(int i)       { return sentences.get(i); }
+   public char[]                   getChars()       { return chars; }
+   public int                      getChainCount()  { return chainCount; }
+   public int                      getMentionCount(){ return mentionCount; }
+
+   public int[] getMentionChains()          { return copy(mentionChain, mentionCount); }
+   public int[] getMentionSentNums()        { return copy(mentionSent, mentionCount); }
+   public int[] getMentionStartIndices()    { return copy(mentionStart, mentionCount); }
+   public int[] getMentionEndIndices()      { return copy(mentionEnd, mentionCount); }
+   public int[] getMentionHeadIndices()     { return copy(mentionHead, mentionCount); }
+   public int[] getRepresentativeMentions() { return copy(representative, chainCount); }
+
+   // names of the guards that tripped while annotating this document
+   public List<String> getGuards() { return Collections.unmodifiableList(guards); }
+
+   public String getString(int start, int end) {
+      return start < 0 ? null : new String(chars, start, end - start);
+   }
+
+   int append(String str) {
+      if (str == null) {
+         return -1;
+      }
+      int start = builder.length();
+      builder.append(str);
+      return start;
+   }
+
+   void addGuard(String guard) {
+      if (!guards.contains(guard)) {
+         guards.add(guard);
+      }
+   }
+
+   void addSentence(PipelineColumnarSentence sentence) {
+      sentences.add(sentence);
+   }
+
+   int addChain() {
+      representative = grow(representative, chainCount);
+      representative[chainCount] = -1;
+      return chainCount++;
+   }
+
+   void addMention(int chain, int sentNum, int start, int end, int head, boolean isRepresentative) {
+      mentionChain = grow(mentionChain, mentionCount);
+      mentionSent  = grow(mentionSent,  mentionCount);
+      mentionStart = grow(mentionStart, mentionCount);
+      mentionEnd   = grow(mentionEnd,   mentionCount);
+      mentionHead  = grow(mentionHead,  mentionCount);
+
+      mentionChain[mentionCount] = chain;
+      mentionSent[mentionCount]  = sentNum;
+      mentionStart[mentionCount] = start;
+      mentionEnd[mentionCount]   = end;
+      mentionHead[mentionCount]  = head;
+      if (isRepresentative) {
+         representative[chain] = mentionCount;
+      }
+      mentionCount++;
+   }
+
+   void finish() {
+      chars = new char[builder.length()];
+      builder.getChars(0, chars.length, chars, 0);
+      builder = null;
+   }
+
+   static int[] grow(int[] a, int used) {
+      if (used < a.length) {
+         return a;
+      }
+      int[] grown = new int[a.length * 2];
+      System.arraycopy(a, 0, grown, 0, used);
+      return grown;
+   }
+
+   static int[] copy(int[] a, int n) {
+      int[] out = new int[n];
+      System.arraycopy(a, 0, out, 0, n);
+      return out;
+   }
+}
@@ -0,0 +1,125 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+/*
+ * One sentence of a PipelineColumnarDocument. Token i is described by
+ * element i of each token column; dependency j by element j of each
+ * dependency column. Strings are offsets into the document's char buffer,
+ * tags and relations are PipelineSymbolTable codes. Those without a code
+ * are kept in a column of their own, which is null unless there are any.
+ */
+public class PipelineColumnarSentence {
+   private final PipelineColumnarDocument doc;
+
+   private final int     sentenceStart;
+   private final int     sentenceEnd;
+   private final int[]   wordStart;
+   private final int[]   wordEnd;
+   private final int[]   lemmaStart;
+   private final int[]   lemmaEnd;
+   private final short[] posCodes;
+   private final short[] nerCodes;
+
+   private final int     depCount;
+   private final int[]   depGovernors;
+   private final int[]   depDependents;
+   private final short[] depRelations;
+
+   private final String[] posUncoded;
+   private final String[] nerUncoded;
+   private final String[] relUncoded;
+
+   PipelineColumnarSentence(
+           PipelineColumnarDocument doc,
+           int sentenceStart, int sentenceEnd,
+           int[] wordStart, int[] wordEnd,
+           int[] lemmaStart, int[] lemmaEnd,
+           short[] posCodes, short[] nerCodes,
+           int depCount, int[] depGovernors, int[] depDependents, short[] depRelations,
+           String[] posUncoded, String[] nerUncoded, String[] relUncoded) {
+      this.doc           = doc;
+      this.sentenceStart = sentenceStart;
+      this.sentenceEnd   = sentenceEnd;
+      this.wordStart     = wordStart;
+      this.wordEnd       = wordEnd;
+      this.lemmaStart    = lemmaStart;
+      this.lemmaEnd      = lemmaEnd;
+      this.posCodes      = posCodes;
+      this.nerCodes      = nerCodes;
+      this.depCount      = depCount;
+      this.depGovernors  = depGovernors;
+      this.depDependents = depDependents;
+      this.depRelations  = depRelations;
+      this.posUncoded    = posUncoded;
+      this.nerUncoded    = nerUncoded;
+      this.relUncoded    = relUncoded;
+   }
+
+   public String getSentence()        { return doc.getString(sentenceStart, sentenceEnd); }
+   public int    size()               { return wordStart.length; }
+   public int    getDependencyCount() { return depCount; }
+
+   public String getWord(int i)    { return doc.getString(wordStart[i], wordEnd[i]); }
+   public String getLemma(int i)   { return doc.getString(lemmaStart[i], lemmaEnd[i]); }
+   public String getPOSTag(int i)  { return symbol(PipelineSymbolTable.POS_TAGS, posCodes, posUncoded, i); }
+   public String getNERTag(int i)  { return symbol(PipelineSymbolTable.NER_TAGS, nerCodes, nerUncoded, i); }
+
+   public String[] getWords()   { return strings(wordStart, wordEnd); }
+   public String[] getLemmas()  { return strings(lemmaStart, lemmaEnd); }
+   public String[] getPOSTags() { return symbols(PipelineSymbolTable.POS_TAGS, posCodes, posUncoded, posCodes.length); }
+   public String[] getNERTags() { return symbols(PipelineSymbolTable.NER_TAGS, nerCodes, nerUncoded, nerCodes.length); }
+
+   public int[]   getWordStarts()  { return wordStart.clone(); }
+   public int[]   getWordEnds()    { return wordEnd.clone(); }
+   public int[]   getLemmaStarts() { return lemmaStart.clone(); }
+   public int[]   getLemmaEnds()   { return lemmaEnd.clone(); }
+   public short[] getPOSCodes()    { return posCodes.clone(); }
+   public short[] getNERCodes()    { return nerCodes.clone(); }
+
+   public int[]    getGovernorIndices()  { return PipelineColumnarDocument.copy(depGovernors, depCount); }
+   public int[]    getDependentIndices() { return PipelineColumnarDocument.copy(depDependents, depCount); }
+   public short[]  getRelationCodes() {
+      short[] out = new short[depCount];
+      System.arraycopy(depRelations, 0, out, 0, depCount);
+      return out;
+   }
+   public String[] getRelations() {
+      return symbols(PipelineSymbolTable.RELATIONS, depRelations, relUncoded, depCount);
+   }
+
+   private String[] strings(int[] start, int[] end) {
+      String[] out = new String[start.length];
+      for (int i = 0; i < out.length; i++) {
+         out[i] = doc.getString(start[i], end[i]);
+      }
+      return out;
+   }
+
+   private static String symbol(PipelineSymbolTable table, short[] codes, String[] uncoded, int i) {
+      return codes[i] == PipelineSymbolTable.UNCODED ? uncoded[i] : table.symbol(codes[i]);
+   }
+
+   private static String[] symbols(PipelineSymbolTable table, short[] codes, String[] uncoded, int n) {
+      String[] out = new String[n];
+      for (int i = 0; i < n; i++) {
+         out[i] = symbol(table, codes, uncoded, i);
+      }
+      return out;
+   }
+}
@@ -17,13 +17,22 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
-public class PipelineCorefChain {
+import java.io.IOException;
+import java.io.Serializable;
+
+public class PipelineCorefChain implements Serializable {
+   private final static long serialVersionUID = 1L;
+
    private PipelineCorefMentionList mentions = new PipelineCorefMentionList();
    private boolean                  multiSentence = false;
+   private boolean                  frozen = false;
    private PipelineCorefMention     representativeMention;
    
    public PipelineCorefMentionList  getMentions() { return mentions; }
    public void addMention(PipelineCorefMention c) {
+      if (frozen) {
+         throw new UnsupportedOperationException("PipelineCorefChain is frozen");
+      }
       if (!multiSentence) {
          for (PipelineCorefMention m: mentions) {
             if (m.getSentNum() != c.getSentNum()) {
@@ -39,17 +48,42 @@ public class PipelineCorefChain {
       return representativeMention;
    }
    public void setRepresentativeMention(PipelineCorefMention cr) {
+      if (frozen) {
+         throw new UnsupportedOperationException("PipelineCorefChain is frozen");
+      }
       representativeMention = cr;
    }
 
+   public void freeze() {
+      if (!frozen) {
+         if (representativeMention != null) {
+            representativeMention.freeze();
+         }
+         mentions.freeze();
+         frozen = true;
+      }
+   }
+
+   public boolean isFrozen() { return frozen; }
+
    public PipelineCorefChain() { }
    
+   public void writeTo(Appendable out) throws IOException {
+      if (representativeMention != null) {
+         representativeMention.writeTo(out);
+         out.append(" => ");
+      }
+      mentions.writeTo(out, " <=> ");
+   }
+
    @Override 
    public String toString() { 
-      return 
-        (representativeMention != null
-              ? representativeMention.toString() + " => "
-              : "") 
-        + mentions.joinList(" <=> ");
+      StringBuilder sb = new StringBuilder();
+      try {
+         writeTo(sb);
+      } catch (IOException e) {
+         throw PipelineItem.renderError(e);
+      }
+      return sb.toString();
    }
 }
@@ -17,4 +17,6 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
-public class PipelineCorefChainList extends PipelineList<PipelineCorefChain> { }
+public class PipelineCorefChainList extends PipelineList<PipelineCorefChain> {
+   private final static long serialVersionUID = 1L;
+}
@@ -17,27 +17,91 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+
 import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
 
 public class PipelineCorefMention extends PipelineItem {
+   private final static long serialVersionUID = 1L;
+
    private int startIndex = 0;
    private int endIndex   = 0;
    private int headIndex  = 0;
    private int sentNum    = 0;
    
-   private PipelineTokenList tokens;
+   private PipelineTokenView tokens;
    private PipelineToken     headToken;
+
+   // set by setTokens(PipelineTokenList), whose list holds only the mention,
+   // where views are onto the whole sentence
+   private boolean           sliced = false;
+
+   // what getTokens() made of the view, the first time it was asked
+   private transient volatile PipelineTokenList tokenList;
    
    public int getStartIndex() { return startIndex; }
    public int getEndIndex()   { return endIndex; }
    public int getHeadIndex()  { return headIndex; }
    public int getSentNum()    { return sentNum; }
    
-   public PipelineTokenList getTokens()    { return tokens; }
-   public PipelineToken     getHeadToken() { return headToken; }
+   public PipelineTokenView getTokenView() { return tokens; }
+
+   // copied out of the view on the first call, and the same list after
+   // that (frozen along with the mention); getTokenView() copies nothing
+   public PipelineTokenList getTokens() {
+      PipelineTokenList tl = tokenList;
+      if (tl == null && tokens != null) {
+         tl = tokens.toTokenList();
+         if (frozen) {
+            tl.freeze();
+         }
+         tokenList = tl;
+      }
+      return tl;
+   }
+
+   // unless set explicitly, looked up in the sentence behind getTokenView(),
+   // which holds it even where the view itself came out swapped or empty
+   public PipelineToken getHeadToken() {
+      if (headToken == null && tokens != null) {
+         return tokens.getParentToken(sliced ? headIndex - startIndex : headIndex);
+      }
+      return headToken;
+   }
+
+   public void setTokens(PipelineTokenView v) {
+      checkFrozen();
+      tokens    = v;
+      tokenList = null;
+      sliced    = false;
+   }
 
-   public void setTokens(PipelineTokenList tl) { tokens = tl; }
-   public void setHeadToken(PipelineToken t)   { headToken = t; }
+   public void setTokens(PipelineTokenList tl) {
+      checkFrozen();
+      tokens    = tl.view(0, tl.size());
+      tokenList = null;
+      sliced    = true;
+   }
+
+   public void setHeadToken(PipelineToken t)   { checkFrozen(); headToken = t; }
+
+   @Override
+   public void freeze() {
+      if (!frozen) {
+         if (tokens != null) {
+            for (PipelineToken t : tokens) {
+               t.freeze();
+            }
+         }
+         if (headToken != null) {
+            headToken.freeze();
+         }
+         if (tokenList != null) {
+            tokenList.freeze();
+         }
+         super.freeze();
+      }
+   }
    
    public PipelineCorefMention() {}
    
@@ -49,28 +113,26 @@ public class PipelineCorefMention extends PipelineItem {
    }
    
    public static PipelineCorefMention fromMention(CorefMention ment) {
+      return fromMention(ment, 0);
+   }
+
+   public static PipelineCorefMention fromMention(CorefMention ment, int sentOffset) {
       return new PipelineCorefMention(
         ment.startIndex - 1,
         ment.endIndex   - 1,
         ment.headIndex  - 1,
-        ment.sentNum    - 1
+        ment.sentNum    - 1 + sentOffset
       );
    }
    
-   @Override
-   public String toString() {
-      return toCompactString() 
-        + " [@" + sentNum + ":" + startIndex + "-" + endIndex + "]";
+   public void writeTo(Appendable out) throws IOException {
+      writeCompactTo(out);
+      out.append(" [@").append(Integer.toString(sentNum))
+         .append(':').append(Integer.toString(startIndex))
+         .append('-').append(Integer.toString(endIndex)).append(']');
    }
    
-   @Override
-   public String toCompactString() {
-      String out = "";
-      for (PipelineToken t: tokens) {
-         if (out.length() > 0)
-            out += " ";
-         out += t.getWord();
-      }
-      return out;
+   public void writeCompactTo(Appendable out) throws IOException {
+      tokens.writeTo(out);
    }
 }
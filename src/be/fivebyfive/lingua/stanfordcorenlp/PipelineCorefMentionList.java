@@ -17,4 +17,6 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
-public class PipelineCorefMentionList extends PipelineList<PipelineCorefMention> { }
+public class PipelineCorefMentionList extends PipelineList<PipelineCorefMention> {
+   private final static long serialVersionUID = 1L;
+}
@@ -17,22 +17,52 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
 import edu.stanford.nlp.trees.GrammaticalRelation;
 
+// Relations are kept as PipelineSymbolTable codes, like the tags in
+// PipelineToken.
 public class PipelineDependency extends PipelineItem {
-	private PipelineToken governor;
-	private PipelineToken dependent;
-	private int           govIndex;
-	private int           depIndex;
-	private String        relation;
-	private String        longRelation;
+	private final static long serialVersionUID = 1L;
+
+	private PipelineToken   governor;
+	private PipelineToken   dependent;
+	private int             govIndex;
+	private int             depIndex;
+	private transient short relationCode;
+	private transient short longRelationCode;
+
+	// relations the tables have no room for, as they are
+	private transient String relationUncoded;
+	private transient String longRelationUncoded;
+
+	// { relation, long relation } codes; GrammaticalRelation.toString()
+	// and getLongName() build new strings on every call
+	private final static ConcurrentHashMap<GrammaticalRelation, short[]> relationCodes
+		= new ConcurrentHashMap<GrammaticalRelation, short[]>();
 
 	public PipelineToken getGovernor()  { return governor;  }
 	public PipelineToken getDependent() { return dependent; }
 	public int getGovernorIndex()       { return govIndex; }
 	public int getDependentIndex()      { return depIndex; }
-	public String getRelation()         { return relation; }
-	public String getLongRelation()     { return longRelation; }
+
+	public String getRelation() {
+		return relationCode == PipelineSymbolTable.UNCODED
+			? relationUncoded : PipelineSymbolTable.RELATIONS.symbol(relationCode);
+	}
+
+	public String getLongRelation() {
+		return longRelationCode == PipelineSymbolTable.UNCODED
+			? longRelationUncoded : PipelineSymbolTable.LONG_RELATIONS.symbol(longRelationCode);
+	}
+
+	// codes in PipelineSymbolTable.RELATIONS and LONG_RELATIONS, or UNCODED
+	public short getRelationCode()      { return relationCode; }
+	public short getLongRelationCode()  { return longRelationCode; }
 
 	public PipelineDependency(
 		PipelineToken governor,
@@ -41,29 +71,151 @@ public class PipelineDependency extends PipelineItem {
 		int           depIndex,
 		GrammaticalRelation relation
 	) {
-		this.governor     = governor;
-		this.dependent    = dependent;
-		this.govIndex     = govIndex;
-		this.depIndex     = depIndex;
-		this.relation     = relation.toString();
-		this.longRelation = relation.getLongName();
+		this(governor, dependent, govIndex, depIndex, codes(relation));
+		if (relationCode == PipelineSymbolTable.UNCODED) {
+			relationUncoded = relation.toString();
+		}
+		if (longRelationCode == PipelineSymbolTable.UNCODED) {
+			longRelationUncoded = relation.getLongName();
+		}
 	}
 
-	public String toCompactString() { return toCompactString(false); }
+	private PipelineDependency(
+		PipelineToken governor,
+		PipelineToken dependent,
+		int           govIndex,
+		int           depIndex,
+		short[]       codes
+	) {
+		this(governor, dependent, govIndex, depIndex, codes[0], codes[1]);
+	}
 
-	public String toCompactString(boolean includeIndices) {
-		return relation + "("
-		     + governor.getWord()  + (includeIndices ? "-" + govIndex : "")
-		     + ", "
-		     + dependent.getWord() + (includeIndices ? "-" + depIndex : "")
-		     + ")";
+	public PipelineDependency(
+		PipelineToken governor,
+		PipelineToken dependent,
+		int           govIndex,
+		int           depIndex,
+		String        relation,
+		String        longRelation
+	) {
+		this.governor  = governor;
+		this.dependent = dependent;
+		this.govIndex  = govIndex;
+		this.depIndex  = depIndex;
+		setRelations(relation, longRelation);
 	}
 
-	public String toString(boolean includeIndices) {
-		return toCompactString(includeIndices) + " [" + longRelation + "]";
+	public PipelineDependency(
+		PipelineToken governor,
+		PipelineToken dependent,
+		int           govIndex,
+		int           depIndex,
+		short         relationCode,
+		short         longRelationCode
+	) {
+		this.governor         = governor;
+		this.dependent        = dependent;
+		this.govIndex         = govIndex;
+		this.depIndex         = depIndex;
+		this.relationCode     = relationCode;
+		this.longRelationCode = longRelationCode;
+	}
+
+	// a copy of dependency between the given (copied) tokens
+	public PipelineDependency(
+		PipelineDependency dependency,
+		PipelineToken      governor,
+		PipelineToken      dependent
+	) {
+		this(
+			governor, dependent, dependency.govIndex, dependency.depIndex,
+			dependency.relationCode, dependency.longRelationCode
+		);
+		this.relationUncoded     = dependency.relationUncoded;
+		this.longRelationUncoded = dependency.longRelationUncoded;
+	}
+
+	private void setRelations(String relation, String longRelation) {
+		relationCode        = PipelineSymbolTable.RELATIONS.code(relation);
+		longRelationCode    = PipelineSymbolTable.LONG_RELATIONS.code(longRelation);
+		relationUncoded     = relationCode == PipelineSymbolTable.UNCODED ? relation : null;
+		longRelationUncoded = longRelationCode == PipelineSymbolTable.UNCODED ? longRelation : null;
 	}
 
-	@Override public String toString() {
-		return toString(true);
+	static short[] codes(GrammaticalRelation relation) {
+		short[] codes = relationCodes.get(relation);
+		if (codes == null) {
+			codes = new short[] {
+				PipelineSymbolTable.RELATIONS.code(relation.toString()),
+				PipelineSymbolTable.LONG_RELATIONS.code(relation.getLongName())
+			};
+			// no more of these than there are codes
+			if (codes[0] != PipelineSymbolTable.UNCODED && codes[1] != PipelineSymbolTable.UNCODED) {
+				relationCodes.putIfAbsent(relation, codes);
+			}
+		}
+		return codes;
+	}
+
+	// the code of relation.toString() in PipelineSymbolTable.RELATIONS,
+	// or UNCODED
+	public static short relationCode(GrammaticalRelation relation) {
+		return codes(relation)[0];
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(getRelation());
+		out.writeObject(getLongRelation());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		setRelations((String)in.readObject(), (String)in.readObject());
+	}
+
+	public void writeTo(Appendable out) throws IOException {
+		writeTo(out, true);
+	}
+
+	public void writeTo(Appendable out, boolean includeIndices) throws IOException {
+		writeCompactTo(out, includeIndices);
+		out.append(" [").append(getLongRelation()).append(']');
+	}
+
+	public void writeCompactTo(Appendable out) throws IOException {
+		writeCompactTo(out, false);
+	}
+
+	public void writeCompactTo(Appendable out, boolean includeIndices) throws IOException {
+		out.append(getRelation()).append('(').append(governor.getWord());
+		if (includeIndices) {
+			out.append('-').append(Integer.toString(govIndex));
+		}
+		out.append(", ").append(dependent.getWord());
+		if (includeIndices) {
+			out.append('-').append(Integer.toString(depIndex));
+		}
+		out.append(')');
+	}
+
+	public String toCompactString(boolean includeIndices) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeCompactTo(sb, includeIndices);
+		} catch (IOException e) {
+			throw renderError(e);
+		}
+		return sb.toString();
+	}
+
+	public String toString(boolean includeIndices) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb, includeIndices);
+		} catch (IOException e) {
+			throw renderError(e);
+		}
+		return sb.toString();
 	}
-}
\ No newline at end of file
+}
@@ -17,4 +17,6 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
-public class PipelineDependencyList extends PipelineList<PipelineDependency> { }
+public class PipelineDependencyList extends PipelineList<PipelineDependency> {
+   private final static long serialVersionUID = 1L;
+}
@@ -0,0 +1,41 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+/*
+ * Thrown when a document trips one of the guards that stop it from being
+ * annotated at all (see Pipeline.MAX_INPUT_PROPERTY and TIMEOUT_PROPERTY).
+ */
+public class PipelineGuardException extends RuntimeException {
+   private final static long serialVersionUID = 1L;
+
+   public final static String MAX_INPUT           = "max-input";
+   public final static String TIMEOUT             = "timeout";
+   public final static String MAX_SENTENCE_LENGTH = "max-sentence-length";
+
+   private final String guard;
+
+   public PipelineGuardException(String guard, String message) {
+      super(guard + ": " + message);
+      this.guard = guard;
+   }
+
+   public String getGuard() {
+      return guard;
+   }
+}
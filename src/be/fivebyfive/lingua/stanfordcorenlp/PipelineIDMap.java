@@ -0,0 +1,116 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.Serializable;
+
+/*
+ * A map from the long IDs of PipelineItems to the items, with open
+ * addressing over primitive arrays --- no boxed keys and no entry objects.
+ */
+public class PipelineIDMap<T> implements Serializable {
+   private final static long serialVersionUID = 1L;
+
+   private long[]   keys;
+   private Object[] values;
+   private int      size = 0;
+
+   public PipelineIDMap() {
+      this(16);
+   }
+
+   public PipelineIDMap(int expected) {
+      int capacity = 16;
+      while (capacity < expected * 2) {
+         capacity <<= 1;
+      }
+      keys   = new long[capacity];
+      values = new Object[capacity];
+   }
+
+   private static int slot(long key, int mask) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int)(h ^ (h >>> 32)) & mask;
+   }
+
+   private int find(long key) {
+      int mask = keys.length - 1;
+      int i    = slot(key, mask);
+      while (values[i] != null && keys[i] != key) {
+         i = (i + 1) & mask;
+      }
+      return i;
+   }
+
+   public T put(long key, T value) {
+      if (value == null) {
+         throw new IllegalArgumentException("PipelineIDMap.put(): null value");
+      }
+      int i = find(key);
+      @SuppressWarnings("unchecked")
+      T old = (T)values[i];
+      keys[i]   = key;
+      values[i] = value;
+      if (old == null && ++size * 2 > keys.length) {
+         grow();
+      }
+      return old;
+   }
+
+   @SuppressWarnings("unchecked")
+   public T get(long key) {
+      return (T)values[find(key)];
+   }
+
+   public boolean containsKey(long key) {
+      return values[find(key)] != null;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   public long[] keys() {
+      long[] out = new long[size];
+      int n = 0;
+      for (int i = 0; i < keys.length; i++) {
+         if (values[i] != null) {
+            out[n++] = keys[i];
+         }
+      }
+      return out;
+   }
+
+   private void grow() {
+      long[]   oldKeys   = keys;
+      Object[] oldValues = values;
+      keys   = new long[oldKeys.length * 2];
+      values = new Object[oldKeys.length * 2];
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldValues[i] != null) {
+            int j = find(oldKeys[i]);
+            keys[j]   = oldKeys[i];
+            values[j] = oldValues[i];
+         }
+      }
+   }
+}
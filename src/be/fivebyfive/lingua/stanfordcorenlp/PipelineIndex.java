@@ -0,0 +1,413 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * An in-memory inverted index over annotated documents. Sentences are
+ * numbered through the whole index, in the order they are added, and each
+ * lemma, POS tag, NER tag and dependency (by relation, with and without the
+ * lemmas of its governor and dependent) has the PipelinePostings of the
+ * sentences it occurs in. Coref chains are numbered the same way, with
+ * postings by the lemmas of their mentions.
+ *
+ * Lemmas fall back on words for tokens without one (see lingua.layers).
+ * Documents can be added at any time, also while other threads query.
+ */
+public class PipelineIndex implements PipelineListener {
+   private final static char LEMMA        = 'l';
+   private final static char POS          = 'p';
+   private final static char NER          = 'n';
+   private final static char RELATION     = 'r';
+   private final static char GOVERNOR     = 'g';
+   private final static char DEPENDENT    = 'd';
+   private final static char DEPENDENCY   = 'x';
+   private final static char COREF        = 'c';
+   private final static char SEP          = '\u0000';
+
+   private final Map<String, PipelinePostings> postings = new HashMap<String, PipelinePostings>();
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+   private int   docCount      = 0;
+   private int[] docFirst      = new int[16];
+   private int   sentenceCount = 0;
+   private long  postingBytes  = 0;
+
+   // mentions of chain c are [chainFirst[c], chainFirst[c + 1])
+   private int   chainCount     = 0;
+   private int[] chainFirst     = new int[16];
+   private int   mentionCount   = 0;
+   private int[] mentionSent    = new int[16];
+   private int[] mentionStart   = new int[16];
+   private int[] mentionEnd     = new int[16];
+   private int[] mentionHead    = new int[16];
+   private int[] mentionHeadNER = new int[16];
+
+   // head NER tags without a PipelineSymbolTable code, by mention
+   private final Map<Integer, String> mentionHeadNERUncoded = new HashMap<Integer, String>();
+
+   private int                            docStart = 0;
+   private final List<PipelineCorefChain> chains   = new ArrayList<PipelineCorefChain>();
+
+   private final Map<String, Query> queries = new TreeMap<String, Query>();
+
+   private static final class Query {
+      final PipelineMetrics.Stage stage;
+      final LongAdder             results = new LongAdder();
+
+      Query(String name) {
+         stage = new PipelineMetrics.Stage(name);
+      }
+   }
+
+   public PipelineIndex() {
+      for (String name : new String[] { "lemma", "pos", "ner", "dependency", "coref" }) {
+         queries.put(name, new Query(name));
+      }
+   }
+
+   // returns the number of the document in the index
+   public int add(PipelineSentenceList document) {
+      lock.writeLock().lock();
+      try {
+         for (PipelineSentence sentence : document) {
+            sentence(sentence);
+            corefChains(sentence.getCorefChains());
+         }
+         return endDocument();
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   public void sentence(PipelineSentence sentence) {
+      lock.writeLock().lock();
+      try {
+         int id = sentenceCount++;
+         for (PipelineToken t : sentence.getTokens()) {
+            post(id, LEMMA, lemma(t));
+            post(id, POS,   t.getPOSTag());
+            post(id, NER,   t.getNERTag());
+         }
+         for (PipelineDependency d : sentence.getDependencies()) {
+            String rel = d.getRelation();
+            String gov = lemma(d.getGovernor());
+            String dep = lemma(d.getDependent());
+            post(id, RELATION,   rel);
+            post(id, GOVERNOR,   key(rel, gov));
+            post(id, DEPENDENT,  key(rel, dep));
+            post(id, DEPENDENCY, key(rel, gov, dep));
+         }
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }//sentence
+
+   public void corefChains(PipelineCorefChainList chains) {
+      lock.writeLock().lock();
+      try {
+         this.chains.addAll(chains);
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   // indexes the coref chains of the current document, and returns its number
+   public int endDocument() {
+      lock.writeLock().lock();
+      try {
+         for (PipelineCorefChain chain : chains) {
+            int id = chainCount++;
+            chainFirst = PipelineColumnarDocument.grow(chainFirst, chainCount);
+            chainFirst[id] = mentionCount;
+
+            for (PipelineCorefMention m : chain.getMentions()) {
+               PipelineTokenView tokens    = m.getTokenView();
+               PipelineToken     headToken = m.getHeadToken();
+               int headNER = headToken != null ? headToken.getNERCode() : PipelineSymbolTable.NONE;
+               if (headNER == PipelineSymbolTable.UNCODED) {
+                  mentionHeadNERUncoded.put(mentionCount, headToken.getNERTag());
+               }
+               addMention(
+                  docStart + m.getSentNum(), m.getStartIndex(), m.getEndIndex(), m.getHeadIndex(),
+                  headNER
+               );
+               if (tokens != null) {
+                  for (PipelineToken t : tokens) {
+                     post(id, COREF, lemma(t));
+                  }
+               }
+            }
+            chainFirst[chainCount] = mentionCount;
+         }
+         chains.clear();
+
+         docFirst = PipelineColumnarDocument.grow(docFirst, docCount);
+         docFirst[docCount] = docStart;
+         docStart = sentenceCount;
+         return docCount++;
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }//endDocument
+
+   public int[] lemma(String lemma) {
+      return lookup("lemma", LEMMA, lemma);
+   }
+
+   public int[] pos(String tag) {
+      return lookup("pos", POS, tag);
+   }
+
+   public int[] ner(String tag) {
+      return lookup("ner", NER, tag);
+   }
+
+   /*
+    * Sentences with a dependency of the given relation, between the given
+    * governor and dependent lemmas; either lemma may be null for any.
+    */
+   public int[] dependency(String relation, String governor, String dependent) {
+      if (relation == null) {
+         throw new IllegalArgumentException("PipelineIndex.dependency(): no relation");
+      }
+      if (governor != null && dependent != null) {
+         return lookup("dependency", DEPENDENCY, key(relation, governor, dependent));
+      } else if (governor != null) {
+         return lookup("dependency", GOVERNOR, key(relation, governor));
+      } else if (dependent != null) {
+         return lookup("dependency", DEPENDENT, key(relation, dependent));
+      }
+      return lookup("dependency", RELATION, relation);
+   }
+
+   /*
+    * The mentions, as {sentence, startIndex, endIndex, headIndex}, of every
+    * coref chain that has a mention containing the lemma; only those whose
+    * head has the given NER tag, unless it is null.
+    */
+   public int[][] corefMentions(String lemma, String nerTag) {
+      long start = System.nanoTime();
+      List<int[]> out = new ArrayList<int[]>();
+
+      lock.readLock().lock();
+      try {
+         PipelinePostings p = postings.get(COREF + lemma);
+         if (p != null) {
+            // (a tag that was never seen has no code, and is not given one)
+            int code = PipelineSymbolTable.NER_TAGS.find(nerTag);
+            for (int chain : p.toArray()) {
+               for (int m = chainFirst[chain]; m < chainFirst[chain + 1]; m++) {
+                  if (nerTag == null || (mentionHeadNER[m] == code
+                        && (code != PipelineSymbolTable.UNCODED || nerTag.equals(mentionHeadNERUncoded.get(m))))) {
+                     out.add(new int[] { mentionSent[m], mentionStart[m], mentionEnd[m], mentionHead[m] });
+                  }
+               }
+            }
+         }
+      } finally {
+         lock.readLock().unlock();
+      }
+
+      record("coref", start, out.size());
+      return out.toArray(new int[out.size()][]);
+   }//corefMentions
+
+   // the sentences in both a and b, which must be sorted
+   public static int[] and(int[] a, int[] b) {
+      int[] out = new int[Math.min(a.length, b.length)];
+      int i = 0, j = 0, n = 0;
+      while (i < a.length && j < b.length) {
+         if (a[i] < b[j]) {
+            i++;
+         } else if (a[i] > b[j]) {
+            j++;
+         } else {
+            out[n++] = a[i];
+            i++;
+            j++;
+         }
+      }
+      return PipelineColumnarDocument.copy(out, n);
+   }
+
+   public int getDocumentCount() {
+      lock.readLock().lock();
+      try {
+         return docCount;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public int getSentenceCount() {
+      lock.readLock().lock();
+      try {
+         return sentenceCount;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   // the document a sentence belongs to
+   public int getDocument(int sentence) {
+      lock.readLock().lock();
+      try {
+         if (sentence < 0 || sentence >= docStart) {
+            throw new IndexOutOfBoundsException("PipelineIndex.getDocument(): " + sentence);
+         }
+         int lo = 0, hi = docCount - 1;
+         while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (docFirst[mid] <= sentence) {
+               lo = mid;
+            } else {
+               hi = mid - 1;
+            }
+         }
+         return lo;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   // the index of a sentence within its document
+   public int getSentenceIndex(int sentence) {
+      int doc = getDocument(sentence);
+      lock.readLock().lock();
+      try {
+         return sentence - docFirst[doc];
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /*
+    * Index size (documents, sentences, chains, keys, posting-bytes) and,
+    * per kind of query, query.<kind>.calls, .time-us, .max-us and .results.
+    */
+   public Map<String, Number> getMetrics() {
+      Map<String, Number> out = new TreeMap<String, Number>();
+      lock.readLock().lock();
+      try {
+         out.put("documents",     docCount);
+         out.put("sentences",     sentenceCount);
+         out.put("chains",        chainCount);
+         out.put("keys",          postings.size());
+         out.put("posting-bytes", postingBytes);
+      } finally {
+         lock.readLock().unlock();
+      }
+      for (Query q : queries.values()) {
+         String prefix = "query." + q.stage.name;
+         out.put(prefix + ".calls",   q.stage.calls.sum());
+         out.put(prefix + ".time-us", q.stage.nanos.sum() / 1000);
+         out.put(prefix + ".max-us",  q.stage.max.get() / 1000);
+         out.put(prefix + ".results", q.results.sum());
+      }
+      return out;
+   }
+
+   // one "key value" line per entry of getMetrics()
+   public String getMetricsString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Number> e : getMetrics().entrySet()) {
+         sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+      return sb.toString();
+   }
+
+   public void resetMetrics() {
+      for (Query q : queries.values()) {
+         q.stage.reset();
+         q.results.reset();
+      }
+   }
+
+   private int[] lookup(String query, char field, String value) {
+      long start = System.nanoTime();
+      int[] out;
+
+      lock.readLock().lock();
+      try {
+         PipelinePostings p = value != null ? postings.get(field + value) : null;
+         out = p != null ? p.toArray() : new int[0];
+      } finally {
+         lock.readLock().unlock();
+      }
+
+      record(query, start, out.length);
+      return out;
+   }
+
+   private void record(String query, long start, int results) {
+      Query q = queries.get(query);
+      q.stage.record(System.nanoTime() - start);
+      q.results.add(results);
+   }
+
+   private void post(int id, char field, String value) {
+      if (value == null) {
+         return;
+      }
+      String key = field + value;
+      PipelinePostings p = postings.get(key);
+      if (p == null) {
+         p = new PipelinePostings();
+         postings.put(key, p);
+      }
+      int before = p.getByteSize();
+      p.add(id);
+      postingBytes += p.getByteSize() - before;
+   }
+
+   private void addMention(int sentence, int start, int end, int head, int headNER) {
+      mentionSent    = PipelineColumnarDocument.grow(mentionSent,    mentionCount);
+      mentionStart   = PipelineColumnarDocument.grow(mentionStart,   mentionCount);
+      mentionEnd     = PipelineColumnarDocument.grow(mentionEnd,     mentionCount);
+      mentionHead    = PipelineColumnarDocument.grow(mentionHead,    mentionCount);
+      mentionHeadNER = PipelineColumnarDocument.grow(mentionHeadNER, mentionCount);
+
+      mentionSent[mentionCount]    = sentence;
+      mentionStart[mentionCount]   = start;
+      mentionEnd[mentionCount]     = end;
+      mentionHead[mentionCount]    = head;
+      mentionHeadNER[mentionCount] = headNER;
+      mentionCount++;
+   }
+
+   private static String lemma(PipelineToken t) {
+      return t.getLemma() != null ? t.getLemma() : t.getWord();
+   }
+
+   private static String key(String a, String b) {
+      return a + SEP + b;
+   }
+
+   private static String key(String a, String b, String c) {
+      return a + SEP + b + SEP + c;
+   }
+}
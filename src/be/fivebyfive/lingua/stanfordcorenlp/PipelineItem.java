@@ -17,21 +17,48 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class PipelineItem {
-    protected UUID   id    = null;
-    protected String idStr = "";
-    protected static long idLeast = Long.MIN_VALUE;
-    protected static long idMost  = Long.MIN_VALUE;
+public abstract class PipelineItem implements Serializable {
+    private final static long serialVersionUID = 1L;
+
+    protected long    idHigh = 0;
+    protected long    idLow  = 0;
+    protected boolean hasID  = false;
+    protected String  idStr  = "";
+    protected boolean frozen = false;
+
+    // IDs are handed out in per-thread blocks reserved from one counter, so
+    // that generating one is (nearly always) a thread-local increment. The
+    // counter runs through all 2^64 values before it repeats one.
+    private final static int        ID_BLOCK  = 1024;
+    private final static AtomicLong idCounter = new AtomicLong(Long.MIN_VALUE + 1);
+    private static volatile long    idMost    = Long.MIN_VALUE;
+    private static volatile long    idEpoch   = 0;
+
+    // { next ID, IDs left in the block, epoch the block was reserved in }
+    private final static ThreadLocal<long[]> idBlock = new ThreadLocal<long[]>() {
+        @Override protected long[] initialValue() {
+            return new long[3];
+        }
+    };
 
     public void setIDFromString(String str) {
-        id = UUID.nameUUIDFromBytes(str.getBytes());
+        checkFrozen();
+        UUID uuid = UUID.nameUUIDFromBytes(str.getBytes());
+        idHigh = uuid.getMostSignificantBits();
+        idLow  = uuid.getLeastSignificantBits();
+        hasID  = true;
+        idStr  = "";
     }
 
-    public static void initializeCounters(long least, long most) {
-        idLeast = least;
-        idMost  = most;
+    public static synchronized void initializeCounters(long least, long most) {
+        idCounter.set(least + 1);
+        idMost = most;
+        idEpoch++;
     }
 
     public static void randomizeCounters() {
@@ -43,23 +70,39 @@ public abstract class PipelineItem {
         );
     }
 
+    public static long nextID() {
+        long[] block = idBlock.get();
+        if (block[1] == 0 || block[2] != idEpoch) {
+            block[2] = idEpoch;
+            block[0] = idCounter.getAndAdd(ID_BLOCK);
+            block[1] = ID_BLOCK;
+        }
+        block[1]--;
+        return block[0]++;
+    }
+
     public static UUID generateID() {
-        if (idLeast <= Long.MAX_VALUE) {
-            idLeast++;
-        } else if (idMost <= Long.MAX_VALUE) {
-            idMost++;
-        } else { // if this happens, you've got big problems
-            System.out.println("PipelineItem.generateID(): ran out of IDs!");
+        return new UUID(idMost, nextID());
+    }
+
+    private void ensureID() {
+        if (!hasID) {
+            idHigh = idMost;
+            idLow  = nextID();
+            hasID  = true;
         }
+    }
 
-        return new UUID(idMost, idLeast);
+    // the low word, with the high one mixed in: one-to-one for the IDs of
+    // one initializeCounters() setting, and apart from those of another
+    public long getLongID() {
+        ensureID();
+        return idLow ^ (idHigh * 0x9E3779B97F4A7C15L);
     }
 
     public UUID getID() {
-        if (id == null) {
-            id = PipelineItem.generateID();
-        }
-        return id;
+        ensureID();
+        return new UUID(idHigh, idLow);
     }
 
     public String getIDString() {
@@ -70,8 +113,58 @@ public abstract class PipelineItem {
     }
 
     public boolean identicalTo(PipelineItem b) {
-        return getID().equals(b.getID());
+        ensureID();
+        b.ensureID();
+        return idLow == b.idLow && idHigh == b.idHigh;
+    }
+
+    // IDs are fixed before freezing, so that readers sharing a frozen
+    // item never race to generate them
+    public void freeze() {
+        if (!frozen) {
+            ensureID();
+            frozen = true;
+        }
     }
 
-    abstract public String toCompactString();
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    protected void checkFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " is frozen"
+            );
+        }
+    }
+
+    abstract public void writeTo(Appendable out) throws IOException;
+    abstract public void writeCompactTo(Appendable out) throws IOException;
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw renderError(e);
+        }
+        return sb.toString();
+    }
+
+    public String toCompactString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeCompactTo(sb);
+        } catch (IOException e) {
+            throw renderError(e);
+        }
+        return sb.toString();
+    }
+
+    // only reachable when rendering into a StringBuilder, which never throws
+    static RuntimeException renderError(IOException e) {
+        return new RuntimeException("PipelineItem: rendering failed: " + e, e);
+    }
 }
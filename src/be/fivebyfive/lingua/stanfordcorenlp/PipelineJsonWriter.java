@@ -0,0 +1,206 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Writes results as JSON straight to an Appendable, as they are produced:
+ *
+ *   {"sentences":[{"sentence":"...",
+ *                  "tokens":[[word,pos,ner,lemma],...],
+ *                  "dependencies":[[relation,longRelation,govIndex,depIndex],...],
+ *                  "guard":"..."},   (only if a guard tripped on the sentence)
+ *                 ...],
+ *    "corefChains":[{"representative":[sentNum,start,end,head],
+ *                    "mentions":[[sentNum,start,end,head],...]},
+ *                   ...]}
+ *
+ * Coref chains are held back until finish(), since they may arrive
+ * between sentences (see Pipeline.processChunked).
+ */
+public class PipelineJsonWriter implements PipelineListener {
+   private final Appendable               out;
+   private final List<PipelineCorefChain> chains = new ArrayList<PipelineCorefChain>();
+   private boolean                        first  = true;
+
+   public PipelineJsonWriter(Appendable out) {
+      this.out = out;
+      try {
+         out.append("{\"sentences\":[");
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineJsonWriter: " + e.getMessage(), e);
+      }
+   }
+
+   public static void write(PipelineSentenceList sentences, Appendable out) {
+      PipelineJsonWriter writer = new PipelineJsonWriter(out);
+      for (PipelineSentence sentence : sentences) {
+         writer.sentence(sentence);
+         writer.corefChains(sentence.getCorefChains());
+      }
+      writer.finish();
+   }
+
+   public void sentence(PipelineSentence sentence) {
+      try {
+         if (!first) {
+            out.append(',');
+         }
+         first = false;
+
+         out.append("{\"sentence\":");
+         string(sentence.getSentence());
+
+         out.append(",\"tokens\":[");
+         boolean firstToken = true;
+         for (PipelineToken t : sentence.getTokens()) {
+            out.append(firstToken ? "[" : ",[");
+            firstToken = false;
+            string(t.getWord());
+            out.append(',');
+            string(t.getPOSTag());
+            out.append(',');
+            string(t.getNERTag());
+            out.append(',');
+            string(t.getLemma());
+            out.append(']');
+         }
+
+         out.append("],\"dependencies\":[");
+         boolean firstDep = true;
+         for (PipelineDependency d : sentence.getDependencies()) {
+            out.append(firstDep ? "[" : ",[");
+            firstDep = false;
+            string(d.getRelation());
+            out.append(',');
+            string(d.getLongRelation());
+            out.append(',');
+            number(d.getGovernorIndex());
+            out.append(',');
+            number(d.getDependentIndex());
+            out.append(']');
+         }
+         out.append(']');
+         if (sentence.getGuard() != null) {
+            out.append(",\"guard\":");
+            string(sentence.getGuard());
+         }
+         out.append('}');
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineJsonWriter.sentence(): " + e.getMessage(), e);
+      }
+   }
+
+   public void corefChains(PipelineCorefChainList chains) {
+      this.chains.addAll(chains);
+   }
+
+   public void finish() {
+      try {
+         out.append("],\"corefChains\":[");
+         boolean firstChain = true;
+         for (PipelineCorefChain chain : chains) {
+            out.append(firstChain ? "{" : ",{");
+            firstChain = false;
+            out.append("\"representative\":");
+            mention(chain.getRepresentativeMention());
+            out.append(",\"mentions\":[");
+            boolean firstMention = true;
+            for (PipelineCorefMention m : chain.getMentions()) {
+               if (!firstMention) {
+                  out.append(',');
+               }
+               firstMention = false;
+               mention(m);
+            }
+            out.append("]}");
+         }
+         out.append("]}");
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineJsonWriter.finish(): " + e.getMessage(), e);
+      }
+      chains.clear();
+   }
+
+   private void mention(PipelineCorefMention m) throws IOException {
+      if (m == null) {
+         out.append("null");
+         return;
+      }
+      out.append('[');
+      number(m.getSentNum());
+      out.append(',');
+      number(m.getStartIndex());
+      out.append(',');
+      number(m.getEndIndex());
+      out.append(',');
+      number(m.getHeadIndex());
+      out.append(']');
+   }
+
+   private void number(int n) throws IOException {
+      if (n < 0) {
+         if (n == Integer.MIN_VALUE) {
+            out.append("-2147483648");
+            return;
+         }
+         out.append('-');
+         n = -n;
+      }
+      int div = 1;
+      while (n / div >= 10) {
+         div *= 10;
+      }
+      for (; div > 0; div /= 10) {
+         out.append((char)('0' + (n / div) % 10));
+      }
+   }
+
+   private void string(String s) throws IOException {
+      if (s == null) {
+         out.append("null");
+         return;
+      }
+      out.append('"');
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         switch (c) {
+            case '"':  out.append("\\\""); break;
+            case '\\': out.append("\\\\"); break;
+            case '\n': out.append("\\n");  break;
+            case '\r': out.append("\\r");  break;
+            case '\t': out.append("\\t");  break;
+            default:
+               if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                  out.append("\\u");
+                  for (int shift = 12; shift >= 0; shift -= 4) {
+                     out.append(HEX[(c >> shift) & 0xf]);
+                  }
+               } else {
+                  out.append(c);
+               }
+         }
+      }
+      out.append('"');
+   }
+
+   private final static char[] HEX = "0123456789abcdef".toCharArray();
+}
@@ -17,24 +17,96 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class PipelineList<T> extends ArrayList<T> {
+	private final static long serialVersionUID = 1L;
+
+	private boolean frozen = false;
+
 	public String joinList(String sep) {
-		String output = "";
-		for(T elem: this) {
-			output += (output.length() > 0 ? sep : "") + elem.toString();
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb, sep);
+		} catch (IOException e) {
+			throw PipelineItem.renderError(e);
 		}
-		return output;
+		return sb.toString();
 	}
 
 	public String joinListCompact(String sep) {
-		String output = "";
-		for(T elem: this) {
-			output += (output.length() > 0 ? sep : "") + ((PipelineItem)elem).toCompactString();
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeCompactTo(sb, sep);
+		} catch (IOException e) {
+			throw PipelineItem.renderError(e);
+		}
+		return sb.toString();
+	}
+
+	public void writeTo(Appendable out, String sep) throws IOException {
+		write(out, sep, false);
+	}
+
+	public void writeCompactTo(Appendable out, String sep) throws IOException {
+		write(out, sep, true);
+	}
+
+	public void writeTo(Appendable out) throws IOException        { writeTo(out, "\n"); }
+	public void writeCompactTo(Appendable out) throws IOException { writeCompactTo(out, "\n"); }
+
+	// as joinList always did: no separator until something has been written,
+	// so elements that render empty at the start leave no trace
+	private void write(Appendable out, String sep, boolean compact) throws IOException {
+		Tracking tracked = new Tracking(out);
+		for (T elem: this) {
+			if (tracked.written) {
+				out.append(sep);
+			}
+
+			if (elem instanceof PipelineItem) {
+				if (compact) {
+					((PipelineItem)elem).writeCompactTo(tracked);
+				} else {
+					((PipelineItem)elem).writeTo(tracked);
+				}
+			} else if (elem instanceof PipelineCorefChain) {
+				((PipelineCorefChain)elem).writeTo(tracked);
+			} else {
+				tracked.append(String.valueOf(elem));
+			}
+		}
+	}
+
+	private final static class Tracking implements Appendable {
+		private final Appendable out;
+		private boolean          written = false;
+
+		Tracking(Appendable out) {
+			this.out = out;
+		}
+
+		public Appendable append(CharSequence csq) throws IOException {
+			return append(csq, 0, csq == null ? 4 : csq.length());
+		}
+
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			written |= end > start;
+			out.append(csq, start, end);
+			return this;
+		}
+
+		public Appendable append(char c) throws IOException {
+			written = true;
+			out.append(c);
+			return this;
 		}
-		return output;
 	}
 
 	public HashMap<String,T> toHashMap() {
@@ -46,7 +118,75 @@ public class PipelineList<T> extends ArrayList<T> {
 
 		return hm;
 	}
+
+	public PipelineIDMap<T> toIDMap() {
+		PipelineIDMap<T> map = new PipelineIDMap<T>(size());
+
+		for(T elem: this) {
+			map.put( ((PipelineItem)elem).getLongID(), elem);
+		}
+
+		return map;
+	}
    
-	public String toCompactString()    { return joinListCompact("\n"); }
-	@Override public String toString() { return joinList("\n"); }
+	public PipelineList<T> freeze() {
+		if (!frozen) {
+			frozen = true;
+			for (T elem: this) {
+				if (elem instanceof PipelineItem) {
+					((PipelineItem)elem).freeze();
+				} else if (elem instanceof PipelineCorefChain) {
+					((PipelineCorefChain)elem).freeze();
+				}
+			}
+		}
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	protected void checkFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException(
+				getClass().getSimpleName() + " is frozen"
+			);
+		}
+	}
+
+	@Override public boolean add(T e)                  { checkFrozen(); return super.add(e); }
+	@Override public void    add(int i, T e)           { checkFrozen(); super.add(i, e); }
+	@Override public T       set(int i, T e)           { checkFrozen(); return super.set(i, e); }
+	@Override public T       remove(int i)             { checkFrozen(); return super.remove(i); }
+	@Override public boolean remove(Object o)          { checkFrozen(); return super.remove(o); }
+	@Override public void    clear()                   { checkFrozen(); super.clear(); }
+	@Override public boolean addAll(Collection<? extends T> c)        { checkFrozen(); return super.addAll(c); }
+	@Override public boolean addAll(int i, Collection<? extends T> c) { checkFrozen(); return super.addAll(i, c); }
+	@Override public boolean removeAll(Collection<?> c)               { checkFrozen(); return super.removeAll(c); }
+	@Override public boolean retainAll(Collection<?> c)               { checkFrozen(); return super.retainAll(c); }
+	@Override public boolean removeIf(Predicate<? super T> p)         { checkFrozen(); return super.removeIf(p); }
+	@Override public void    replaceAll(UnaryOperator<T> op)          { checkFrozen(); super.replaceAll(op); }
+	@Override public void    sort(Comparator<? super T> c)            { checkFrozen(); super.sort(c); }
+	@Override protected void removeRange(int from, int to)            { checkFrozen(); super.removeRange(from, to); }
+
+	public String toCompactString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeCompactTo(sb);
+		} catch (IOException e) {
+			throw PipelineItem.renderError(e);
+		}
+		return sb.toString();
+	}
+
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb);
+		} catch (IOException e) {
+			throw PipelineItem.renderError(e);
+		}
+		return sb.toString();
+	}
 }
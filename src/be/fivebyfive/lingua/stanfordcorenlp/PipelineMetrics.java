@@ -0,0 +1,331 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Counters for a Pipeline with lingua.metrics turned on: wall time per
+ * annotator, time spent converting CoreNLP annotations into Pipeline*
+ * objects, and what went through (documents, sentences, tokens, and a
+ * histogram of document sizes in characters). Everything is a LongAdder, so
+ * recording from many threads does not contend.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+   public final static String JMX_DOMAIN = "be.fivebyfive.lingua.stanfordcorenlp";
+
+   // upper bounds (inclusive) of the document size buckets; one more bucket
+   // takes everything larger
+   public final static long[] SIZE_BUCKETS = {
+      1L << 10, 1L << 12, 1L << 14, 1L << 16, 1L << 18, 1L << 20
+   };
+
+   public static final class Stage {
+      final String        name;
+      final LongAdder     calls     = new LongAdder();
+      final LongAdder     nanos     = new LongAdder();
+      final LongAdder     tokens    = new LongAdder();
+      final AtomicLong    max       = new AtomicLong();
+      final AtomicInteger active    = new AtomicInteger();
+      final AtomicInteger maxActive = new AtomicInteger();
+
+      Stage(String name) {
+         this.name = name;
+      }
+
+      void record(long n) {
+         calls.increment();
+         nanos.add(n);
+         long m = max.get();
+         while (n > m && !max.compareAndSet(m, n)) {
+            m = max.get();
+         }
+      }
+
+      // for annotators: n nanoseconds over a document of tokenCount tokens
+      void record(long n, int tokenCount) {
+         record(n);
+         tokens.add(tokenCount);
+      }
+
+      // for stages that work queues up in: enter() on the way in, and
+      // leave() or abandon() on the way out
+      void enter() {
+         int n = active.incrementAndGet();
+         int m = maxActive.get();
+         while (n > m && !maxActive.compareAndSet(m, n)) {
+            m = maxActive.get();
+         }
+      }
+
+      void leave(long n) {
+         active.decrementAndGet();
+         record(n);
+      }
+
+      void abandon() {
+         active.decrementAndGet();
+      }
+
+      /*
+       * Adds prefix.calls, .time-ms, .max-ms, .per-second (calls since
+       * the given System.nanoTime()), .active and .max-active.
+       */
+      void snapshot(Map<String, Number> out, String prefix, long since) {
+         long n       = calls.sum();
+         long elapsed = System.nanoTime() - since;
+         out.put(prefix + ".calls",      n);
+         out.put(prefix + ".time-ms",    nanos.sum() / 1000000);
+         out.put(prefix + ".max-ms",     max.get() / 1000000);
+         out.put(prefix + ".per-second", elapsed > 0 ? n * 1e9 / elapsed : 0.0);
+         out.put(prefix + ".active",     active.get());
+         out.put(prefix + ".max-active", maxActive.get());
+      }
+
+      void reset() {
+         calls.reset();
+         nanos.reset();
+         tokens.reset();
+         max.set(0);
+         maxActive.set(active.get());
+      }
+   }
+
+   private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+   private final LongAdder   documents       = new LongAdder();
+   private final LongAdder   sentences       = new LongAdder();
+   private final LongAdder   tokens          = new LongAdder();
+   private final LongAdder   characters      = new LongAdder();
+   private final LongAdder   conversionNanos = new LongAdder();
+   private final LongAdder[] sizes           = new LongAdder[SIZE_BUCKETS.length + 1];
+
+   private ObjectName registeredAs = null;
+
+   public PipelineMetrics() {
+      for (int i = 0; i < sizes.length; i++) {
+         sizes[i] = new LongAdder();
+      }
+   }
+
+   // looked up once per stage when a Config is built, not per call
+   public synchronized Stage stage(String name) {
+      Stage s = stages.get(name);
+      if (s == null) {
+         s = new Stage(name);
+         stages.put(name, s);
+      }
+      return s;
+   }
+
+   private synchronized List<Stage> stageList() {
+      return new ArrayList<Stage>(stages.values());
+   }
+
+   public void document(int chars, int sentenceCount, int tokenCount, long conversion) {
+      documents.increment();
+      characters.add(chars);
+      sentences.add(sentenceCount);
+      tokens.add(tokenCount);
+      conversionNanos.add(conversion);
+
+      int b = 0;
+      while (b < SIZE_BUCKETS.length && chars > SIZE_BUCKETS[b]) {
+         b++;
+      }
+      sizes[b].increment();
+   }
+
+   public long getDocuments()  { return documents.sum(); }
+   public long getSentences()  { return sentences.sum(); }
+   public long getTokens()     { return tokens.sum(); }
+   public long getCharacters() { return characters.sum(); }
+
+   private long annotationNanos() {
+      long sum = 0;
+      for (Stage s : stageList()) {
+         sum += s.nanos.sum();
+      }
+      return sum;
+   }
+
+   public long getAnnotationTimeMillis() { return annotationNanos() / 1000000; }
+   public long getConversionTimeMillis() { return conversionNanos.sum() / 1000000; }
+
+   private static double perSecond(long count, long nanos) {
+      return nanos > 0 ? count * 1e9 / nanos : 0.0;
+   }
+
+   public double getTokensPerSecond() {
+      return perSecond(tokens.sum(), annotationNanos() + conversionNanos.sum());
+   }
+
+   public double getSentencesPerSecond() {
+      return perSecond(sentences.sum(), annotationNanos() + conversionNanos.sum());
+   }
+
+   public Map<String, Long> getStageCalls() {
+      Map<String, Long> out = new LinkedHashMap<String, Long>();
+      for (Stage s : stageList()) {
+         out.put(s.name, s.calls.sum());
+      }
+      return out;
+   }
+
+   public Map<String, Long> getStageTimesMillis() {
+      Map<String, Long> out = new LinkedHashMap<String, Long>();
+      for (Stage s : stageList()) {
+         out.put(s.name, s.nanos.sum() / 1000000);
+      }
+      return out;
+   }
+
+   public Map<String, Long> getStageMaxTimesMillis() {
+      Map<String, Long> out = new LinkedHashMap<String, Long>();
+      for (Stage s : stageList()) {
+         out.put(s.name, s.max.get() / 1000000);
+      }
+      return out;
+   }
+
+   // the tokens a stage was run over, which leave out the sentences taken
+   // from a sentence cache, or skipped by a guard
+   public Map<String, Long> getStageTokens() {
+      Map<String, Long> out = new LinkedHashMap<String, Long>();
+      for (Stage s : stageList()) {
+         out.put(s.name, s.tokens.sum());
+      }
+      return out;
+   }
+
+   public Map<String, Double> getStageTokensPerSecond() {
+      Map<String, Double> out = new LinkedHashMap<String, Double>();
+      for (Stage s : stageList()) {
+         out.put(s.name, perSecond(s.tokens.sum(), s.nanos.sum()));
+      }
+      return out;
+   }
+
+   public Map<String, Long> getDocumentSizeHistogram() {
+      Map<String, Long> out = new LinkedHashMap<String, Long>();
+      for (int i = 0; i < sizes.length; i++) {
+         out.put(i < SIZE_BUCKETS.length ? "le-" + SIZE_BUCKETS[i] : "gt-" + SIZE_BUCKETS[i - 1],
+                 sizes[i].sum());
+      }
+      return out;
+   }
+
+   public void reset() {
+      for (Stage s : stageList()) {
+         s.reset();
+      }
+      documents.reset();
+      sentences.reset();
+      tokens.reset();
+      characters.reset();
+      conversionNanos.reset();
+      for (LongAdder a : sizes) {
+         a.reset();
+      }
+   }
+
+   /*
+    * All of the above as one flat, sorted map with dotted keys
+    * (stage.parse.time-ms, document-size.le-1024, ...).
+    */
+   public Map<String, Number> snapshot() {
+      Map<String, Number> out = new TreeMap<String, Number>();
+      out.put("documents",            getDocuments());
+      out.put("sentences",            getSentences());
+      out.put("tokens",               getTokens());
+      out.put("characters",           getCharacters());
+      out.put("annotation-time-ms",   getAnnotationTimeMillis());
+      out.put("conversion-time-ms",   getConversionTimeMillis());
+      out.put("tokens-per-second",    getTokensPerSecond());
+      out.put("sentences-per-second", getSentencesPerSecond());
+
+      Map<String, Long>   calls = getStageCalls();
+      Map<String, Long>   times = getStageTimesMillis();
+      Map<String, Long>   maxes = getStageMaxTimesMillis();
+      Map<String, Long>   stageTokens = getStageTokens();
+      Map<String, Double> rates = getStageTokensPerSecond();
+      for (String name : calls.keySet()) {
+         out.put("stage." + name + ".calls",             calls.get(name));
+         out.put("stage." + name + ".time-ms",           times.get(name));
+         out.put("stage." + name + ".max-ms",            maxes.get(name));
+         out.put("stage." + name + ".tokens",            stageTokens.get(name));
+         out.put("stage." + name + ".tokens-per-second", rates.get(name));
+      }
+      for (Map.Entry<String, Long> e : getDocumentSizeHistogram().entrySet()) {
+         out.put("document-size." + e.getKey(), e.getValue());
+      }
+      return Collections.unmodifiableMap(out);
+   }
+
+   // one "key value" line per entry of snapshot()
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Number> e : snapshot().entrySet()) {
+         sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+      return sb.toString();
+   }
+
+   public synchronized void register(String name) {
+      unregister();
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName on = new ObjectName(
+            JMX_DOMAIN + ":type=PipelineMetrics,name=" + ObjectName.quote(name)
+         );
+         server.registerMBean(this, on);
+         registeredAs = on;
+      } catch (JMException e) {
+         System.err.println("PipelineMetrics.register(): " + e);
+      }
+   }
+
+   public synchronized void unregister() {
+      if (registeredAs != null) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+         } catch (JMException e) {
+            System.err.println("PipelineMetrics.unregister(): " + e);
+         }
+         registeredAs = null;
+      }
+   }
+
+   public synchronized ObjectName getObjectName() {
+      return registeredAs;
+   }
+}
@@ -0,0 +1,411 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.AnnotatorPool;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/*
+ * Hands out Pipelines by configuration name. All of them get their
+ * annotators from here, so an annotator that two configurations set up the
+ * same way (same name, same name.* properties) is loaded once and shared.
+ * Configurations that have not been used for a while can be unloaded, and
+ * annotators that no loaded (or loading) configuration uses any more are
+ * then dropped.
+ */
+public class PipelinePool {
+   /*
+    * Prefixes, beyond "<name>.", of properties that CoreNLP reads when it
+    * loads an annotator (see the factories in StanfordCoreNLP).
+    */
+   private final static Map<String, String[]> OTHER_PREFIXES = new HashMap<String, String[]>();
+   static {
+      OTHER_PREFIXES.put("tokenize", new String[] { "ssplit." });
+      OTHER_PREFIXES.put("ssplit",   new String[] { "tokenize." });
+      OTHER_PREFIXES.put("cleanxml", new String[] { "clean." });
+      OTHER_PREFIXES.put("ner",      new String[] { "sutime." });
+   }
+
+   private final Map<String, Properties>     definitions = new LinkedHashMap<String, Properties>();
+   private final Map<String, PooledPipeline> pipelines   = new LinkedHashMap<String, PooledPipeline>();
+
+   private final ConcurrentHashMap<String, FutureTask<Annotator>> annotators
+      = new ConcurrentHashMap<String, FutureTask<Annotator>>();
+
+   // the annotators in StanfordCoreNLP's static pool that were put there by
+   // loading the annotator with this key, and that go when it goes
+   private final ConcurrentHashMap<String, Annotator> coreNLPAnnotators
+      = new ConcurrentHashMap<String, Annotator>();
+
+   // annotators whose place in StanfordCoreNLP's static pool could not be
+   // looked up when they were loaded, with the reason why
+   private final ConcurrentHashMap<String, String> untracked
+      = new ConcurrentHashMap<String, String>();
+
+   // annotators dropped from this pool, and those of them that StanfordCoreNLP
+   // may still hold on to, because they could not be taken out of its pool
+   private final AtomicLong releases         = new AtomicLong();
+   private final AtomicLong releaseErrors    = new AtomicLong();
+   private volatile String  lastReleaseError = null;
+
+   public synchronized void define(String name, Properties props) {
+      Properties copy = new Properties();
+      copy.putAll(props);
+      definitions.put(name, copy);
+
+      // the Pipeline already handed out picks up the new properties
+      // the next time it is used
+      PooledPipeline p = pipelines.get(name);
+      if (p != null) {
+         p.setProperties(copy);
+         p.unload();
+         release();
+      }
+   }
+
+   public synchronized Set<String> getNames() {
+      return new HashSet<String>(definitions.keySet());
+   }
+
+   public synchronized Pipeline get(String name) {
+      PooledPipeline p = pipelines.get(name);
+      if (p == null) {
+         Properties props = definitions.get(name);
+         if (props == null) {
+            throw new IllegalArgumentException("PipelinePool.get(): no configuration named " + name);
+         }
+         p = new PooledPipeline(props);
+         pipelines.put(name, p);
+      }
+      p.touch();
+      return p;
+   }
+
+   /*
+    * Unloads the named configuration. The Pipeline handed out for it stays
+    * usable, and loads its annotators (from the pool) again when next used.
+    */
+   public synchronized boolean evict(String name) {
+      PooledPipeline p = pipelines.get(name);
+      if (p == null || !p.isLoaded()) {
+         return false;
+      }
+      p.unload();
+      release();
+      return true;
+   }
+
+   public synchronized List<String> evictIdle(long idleMillis) {
+      List<String> evicted = new ArrayList<String>();
+      long now = System.currentTimeMillis();
+
+      for (Map.Entry<String, PooledPipeline> e : pipelines.entrySet()) {
+         PooledPipeline p = e.getValue();
+         if (p.isLoaded() && now - p.lastUsed > idleMillis) {
+            p.unload();
+            evicted.add(e.getKey());
+         }
+      }
+      if (!evicted.isEmpty()) {
+         release();
+      }
+      return evicted;
+   }
+
+   public synchronized void shutdown() {
+      for (PooledPipeline p : pipelines.values()) {
+         p.shutdown();
+         p.unload();
+      }
+      release();
+   }
+
+   public int getAnnotatorCount() {
+      return annotators.size();
+   }
+
+   public long getReleaseErrors() {
+      return releaseErrors.get();
+   }
+
+   // what went wrong with the last annotator that could not be released, or null
+   public String getLastReleaseError() {
+      return lastReleaseError;
+   }
+
+   /*
+    * configurations (defined), loaded (configurations), annotators,
+    * releases (annotators dropped) and release-errors (of those, the ones
+    * StanfordCoreNLP may still hold on to).
+    */
+   public synchronized Map<String, Number> getMetrics() {
+      int loaded = 0;
+      for (PooledPipeline p : pipelines.values()) {
+         if (p.isLoaded()) {
+            loaded++;
+         }
+      }
+      Map<String, Number> out = new TreeMap<String, Number>();
+      out.put("configurations", definitions.size());
+      out.put("loaded",         loaded);
+      out.put("annotators",     annotators.size());
+      out.put("releases",       releases.get());
+      out.put("release-errors", releaseErrors.get());
+      return Collections.unmodifiableMap(out);
+   }
+
+   // one "key value" line per entry of getMetrics()
+   public String getMetricsString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Number> e : getMetrics().entrySet()) {
+         sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+      return sb.toString();
+   }
+
+   public synchronized boolean isLoaded(String name) {
+      PooledPipeline p = pipelines.get(name);
+      return p != null && p.isLoaded();
+   }
+
+   /*
+    * Drops the annotators no loaded configuration uses, nor one that is
+    * being loaded. StanfordCoreNLP keeps a static pool of its own, which
+    * would keep them alive, so they are taken out of that too; annotators
+    * that were in it before this pool loaded them belong to someone else,
+    * and stay.
+    */
+   private void release() {
+      Set<String> used = new HashSet<String>();
+      for (PooledPipeline p : pipelines.values()) {
+         Set<String> loading = p.loading;
+         if (loading != null) {
+            used.addAll(loading);
+         }
+         if (p.isLoaded()) {
+            used.addAll(p.keys);
+         }
+      }
+      for (String key : new ArrayList<String>(annotators.keySet())) {
+         if (!used.contains(key)) {
+            String name = key.substring(0, key.indexOf('{'));
+            annotators.remove(key);
+            releases.incrementAndGet();
+
+            String why = untracked.remove(key);
+            if (why != null) {
+               releaseError(name, why);
+            }
+            Annotator inner = coreNLPAnnotators.remove(key);
+            if (inner != null) {
+               try {
+                  removeFromCoreNLP(name, inner);
+               } catch (Exception e) {
+                  releaseError(name, e.toString());
+               }
+            }
+         }
+      }
+   }
+
+   private void releaseError(String name, String why) {
+      releaseErrors.incrementAndGet();
+      lastReleaseError = name + ": " + why;
+      System.err.println(
+         "PipelinePool: could not drop " + name + " from StanfordCoreNLP's pool, "
+         + "which may keep it loaded (" + why + ")"
+      );
+   }
+
+   /*
+    * StanfordCoreNLP's static pool, or null if it has none yet. It offers
+    * no way to drop a single annotator, so this reaches into it; it throws
+    * where that is not allowed, or the field is not there.
+    */
+   protected AnnotatorPool coreNLPPool() throws Exception {
+      Field field = StanfordCoreNLP.class.getDeclaredField("pool");
+      field.setAccessible(true);
+      synchronized (StanfordCoreNLP.class) {
+         return (AnnotatorPool)field.get(null);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static Map<String, Annotator> loadedIn(AnnotatorPool pool) throws Exception {
+      Field field = AnnotatorPool.class.getDeclaredField("annotators");
+      field.setAccessible(true);
+      return (Map<String, Annotator>)field.get(pool);
+   }
+
+   // the annotator StanfordCoreNLP has loaded under name, without loading it
+   private Annotator coreNLPAnnotator(String name) throws Exception {
+      AnnotatorPool pool = coreNLPPool();
+      if (pool == null) {
+         return null;
+      }
+      Map<String, Annotator> loaded = loadedIn(pool);
+      synchronized (pool) {
+         return loaded.get(name);
+      }
+   }
+
+   private void removeFromCoreNLP(String name, Annotator annotator) throws Exception {
+      AnnotatorPool pool = coreNLPPool();
+      if (pool != null) {
+         Map<String, Annotator> loaded = loadedIn(pool);
+         synchronized (pool) {
+            loaded.remove(name, annotator);
+         }
+      }
+   }
+
+   /*
+    * An annotator is shared between configurations when its name and every
+    * property that can affect it agree: those named "<name>.*", those under
+    * the other prefixes CoreNLP reads for it (OTHER_PREFIXES), and those
+    * with no dots at all other than "annotators".
+    */
+   protected static String annotatorKey(String name, Properties props) {
+      return name + annotatorProperties(name, props);
+   }
+
+   static Map<String, String> annotatorProperties(String name, Properties props) {
+      String[] others = OTHER_PREFIXES.get(name);
+      Map<String, String> relevant = new TreeMap<String, String>();
+      for (String key : props.stringPropertyNames()) {
+         boolean other = false;
+         for (int i = 0; others != null && i < others.length && !other; i++) {
+            other = key.startsWith(others[i]);
+         }
+         if (other || key.startsWith(name + ".") || (key.indexOf('.') < 0 && !key.equals("annotators"))) {
+            relevant.put(key, props.getProperty(key));
+         }
+      }
+      return relevant;
+   }
+
+   protected Annotator getAnnotator(final String name, final Properties props) {
+      final String key = annotatorKey(name, props);
+      FutureTask<Annotator> task = annotators.get(key);
+
+      if (task == null) {
+         FutureTask<Annotator> created = new FutureTask<Annotator>(new Callable<Annotator>() {
+            public Annotator call() {
+               Annotator before = null;
+               String    why    = null;
+               try {
+                  before = coreNLPAnnotator(name);
+               } catch (Exception e) {
+                  why = e.toString();
+               }
+               Annotator annotator = createAnnotator(name, props);
+               if (why == null) {
+                  try {
+                     Annotator after = coreNLPAnnotator(name);
+                     if (after != null && after != before) {
+                        coreNLPAnnotators.put(key, after);
+                     }
+                  } catch (Exception e) {
+                     why = e.toString();
+                  }
+               }
+               if (why != null) {
+                  untracked.put(key, why);
+               }
+               return annotator;
+            }
+         });
+         task = annotators.putIfAbsent(key, created);
+         if (task == null) {
+            task = created;
+            task.run();
+         }
+      }
+
+      try {
+         return task.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("PipelinePool.getAnnotator(): interrupted", e);
+      } catch (ExecutionException e) {
+         annotators.remove(key, task);
+         untracked.remove(key);
+         throw new RuntimeException("PipelinePool.getAnnotator(): " + e.getCause(), e.getCause());
+      }
+   }
+
+   protected Annotator createAnnotator(String name, Properties props) {
+      return Pipeline.loadAnnotator(name, props);
+   }
+
+   private class PooledPipeline extends Pipeline {
+      volatile long        lastUsed = System.currentTimeMillis();
+      volatile Set<String> keys     = new HashSet<String>();
+      volatile Set<String> loading  = null;
+
+      PooledPipeline(Properties props) {
+         super(props);
+      }
+
+      void touch() {
+         lastUsed = System.currentTimeMillis();
+      }
+
+      @Override
+      public synchronized void initPipeline() {
+         // release() reads this while annotators are being added to it
+         loading = ConcurrentHashMap.newKeySet();
+         try {
+            super.initPipeline();
+            keys = loading;
+         } finally {
+            loading = null;
+         }
+      }
+
+      @Override
+      protected Annotator createAnnotator(String name, Properties props) {
+         loading.add(annotatorKey(name, props));
+         return getAnnotator(name, props);
+      }
+
+      @Override
+      protected Config getConfig() {
+         touch();
+         return super.getConfig();
+      }
+   }
+}
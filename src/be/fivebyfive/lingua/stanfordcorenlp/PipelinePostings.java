@@ -0,0 +1,79 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+/*
+ * A growing, sorted list of distinct ints (sentence or chain numbers),
+ * stored as variable-length deltas: seven bits per byte, high bit set on
+ * all but the last byte of each delta. Neighbouring sentences mostly take
+ * one byte each.
+ */
+public class PipelinePostings {
+   private byte[] bytes  = new byte[4];
+   private int    length = 0;
+   private int    count  = 0;
+   private int    last   = -1;
+
+   public int size()         { return count; }
+   public int getByteSize()  { return length; }
+   public int getLast()      { return last; }
+
+   // ids must come in increasing order; repeating the last one is a no-op
+   public void add(int id) {
+      if (id <= last) {
+         if (id == last) {
+            return;
+         }
+         throw new IllegalArgumentException(
+            "PipelinePostings.add(): " + id + " after " + last
+         );
+      }
+      int delta = id - last;
+      if (length + 5 > bytes.length) {
+         byte[] grown = new byte[Math.max(bytes.length * 2, length + 5)];
+         System.arraycopy(bytes, 0, grown, 0, length);
+         bytes = grown;
+      }
+      while (delta >= 0x80) {
+         bytes[length++] = (byte)(delta | 0x80);
+         delta >>>= 7;
+      }
+      bytes[length++] = (byte)delta;
+      last = id;
+      count++;
+   }
+
+   public int[] toArray() {
+      int[] out = new int[count];
+      int   id  = -1;
+      int   pos = 0;
+      for (int i = 0; i < count; i++) {
+         int delta = 0;
+         int shift = 0;
+         byte b;
+         do {
+            b = bytes[pos++];
+            delta |= (b & 0x7f) << shift;
+            shift += 7;
+         } while (b < 0);
+         id += delta;
+         out[i] = id;
+      }
+      return out;
+   }
+}
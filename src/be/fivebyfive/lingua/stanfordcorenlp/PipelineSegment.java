@@ -0,0 +1,143 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A segment file written by PipelineSegmentWriter, memory-mapped. Documents
+ * and sentences are read in place through PipelineSegmentDocument and
+ * PipelineSegmentSentence views; only the symbol tables are loaded onto the
+ * heap. Safe to share between threads.
+ */
+public class PipelineSegment {
+   final static int MAGIC   = 0x4c53434e;
+   final static int VERSION = 1;
+
+   private final File       file;
+   private final ByteBuffer buf;
+
+   private final String[] posTags;
+   private final String[] nerTags;
+   private final String[] relations;
+   private final String[] longRelations;
+   private final String[] guards;
+
+   private final int docCount;
+   private final int docTable;
+   private final int sentenceCount;
+   private final int sentenceTable;
+
+   public PipelineSegment(File file) throws IOException {
+      this.file = file;
+
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+         raf.close();
+      }
+
+      int size = buf.capacity();
+      if (size < 20 || buf.getInt(0) != MAGIC || buf.getInt(size - 4) != MAGIC) {
+         throw new IOException("PipelineSegment: " + file + " is not a segment file");
+      }
+      if (buf.getInt(4) != VERSION) {
+         throw new IOException("PipelineSegment: " + file + " has version " + buf.getInt(4));
+      }
+
+      ByteBuffer symbols = buf.duplicate();
+      symbols.position(buf.getInt(size - 12));
+      posTags       = symbols(symbols);
+      nerTags       = symbols(symbols);
+      relations     = symbols(symbols);
+      longRelations = symbols(symbols);
+      guards        = symbols(symbols);
+
+      int index     = buf.getInt(size - 8);
+      docCount      = buf.getInt(index);
+      docTable      = index + 4;
+      sentenceCount = buf.getInt(docTable + 8 * docCount);
+      sentenceTable = docTable + 8 * docCount + 4;
+   }
+
+   public File getFile()          { return file; }
+   public int  getDocumentCount() { return docCount; }
+   public int  getSentenceCount() { return sentenceCount; }
+
+   public PipelineSegmentDocument getDocument(int doc) {
+      if (doc < 0 || doc >= docCount) {
+         throw new IndexOutOfBoundsException("PipelineSegment.getDocument(): " + doc);
+      }
+      int first = buf.getInt(docTable + 8 * doc);
+      int end   = doc + 1 < docCount ? buf.getInt(docTable + 8 * (doc + 1)) : sentenceCount;
+      return new PipelineSegmentDocument(this, doc, first, end - first, buf.getInt(docTable + 8 * doc + 4));
+   }
+
+   // sentence numbers run through the whole segment
+   public PipelineSegmentSentence getSentence(int sentence) {
+      if (sentence < 0 || sentence >= sentenceCount) {
+         throw new IndexOutOfBoundsException("PipelineSegment.getSentence(): " + sentence);
+      }
+      return new PipelineSegmentSentence(this, buf.getInt(sentenceTable + 4 * sentence));
+   }
+
+   public PipelineSegmentSentence getSentence(int doc, int sentence) {
+      return getDocument(doc).get(sentence);
+   }
+
+   ByteBuffer buffer() { return buf; }
+
+   String posTag(int code)       { return symbol(posTags, code); }
+   String nerTag(int code)       { return symbol(nerTags, code); }
+   String relation(int code)     { return symbol(relations, code); }
+   String longRelation(int code) { return symbol(longRelations, code); }
+   String guard(int code)        { return symbol(guards, code); }
+
+   String string(int start, int end) {
+      if (start < 0) {
+         return null;
+      }
+      byte[] bytes = new byte[end - start];
+      ByteBuffer b = buf.duplicate();
+      b.position(start);
+      b.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static String symbol(String[] table, int code) {
+      return code >= 0 && code < table.length ? table[code] : null;
+   }
+
+   private static String[] symbols(ByteBuffer in) {
+      String[] table = new String[in.getInt()];
+      for (int i = 0; i < table.length; i++) {
+         byte[] bytes = new byte[in.getShort() & 0xffff];
+         in.get(bytes);
+         // (writeUTF's modified UTF-8 only differs for NUL and supplementary
+         // characters, which tags don't have)
+         table[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      return table;
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * One document of a PipelineSegment. Mentions are returned as
+ * {sentNum, startIndex, endIndex, headIndex}, with sentence numbers
+ * counted from the start of the document.
+ */
+public class PipelineSegmentDocument {
+   private final PipelineSegment segment;
+   private final ByteBuffer      buf;
+   private final int             id;
+   private final int             firstSentence;
+   private final int             sentenceCount;
+   private final int             chainCount;
+   private final int[]           chainOffsets;
+
+   PipelineSegmentDocument(PipelineSegment segment, int id, int firstSentence,
+                           int sentenceCount, int corefOffset) {
+      this.segment       = segment;
+      this.buf           = segment.buffer();
+      this.id            = id;
+      this.firstSentence = firstSentence;
+      this.sentenceCount = sentenceCount;
+      this.chainCount    = buf.getInt(corefOffset);
+      this.chainOffsets  = new int[chainCount];
+
+      int offset = corefOffset + 4;
+      for (int i = 0; i < chainCount; i++) {
+         chainOffsets[i] = offset;
+         offset += 4 + 16 * (buf.getInt(offset) + 1);
+      }
+   }
+
+   public int getID()            { return id; }
+   public int getFirstSentence() { return firstSentence; }
+   public int size()             { return sentenceCount; }
+   public int getChainCount()    { return chainCount; }
+
+   public PipelineSegmentSentence get(int i) {
+      if (i < 0 || i >= sentenceCount) {
+         throw new IndexOutOfBoundsException("PipelineSegmentDocument.get(): " + i + " of " + sentenceCount);
+      }
+      return segment.getSentence(firstSentence + i);
+   }
+
+   public int getMentionCount(int chain) {
+      return buf.getInt(chainOffsets[chain]);
+   }
+
+   // null if the chain has no representative mention
+   public int[] getRepresentativeMention(int chain) {
+      return mention(chainOffsets[chain] + 4);
+   }
+
+   public int[] getMention(int chain, int m) {
+      if (m < 0 || m >= getMentionCount(chain)) {
+         throw new IndexOutOfBoundsException("PipelineSegmentDocument.getMention(): " + m);
+      }
+      return mention(chainOffsets[chain] + 20 + 16 * m);
+   }
+
+   /*
+    * Copies the document onto the heap, as Pipeline.process() would have
+    * returned it: each coref chain belongs to the sentence of its
+    * representative mention.
+    */
+   public PipelineSentenceList toSentenceList() {
+      PipelineSentenceList    list   = new PipelineSentenceList();
+      List<PipelineTokenList> tokens = new ArrayList<PipelineTokenList>(sentenceCount);
+      for (int i = 0; i < sentenceCount; i++) {
+         PipelineSentence sentence = get(i).toSentence();
+         if (sentence.getGuard() != null) {
+            list.addGuard(sentence.getGuard());
+         }
+         list.add(sentence);
+         tokens.add(sentence.getTokens());
+      }
+
+      for (int c = 0; c < chainCount; c++) {
+         int[] rep = getRepresentativeMention(c);
+         if (rep == null) {
+            continue;
+         }
+         PipelineCorefChain chain = new PipelineCorefChain();
+         chain.setRepresentativeMention(toMention(rep, tokens));
+         for (int m = 0; m < getMentionCount(c); m++) {
+            chain.addMention(toMention(getMention(c, m), tokens));
+         }
+         list.get(rep[0]).addCorefChain(chain);
+      }
+      return list;
+   }//toSentenceList
+
+   private int[] mention(int offset) {
+      int sentNum = buf.getInt(offset);
+      if (sentNum < 0) {
+         return null;
+      }
+      return new int[] { sentNum, buf.getInt(offset + 4), buf.getInt(offset + 8), buf.getInt(offset + 12) };
+   }
+
+   private static PipelineCorefMention toMention(int[] m, List<PipelineTokenList> tokens) {
+      PipelineCorefMention mention = new PipelineCorefMention(m[1], m[2], m[3], m[0]);
+      mention.setTokens(tokens.get(m[0]).view(m[1], m[2]));
+      return mention;
+   }
+}
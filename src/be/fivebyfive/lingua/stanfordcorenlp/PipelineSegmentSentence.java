@@ -0,0 +1,147 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.nio.ByteBuffer;
+
+/*
+ * One sentence of a PipelineSegment, read straight from the mapped file
+ * (see PipelineSegmentWriter for the layout). Strings are decoded on each
+ * call; toSentence() copies the whole sentence onto the heap.
+ */
+public class PipelineSegmentSentence {
+   private final PipelineSegment segment;
+   private final ByteBuffer      buf;
+
+   private final int tokenCount;
+   private final int depCount;
+   private final int guard;
+   private final int sentenceStart;
+   private final int sentenceEnd;
+
+   private final int wordStart;
+   private final int wordEnd;
+   private final int lemmaStart;
+   private final int lemmaEnd;
+   private final int pos;
+   private final int ner;
+   private final int governors;
+   private final int dependents;
+   private final int relations;
+   private final int longRelations;
+   private final int strings;
+
+   PipelineSegmentSentence(PipelineSegment segment, int offset) {
+      this.segment = segment;
+      this.buf     = segment.buffer();
+
+      int n = tokenCount = buf.getInt(offset);
+      int d = depCount   = buf.getInt(offset + 4);
+      guard              = buf.getInt(offset + 8);
+      sentenceStart      = buf.getInt(offset + 16);
+      sentenceEnd        = buf.getInt(offset + 20);
+
+      wordStart     = offset + 24;
+      wordEnd       = wordStart  + 4 * n;
+      lemmaStart    = wordEnd    + 4 * n;
+      lemmaEnd      = lemmaStart + 4 * n;
+      pos           = lemmaEnd   + 4 * n;
+      ner           = pos        + 2 * n;
+      governors     = ner        + 2 * n;
+      dependents    = governors  + 4 * d;
+      relations     = dependents + 4 * d;
+      longRelations = relations  + 2 * d;
+      strings       = longRelations + 2 * d;
+   }
+
+   public int    size()               { return tokenCount; }
+   public int    getDependencyCount() { return depCount; }
+   public String getSentence()        { return string(sentenceStart, sentenceEnd); }
+   public String getGuard()           { return segment.guard(guard); }
+
+   public String getWord(int i) {
+      check(i, tokenCount);
+      return string(buf.getInt(wordStart + 4 * i), buf.getInt(wordEnd + 4 * i));
+   }
+
+   public String getLemma(int i) {
+      check(i, tokenCount);
+      return string(buf.getInt(lemmaStart + 4 * i), buf.getInt(lemmaEnd + 4 * i));
+   }
+
+   public String getPOSTag(int i) {
+      check(i, tokenCount);
+      return segment.posTag(buf.getShort(pos + 2 * i));
+   }
+
+   public String getNERTag(int i) {
+      check(i, tokenCount);
+      return segment.nerTag(buf.getShort(ner + 2 * i));
+   }
+
+   public int getGovernorIndex(int j) {
+      check(j, depCount);
+      return buf.getInt(governors + 4 * j);
+   }
+
+   public int getDependentIndex(int j) {
+      check(j, depCount);
+      return buf.getInt(dependents + 4 * j);
+   }
+
+   public String getRelation(int j) {
+      check(j, depCount);
+      return segment.relation(buf.getShort(relations + 2 * j));
+   }
+
+   public String getLongRelation(int j) {
+      check(j, depCount);
+      return segment.longRelation(buf.getShort(longRelations + 2 * j));
+   }
+
+   public PipelineSentence toSentence() {
+      PipelineTokenList tokens = new PipelineTokenList();
+      for (int i = 0; i < tokenCount; i++) {
+         tokens.add(new PipelineToken(getWord(i), getPOSTag(i), getNERTag(i), getLemma(i)));
+      }
+
+      PipelineDependencyList deps = new PipelineDependencyList();
+      for (int j = 0; j < depCount; j++) {
+         int gov = getGovernorIndex(j);
+         int dep = getDependentIndex(j);
+         deps.add(new PipelineDependency(
+            tokens.get(gov), tokens.get(dep), gov, dep,
+            getRelation(j), getLongRelation(j)
+         ));
+      }
+
+      PipelineSentence sentence = new PipelineSentence(getSentence(), tokens, deps);
+      sentence.setGuard(getGuard());
+      return sentence;
+   }//toSentence
+
+   private String string(int start, int end) {
+      return start < 0 ? null : segment.string(strings + start, strings + end);
+   }
+
+   private static void check(int i, int n) {
+      if (i < 0 || i >= n) {
+         throw new IndexOutOfBoundsException("PipelineSegmentSentence: " + i + " of " + n);
+      }
+   }
+}
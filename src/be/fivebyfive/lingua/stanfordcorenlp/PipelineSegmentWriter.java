@@ -0,0 +1,291 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Streams annotated documents into a segment file, to be read back with
+ * PipelineSegment. Either add() whole PipelineSentenceLists, or use the
+ * writer as a PipelineListener and call endDocument() after each document.
+ *
+ * All numbers are big-endian, and all offsets ints, so a segment holds at
+ * most 2GB; start a new one when getSize() gets close. The layout is
+ *
+ *   MAGIC VERSION
+ *   sentence*, then the coref block, for each document
+ *   symbol tables: POS, NER, relations, long relations, guards
+ *   index: docCount (firstSentence corefOffset)*  sentenceCount sentenceOffset*
+ *   symbolsOffset indexOffset MAGIC
+ *
+ * where a sentence is
+ *
+ *   tokenCount depCount guard stringBytes sentenceStart sentenceEnd
+ *   wordStart[n] wordEnd[n] lemmaStart[n] lemmaEnd[n] (ints)
+ *   pos[n] ner[n] (shorts)  governor[d] dependent[d] (ints)
+ *   relation[d] longRelation[d] (shorts)  UTF-8 strings
+ *
+ * with string offsets relative to the strings, -1 for null, and symbol
+ * codes -1 for null; and the coref block is
+ *
+ *   chainCount (mentionCount representative mention*)*
+ *
+ * with each mention written as sentNum start end head (sentNum -1 for a
+ * missing representative).
+ */
+public class PipelineSegmentWriter implements PipelineListener, Closeable {
+   private final DataOutputStream out;
+
+   private final PipelineSymbolTable posTags       = new PipelineSymbolTable(PipelineSymbolTable.MAX_LIMIT);
+   private final PipelineSymbolTable nerTags       = new PipelineSymbolTable(PipelineSymbolTable.MAX_LIMIT);
+   private final PipelineSymbolTable relations     = new PipelineSymbolTable(PipelineSymbolTable.MAX_LIMIT);
+   private final PipelineSymbolTable longRelations = new PipelineSymbolTable(PipelineSymbolTable.MAX_LIMIT);
+   private final PipelineSymbolTable guards        = new PipelineSymbolTable(PipelineSymbolTable.MAX_LIMIT);
+
+   private int   docCount        = 0;
+   private int[] docFirst        = new int[16];
+   private int[] docCoref        = new int[16];
+   private int   sentenceCount   = 0;
+   private int[] sentenceOffsets = new int[16];
+
+   private int                      docStart = 0;
+   private boolean                  open     = false;
+   private final List<PipelineCorefChain> chains = new ArrayList<PipelineCorefChain>();
+   private final ByteArrayOutputStream    strings = new ByteArrayOutputStream();
+
+   public PipelineSegmentWriter(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      out.writeInt(PipelineSegment.MAGIC);
+      out.writeInt(PipelineSegment.VERSION);
+   }
+
+   public int getDocumentCount() { return docCount; }
+   public int getSentenceCount() { return sentenceCount; }
+   public int getSize()          { return out.size(); }
+
+   // returns the number of the document in the segment
+   public int add(PipelineSentenceList document) {
+      for (PipelineSentence sentence : document) {
+         sentence(sentence);
+         corefChains(sentence.getCorefChains());
+      }
+      return endDocument();
+   }
+
+   public void sentence(PipelineSentence sentence) {
+      PipelineTokenList      tokens = sentence.getTokens();
+      PipelineDependencyList deps   = sentence.getDependencies();
+      int n = tokens.size();
+      int d = deps.size();
+
+      int[] wordStart  = new int[n];
+      int[] wordEnd    = new int[n];
+      int[] lemmaStart = new int[n];
+      int[] lemmaEnd   = new int[n];
+
+      strings.reset();
+      int sentenceStart = append(sentence.getSentence());
+      int sentenceEnd   = sentenceStart < 0 ? -1 : strings.size();
+      for (int i = 0; i < n; i++) {
+         PipelineToken t = tokens.get(i);
+         wordStart[i] = append(t.getWord());
+         wordEnd[i]   = wordStart[i] < 0 ? -1 : strings.size();
+         if (t.getLemma() != null && t.getLemma().equals(t.getWord())) {
+            lemmaStart[i] = wordStart[i];
+            lemmaEnd[i]   = wordEnd[i];
+         } else {
+            lemmaStart[i] = append(t.getLemma());
+            lemmaEnd[i]   = lemmaStart[i] < 0 ? -1 : strings.size();
+         }
+      }
+
+      // all codes first, so that a full table leaves no half-written sentence
+      int     guard   = code(guards, sentence.getGuard());
+      short[] pos     = new short[n];
+      short[] ner     = new short[n];
+      short[] rel     = new short[d];
+      short[] longRel = new short[d];
+      for (int i = 0; i < n; i++) {
+         pos[i] = code(posTags, tokens.get(i).getPOSTag());
+         ner[i] = code(nerTags, tokens.get(i).getNERTag());
+      }
+      for (int j = 0; j < d; j++) {
+         rel[j]     = code(relations, deps.get(j).getRelation());
+         longRel[j] = code(longRelations, deps.get(j).getLongRelation());
+      }
+
+      try {
+         open = true;
+         sentenceOffsets = PipelineColumnarDocument.grow(sentenceOffsets, sentenceCount);
+         sentenceOffsets[sentenceCount++] = position();
+
+         out.writeInt(n);
+         out.writeInt(d);
+         out.writeInt(guard);
+         out.writeInt(strings.size());
+         out.writeInt(sentenceStart);
+         out.writeInt(sentenceEnd);
+         ints(wordStart);
+         ints(wordEnd);
+         ints(lemmaStart);
+         ints(lemmaEnd);
+         for (int i = 0; i < n; i++) {
+            out.writeShort(pos[i]);
+         }
+         for (int i = 0; i < n; i++) {
+            out.writeShort(ner[i]);
+         }
+         for (int j = 0; j < d; j++) {
+            out.writeInt(deps.get(j).getGovernorIndex());
+         }
+         for (int j = 0; j < d; j++) {
+            out.writeInt(deps.get(j).getDependentIndex());
+         }
+         for (int j = 0; j < d; j++) {
+            out.writeShort(rel[j]);
+         }
+         for (int j = 0; j < d; j++) {
+            out.writeShort(longRel[j]);
+         }
+         strings.writeTo(out);
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineSegmentWriter.sentence(): " + e.getMessage(), e);
+      }
+   }//sentence
+
+   // a segment has room for MAX_LIMIT symbols of each kind
+   private static short code(PipelineSymbolTable table, String symbol) {
+      short code = table.code(symbol);
+      if (code == PipelineSymbolTable.UNCODED) {
+         throw new RuntimeException(
+            "PipelineSegmentWriter.sentence(): more than " + table.getLimit()
+            + " distinct symbols in one segment, can't add \"" + symbol + "\""
+         );
+      }
+      return code;
+   }
+
+   public void corefChains(PipelineCorefChainList chains) {
+      open = true;
+      this.chains.addAll(chains);
+   }
+
+   // writes the coref chains of the current document, and returns its number
+   public int endDocument() {
+      try {
+         docFirst = PipelineColumnarDocument.grow(docFirst, docCount);
+         docCoref = PipelineColumnarDocument.grow(docCoref, docCount);
+         docFirst[docCount] = docStart;
+         docCoref[docCount] = position();
+
+         out.writeInt(chains.size());
+         for (PipelineCorefChain chain : chains) {
+            out.writeInt(chain.getMentions().size());
+            mention(chain.getRepresentativeMention());
+            for (PipelineCorefMention m : chain.getMentions()) {
+               mention(m);
+            }
+         }
+      } catch (IOException e) {
+         throw new RuntimeException("PipelineSegmentWriter.endDocument(): " + e.getMessage(), e);
+      }
+      chains.clear();
+      docStart = sentenceCount;
+      open     = false;
+      return docCount++;
+   }//endDocument
+
+   public void close() throws IOException {
+      if (open) {
+         endDocument();
+      }
+
+      int symbolsOffset = position();
+      for (PipelineSymbolTable table : new PipelineSymbolTable[] {
+              posTags, nerTags, relations, longRelations, guards }) {
+         int size = table.size();
+         out.writeInt(size);
+         for (int i = 0; i < size; i++) {
+            out.writeUTF(table.symbol(i));
+         }
+      }
+
+      int indexOffset = position();
+      out.writeInt(docCount);
+      for (int i = 0; i < docCount; i++) {
+         out.writeInt(docFirst[i]);
+         out.writeInt(docCoref[i]);
+      }
+      out.writeInt(sentenceCount);
+      for (int i = 0; i < sentenceCount; i++) {
+         out.writeInt(sentenceOffsets[i]);
+      }
+
+      out.writeInt(symbolsOffset);
+      out.writeInt(indexOffset);
+      out.writeInt(PipelineSegment.MAGIC);
+      out.close();
+   }//close
+
+   // DataOutputStream.size() stops counting at Integer.MAX_VALUE
+   private int position() {
+      if (out.size() == Integer.MAX_VALUE) {
+         throw new IllegalStateException("PipelineSegmentWriter: segment is full");
+      }
+      return out.size();
+   }
+
+   private int append(String str) {
+      if (str == null) {
+         return -1;
+      }
+      int start = strings.size();
+      byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+      strings.write(bytes, 0, bytes.length);
+      return start;
+   }
+
+   private void ints(int[] values) throws IOException {
+      for (int v : values) {
+         out.writeInt(v);
+      }
+   }
+
+   private void mention(PipelineCorefMention m) throws IOException {
+      if (m == null) {
+         out.writeInt(-1);
+         out.writeInt(0);
+         out.writeInt(0);
+         out.writeInt(0);
+         return;
+      }
+      out.writeInt(m.getSentNum());
+      out.writeInt(m.getStartIndex());
+      out.writeInt(m.getEndIndex());
+      out.writeInt(m.getHeadIndex());
+   }
+}
@@ -17,12 +17,16 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+
 public class PipelineSentence extends PipelineItem {
+   private final static long serialVersionUID = 1L;
 
    private String sentence;
    private PipelineTokenList tokens;
    private PipelineDependencyList dependencies;
    private PipelineCorefChainList corefChains = new PipelineCorefChainList();
+   private String guard = null;
 
    public String                   getSentence()     { return sentence; }
    public PipelineTokenList        getTokens()       { return tokens; }
@@ -31,6 +35,20 @@ public class PipelineSentence extends PipelineItem {
    public void addCorefChain(PipelineCorefChain crc) {
       this.corefChains.add(crc);
    }
+
+   // the guard that kept some annotator from this sentence, if any
+   public String getGuard()           { return guard; }
+   public void   setGuard(String g)   { checkFrozen(); guard = g; }
+
+   @Override
+   public void freeze() {
+      if (!frozen) {
+         tokens.freeze();
+         dependencies.freeze();
+         corefChains.freeze();
+         super.freeze();
+      }
+   }
    
    public PipelineSentence() {
       sentence = "";
@@ -47,17 +65,30 @@ public class PipelineSentence extends PipelineItem {
       this.dependencies = dependencies;
    }
    
-   public String toCompactString() {
-      return join("\n");
+   public void writeCompactTo(Appendable out) throws IOException {
+      writeTo(out, "\n");
    }
 
-   @Override
-   public String toString() {
-      return join("\n\n");
+   public void writeTo(Appendable out) throws IOException {
+      writeTo(out, "\n\n");
+   }
+
+   public void writeTo(Appendable out, String sep) throws IOException {
+      out.append(sentence).append(sep);
+      tokens.writeTo(out);
+      out.append(sep);
+      dependencies.writeTo(out);
+      out.append(sep);
+      corefChains.writeTo(out);
    }
 
    public String join(String sep) {
-      return sentence + sep + tokens.toString() + sep + dependencies.toString() + sep
-              + corefChains.toString();
+      StringBuilder sb = new StringBuilder();
+      try {
+         writeTo(sb, sep);
+      } catch (IOException e) {
+         throw renderError(e);
+      }
+      return sb.toString();
    }
 }
@@ -0,0 +1,289 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NormalizedNamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraph;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation;
+
+import edu.stanford.nlp.util.CoreMap;
+
+/*
+ * An LRU cache of the sentence-local annotations (POS, lemma, NER, parse)
+ * of sentences, keyed by their whitespace-normalized text. A hit restores
+ * those annotations onto a freshly tokenized sentence, so that document-level
+ * annotators such as dcoref can still run over it, and hands back copies
+ * of the token and dependency lists converted the first time round. The
+ * cache keeps frozen copies of its own, so the lists handed back by process()
+ * stay the caller's to change. A cache made for one document's edits (see
+ * Pipeline.processIncremental()) keeps and hands back the lists themselves
+ * instead, so that unchanged sentences keep their tokens.
+ */
+public class PipelineSentenceCache {
+   public static class Entry {
+      final String[]      pos;
+      final String[]      lemma;
+      final String[]      ner;
+      final String[]      normalizedNer;
+      final Tree          tree;
+      final SemanticGraph basic;
+      final SemanticGraph collapsed;
+      final SemanticGraph processed;
+
+      final PipelineTokenList      tokens;
+      final PipelineDependencyList dependencies;
+      final boolean                shared;
+
+      Entry(CoreMap sentence, PipelineTokenList tokens, PipelineDependencyList dependencies,
+            boolean shared) {
+         List<CoreLabel> labels = sentence.get(TokensAnnotation.class);
+         int n = labels.size();
+
+         pos           = new String[n];
+         lemma         = new String[n];
+         ner           = new String[n];
+         normalizedNer = new String[n];
+         for (int i = 0; i < n; i++) {
+            CoreLabel token  = labels.get(i);
+            pos[i]           = token.get(PartOfSpeechAnnotation.class);
+            lemma[i]         = token.get(LemmaAnnotation.class);
+            ner[i]           = token.get(NamedEntityTagAnnotation.class);
+            normalizedNer[i] = token.get(NormalizedNamedEntityTagAnnotation.class);
+         }
+         tree      = sentence.get(TreeAnnotation.class);
+         basic     = sentence.get(BasicDependenciesAnnotation.class);
+         collapsed = sentence.get(CollapsedDependenciesAnnotation.class);
+         processed = sentence.get(CollapsedCCProcessedDependenciesAnnotation.class);
+
+         this.shared = shared;
+         if (shared) {
+            this.tokens       = tokens;
+            this.dependencies = dependencies;
+         } else {
+            PipelineSentence own = copy(null, tokens, dependencies);
+            this.tokens       = own.getTokens();
+            this.dependencies = own.getDependencies();
+            this.tokens.freeze();
+            this.dependencies.freeze();
+         }
+      }
+
+      public PipelineTokenList      getTokens()       { return tokens; }
+      public PipelineDependencyList getDependencies() { return dependencies; }
+
+      // the cached sentence as process() hands it back: a copy, or for a
+      // shared entry the very tokens and dependencies it was made from
+      public PipelineSentence sentence(String text) {
+         return shared ? new PipelineSentence(text, tokens, dependencies) : copy(text);
+      }
+
+      /*
+       * A sentence of new tokens and dependencies, equal to the cached ones
+       * but with IDs of their own, so that no two documents share an ID.
+       */
+      public PipelineSentence copy(String text) {
+         return copy(text, tokens, dependencies);
+      }
+
+      private static PipelineSentence copy(String text, PipelineTokenList tokens,
+                                           PipelineDependencyList dependencies) {
+         PipelineTokenList      copiedTokens       = new PipelineTokenList();
+         PipelineDependencyList copiedDependencies = new PipelineDependencyList();
+
+         for (PipelineToken token : tokens) {
+            copiedTokens.add(new PipelineToken(token));
+         }
+         for (PipelineDependency dependency : dependencies) {
+            copiedDependencies.add(new PipelineDependency(
+               dependency,
+               copiedTokens.get(dependency.getGovernorIndex()),
+               copiedTokens.get(dependency.getDependentIndex())
+            ));
+         }
+         return new PipelineSentence(text, copiedTokens, copiedDependencies);
+      }
+
+      boolean restore(CoreMap sentence) {
+         List<CoreLabel> labels = sentence.get(TokensAnnotation.class);
+         if (labels == null || labels.size() != pos.length) {
+            return false;
+         }
+
+         for (int i = 0; i < pos.length; i++) {
+            CoreLabel token = labels.get(i);
+            if (pos[i] != null) {
+               token.set(PartOfSpeechAnnotation.class, pos[i]);
+            }
+            if (lemma[i] != null) {
+               token.set(LemmaAnnotation.class, lemma[i]);
+            }
+            if (ner[i] != null) {
+               token.set(NamedEntityTagAnnotation.class, ner[i]);
+            }
+            if (normalizedNer[i] != null) {
+               token.set(NormalizedNamedEntityTagAnnotation.class, normalizedNer[i]);
+            }
+         }
+         // later annotators may modify these, so each document gets copies
+         if (tree != null) {
+            sentence.set(TreeAnnotation.class, tree.deepCopy());
+         }
+         if (basic != null) {
+            sentence.set(BasicDependenciesAnnotation.class, copy(basic, labels));
+         }
+         if (collapsed != null) {
+            sentence.set(CollapsedDependenciesAnnotation.class, copy(collapsed, labels));
+         }
+         if (processed != null) {
+            sentence.set(CollapsedCCProcessedDependenciesAnnotation.class, copy(processed, labels));
+         }
+         return true;
+      }
+
+      /*
+       * A copy of g with nodes of its own, each taking on the annotations
+       * (offsets, sentence index, tags) of the token at its index in labels,
+       * rather than those of the document the graph was cached from.
+       */
+      private static SemanticGraph copy(SemanticGraph g, List<CoreLabel> labels) {
+         SemanticGraph                 copy  = new SemanticGraph();
+         Map<IndexedWord, IndexedWord> nodes = new HashMap<IndexedWord, IndexedWord>();
+
+         for (IndexedWord node : g.vertexSet()) {
+            IndexedWord own = new IndexedWord(node);
+            int i = node.index() - 1;
+            if (i >= 0 && i < labels.size()) {
+               copyAnnotations(labels.get(i), own);
+            }
+            nodes.put(node, own);
+            copy.addVertex(own);
+         }
+         List<IndexedWord> roots = new ArrayList<IndexedWord>();
+         for (IndexedWord root : g.getRoots()) {
+            roots.add(nodes.get(root));
+         }
+         copy.setRoots(roots);
+         for (SemanticGraphEdge edge : g.edgeIterable()) {
+            copy.addEdge(nodes.get(edge.getGovernor()), nodes.get(edge.getDependent()),
+                         edge.getRelation(), edge.getWeight());
+         }
+         return copy;
+      }
+
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      private static void copyAnnotations(CoreMap from, CoreMap to) {
+         for (Class key : from.keySet()) {
+            to.set(key, from.get(key));
+         }
+      }
+   }
+
+   private final int     maxEntries;
+   private final boolean shared;
+   private final LinkedHashMap<String, Entry> entries;
+
+   private long hits      = 0;
+   private long misses    = 0;
+   private long evictions = 0;
+
+   public PipelineSentenceCache(int maxEntries) {
+      this(maxEntries, false);
+   }
+
+   // shared: keep the converted lists put in, rather than frozen copies
+   public PipelineSentenceCache(int maxEntries, boolean shared) {
+      this.maxEntries = maxEntries;
+      this.shared     = shared;
+      this.entries    = new LinkedHashMap<String, PipelineSentenceCache.Entry>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, PipelineSentenceCache.Entry> eldest) {
+            if (size() > PipelineSentenceCache.this.maxEntries) {
+               evictions++;
+               return true;
+            }
+            return false;
+         }
+      };
+   }
+
+   public synchronized long getHits()      { return hits; }
+   public synchronized long getMisses()    { return misses; }
+   public synchronized long getEvictions() { return evictions; }
+   public synchronized int  size()         { return entries.size(); }
+
+   public synchronized double getHitRate() {
+      return hits + misses > 0 ? (double)hits / (hits + misses) : 0.0;
+   }
+
+   public synchronized void clear() {
+      entries.clear();
+   }
+
+   /*
+    * Restores the cached annotations onto sentence and returns the entry,
+    * or returns null if there is nothing (usable) cached for it.
+    */
+   public Entry restore(CoreMap sentence) {
+      Entry e;
+      synchronized (this) {
+         e = entries.get(normalize(sentence.get(TextAnnotation.class)));
+      }
+      boolean hit = e != null && e.restore(sentence);
+      synchronized (this) {
+         if (hit) {
+            hits++;
+         } else {
+            misses++;
+         }
+      }
+      return hit ? e : null;
+   }
+
+   public void put(CoreMap sentence, PipelineSentence converted) {
+      put(sentence, new Entry(sentence, converted.getTokens(), converted.getDependencies(), shared));
+   }
+
+   void put(CoreMap sentence, Entry e) {
+      synchronized (this) {
+         entries.put(normalize(sentence.get(TextAnnotation.class)), e);
+      }
+   }
+
+   public static String normalize(String sentence) {
+      return sentence == null ? "" : sentence.trim().replaceAll("\\s+", " ");
+   }
+}
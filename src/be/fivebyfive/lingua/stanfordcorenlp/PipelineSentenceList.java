@@ -17,4 +17,28 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
-public class PipelineSentenceList extends PipelineList<PipelineSentence> { }
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PipelineSentenceList extends PipelineList<PipelineSentence> {
+	private final static long serialVersionUID = 1L;
+
+	private final List<String> guards = new ArrayList<String>();
+
+	// what Pipeline.processIncremental() keeps of each sentence, or null;
+	// not serialized, so a result read back in starts over
+	transient PipelineSentenceCache incremental = null;
+
+	// names of the guards that tripped while annotating this document
+	public List<String> getGuards() {
+		return Collections.unmodifiableList(guards);
+	}
+
+	public void addGuard(String guard) {
+		checkFrozen();
+		if (!guards.contains(guard)) {
+			guards.add(guard);
+		}
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Serves one Pipeline to any number of local client processes, so that
+ * they share one JVM and one copy of the models. Listens on localhost TCP
+ * or, on Java 16 and later, on a Unix domain socket.
+ *
+ * Requests and responses are frames of one type byte, a big-endian int
+ * length and that many bytes of UTF-8:
+ *
+ *   request  'J' text   ->  'J' JSON, as Pipeline.processToJson() writes it
+ *   request  'M' -      ->  'M' getMetricsString()
+ *   request  'P' -      ->  'P' -
+ *
+ * or, for any request, 'G' "guard<TAB>message" when a guard tripped, and
+ * 'E' message for anything else that went wrong. A connection takes any
+ * number of requests, one after the other; clients wanting more than one
+ * at a time open more connections.
+ *
+ * Reading requests and writing responses happens on a thread per
+ * connection, which is a virtual thread where the JVM has them (Java 21);
+ * annotation happens on the fixed pool behind processAsync(), so
+ * lingua.threads, lingua.queue-size and lingua.queue-policy apply, and
+ * thousands of connections still only make lingua.threads annotators run
+ * at once.
+ */
+public class PipelineServer {
+   public final static byte PROCESS = 'J';
+   public final static byte METRICS = 'M';
+   public final static byte PING    = 'P';
+   public final static byte GUARD   = 'G';
+   public final static byte ERROR   = 'E';
+
+   public final static int  DEFAULT_PORT      = 9099;
+   public final static int  DEFAULT_MAX_FRAME = 64 << 20;
+
+   // connections waiting to be accepted; the JDK default of 50 drops
+   // connections when many clients connect at once
+   protected final static int BACKLOG = 1024;
+
+   private final Pipeline pipeline;
+   private int            maxFrame       = DEFAULT_MAX_FRAME;
+   private boolean        virtualThreads = true;
+   private boolean        virtual        = false;
+
+   private final PipelineMetrics.Stage connection = new PipelineMetrics.Stage("connection");
+   private final PipelineMetrics.Stage intake     = new PipelineMetrics.Stage("intake");
+   private final PipelineMetrics.Stage serialize  = new PipelineMetrics.Stage("serialize");
+   private final LongAdder             bytesIn    = new LongAdder();
+   private final LongAdder             bytesOut   = new LongAdder();
+   private volatile long               since      = System.nanoTime();
+
+   private ServerSocketChannel      server      = null;
+   private File                     socketFile  = null;
+   private ExecutorService          connections = null;
+   private final Set<SocketChannel> clients     = new HashSet<SocketChannel>();
+
+   public PipelineServer(Pipeline pipeline) {
+      this.pipeline = pipeline;
+   }
+
+   public Pipeline getPipeline()         { return pipeline; }
+   public int      getMaxFrame()         { return maxFrame; }
+   public void     setMaxFrame(int size) { maxFrame = size; }
+
+   // takes effect on the next listen(); false for platform threads
+   public synchronized void setVirtualThreads(boolean v) { virtualThreads = v; }
+
+   // whether connections are actually served on virtual threads
+   public synchronized boolean isVirtualThreads() { return virtual; }
+
+   // port 0 picks a free one; see getPort()
+   public synchronized void listen(int port) throws IOException {
+      ServerSocketChannel ch = ServerSocketChannel.open();
+      ch.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+      start(ch, null);
+   }
+
+   public synchronized void listen(File socket) throws IOException {
+      SocketAddress   address;
+      ServerSocketChannel ch;
+      try {
+         // UnixDomainSocketAddress and open(ProtocolFamily) are Java 16
+         address = (SocketAddress)Class.forName("java.net.UnixDomainSocketAddress")
+            .getMethod("of", String.class).invoke(null, socket.getPath());
+         ch = (ServerSocketChannel)ServerSocketChannel.class
+            .getMethod("open", ProtocolFamily.class)
+            .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+      } catch (Exception e) {
+         throw new UnsupportedOperationException(
+            "listen(): Unix domain sockets need Java 16 or later (" + e + ")", e
+         );
+      }
+      socket.delete();
+      ch.bind(address, BACKLOG);
+      start(ch, socket);
+   }
+
+   public synchronized int getPort() {
+      if (server == null || socketFile != null) {
+         return -1;
+      }
+      try {
+         return ((InetSocketAddress)server.getLocalAddress()).getPort();
+      } catch (IOException e) {
+         return -1;
+      }
+   }
+
+   public synchronized boolean isRunning() {
+      return server != null;
+   }
+
+   /*
+    * Stops accepting connections and closes the open ones. Requests that
+    * are being annotated run to the end, but their responses are lost.
+    * Leaves the pipeline alone.
+    */
+   public void stop() {
+      ServerSocketChannel ch;
+      synchronized (this) {
+         ch = server;
+         server = null;
+         if (ch == null) {
+            return;
+         }
+         if (socketFile != null) {
+            socketFile.delete();
+            socketFile = null;
+         }
+         connections.shutdownNow();
+         connections = null;
+      }
+      close(ch);
+      synchronized (clients) {
+         for (SocketChannel client : clients) {
+            close(client);
+         }
+         clients.clear();
+      }
+   }
+
+   private void start(final ServerSocketChannel ch, File socket) {
+      if (server != null) {
+         close(ch);
+         throw new IllegalStateException("listen(): already listening");
+      }
+      server      = ch;
+      socketFile  = socket;
+      connections = connectionPool();
+
+      final ExecutorService pool = connections;
+      pool.execute(new Runnable() {
+         public void run() {
+            while (ch.isOpen()) {
+               try {
+                  final SocketChannel client = ch.accept();
+                  synchronized (clients) {
+                     clients.add(client);
+                  }
+                  pool.execute(new Runnable() {
+                     public void run() {
+                        serve(client);
+                     }
+                  });
+               } catch (IOException e) {
+                  // closed by stop()
+                  return;
+               } catch (RejectedExecutionException e) {
+                  return;
+               }
+            }
+         }
+      });
+   }//start
+
+   private ExecutorService connectionPool() {
+      virtual = false;
+      if (virtualThreads) {
+         try {
+            // Thread.ofVirtual().name(...).factory() and
+            // Executors.newThreadPerTaskExecutor() are Java 21
+            Class<?> type    = Class.forName("java.lang.Thread$Builder");
+            Object   builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = type.getMethod("name", String.class, long.class)
+               .invoke(builder, "lingua-corenlp-server-", 0L);
+            ThreadFactory factory = (ThreadFactory)type.getMethod("factory").invoke(builder);
+            ExecutorService pool  = (ExecutorService)Executors.class
+               .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+               .invoke(null, factory);
+            virtual = true;
+            return pool;
+         } catch (Exception e) {
+            // no virtual threads; fall back to platform ones
+         }
+      }
+      return Executors.newCachedThreadPool(new ThreadFactory() {
+         private int n = 0;
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "lingua-corenlp-server-" + n++);
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }//connectionPool
+
+   private void serve(SocketChannel client) {
+      long opened = System.nanoTime();
+      connection.enter();
+      try {
+         DataInputStream  in  = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+         while (true) {
+            byte type;
+            try {
+               type = in.readByte();
+            } catch (EOFException e) {
+               return;
+            }
+            int    length;
+            byte[] body  = null;
+            long   start = System.nanoTime();
+            intake.enter();
+            try {
+               length = in.readInt();
+               if (length >= 0 && length <= maxFrame) {
+                  body = new byte[length];
+                  in.readFully(body);
+                  bytesIn.add(length + 5);
+               }
+            } finally {
+               intake.leave(System.nanoTime() - start);
+            }
+            if (body == null) {
+               respond(out, ERROR, "request of " + length + " bytes, the limit is " + maxFrame);
+               return;
+            }
+            handle(type, new String(body, StandardCharsets.UTF_8), out);
+         }
+      } catch (IOException e) {
+         // the client went away, or stop() closed the connection
+      } finally {
+         synchronized (clients) {
+            clients.remove(client);
+         }
+         close(client);
+         connection.leave(System.nanoTime() - opened);
+      }
+   }//serve
+
+   protected void handle(byte type, String body, DataOutputStream out) throws IOException {
+      switch (type) {
+         case PROCESS:
+            PipelineSentenceList result;
+            try {
+               result = pipeline.processAsync(body).get();
+            } catch (ExecutionException e) {
+               Throwable cause = e.getCause();
+               if (cause instanceof PipelineGuardException) {
+                  PipelineGuardException g = (PipelineGuardException)cause;
+                  respond(out, GUARD, g.getGuard() + "\t" + g.getMessage());
+               } else {
+                  respond(out, ERROR, cause.toString());
+               }
+               return;
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new IOException("handle(): interrupted", e);
+            }
+            long start = System.nanoTime();
+            serialize.enter();
+            try {
+               // straight into UTF-8, so that the response is held once,
+               // not as chars, then a String, then bytes
+               ByteArrayOutputStream json   = new ByteArrayOutputStream();
+               Writer                writer = new BufferedWriter(
+                  new OutputStreamWriter(json, StandardCharsets.UTF_8)
+               );
+               PipelineJsonWriter.write(result, writer);
+               writer.flush();
+               respond(out, PROCESS, json);
+            } finally {
+               serialize.leave(System.nanoTime() - start);
+            }
+            return;
+         case METRICS:
+            respond(out, METRICS, getMetricsString());
+            return;
+         case PING:
+            respond(out, PING, "");
+            return;
+         default:
+            respond(out, ERROR, "unknown request type " + (char)type);
+      }
+   }//handle
+
+   protected void respond(DataOutputStream out, byte type, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      out.writeByte(type);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.flush();
+      bytesOut.add(bytes.length + 5);
+   }
+
+   protected void respond(DataOutputStream out, byte type, ByteArrayOutputStream body) throws IOException {
+      out.writeByte(type);
+      out.writeInt(body.size());
+      body.writeTo(out);
+      out.flush();
+      bytesOut.add(body.size() + 5);
+   }
+
+   /*
+    * The pipeline's getMetrics() (with the async.queue and async.annotate
+    * stages), plus server.connection, server.intake (reading requests) and
+    * server.serialize (writing JSON responses), each as described for
+    * PipelineMetrics.Stage, and server.bytes-in, server.bytes-out and
+    * server.virtual-threads.
+    */
+   public Map<String, Number> getMetrics() {
+      Map<String, Number> out = new TreeMap<String, Number>(pipeline.getMetrics());
+      long t = since;
+      connection.snapshot(out, "server.connection", t);
+      intake.snapshot(out, "server.intake", t);
+      serialize.snapshot(out, "server.serialize", t);
+      out.put("server.bytes-in",        bytesIn.sum());
+      out.put("server.bytes-out",       bytesOut.sum());
+      out.put("server.virtual-threads", isVirtualThreads() ? 1 : 0);
+      return out;
+   }
+
+   // one "key value" line per entry of getMetrics()
+   public String getMetricsString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Number> e : getMetrics().entrySet()) {
+         sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+      return sb.toString();
+   }
+
+   // also resets the pipeline's metrics
+   public void resetMetrics() {
+      pipeline.resetMetrics();
+      connection.reset();
+      intake.reset();
+      serialize.reset();
+      bytesIn.reset();
+      bytesOut.reset();
+      since = System.nanoTime();
+   }
+
+   private static void close(java.io.Closeable c) {
+      try {
+         c.close();
+      } catch (IOException e) {
+         System.err.println("PipelineServer: " + e);
+      }
+   }
+
+   /*
+    *   java ... PipelineServer [--port N | --socket PATH] [--properties FILE]
+    *                           [--platform-threads]
+    *
+    * Loads the models before it starts listening.
+    */
+   public static void main(String[] args) throws IOException {
+      int        port    = DEFAULT_PORT;
+      File       socket  = null;
+      Properties props   = new Properties();
+      boolean    virtual = true;
+
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("--port") && i + 1 < args.length) {
+            port = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--socket") && i + 1 < args.length) {
+            socket = new File(args[++i]);
+         } else if (args[i].equals("--properties") && i + 1 < args.length) {
+            InputStream in = new FileInputStream(args[++i]);
+            try {
+               props.load(in);
+            } finally {
+               in.close();
+            }
+         } else if (args[i].equals("--platform-threads")) {
+            virtual = false;
+         } else {
+            System.err.println(
+               "usage: PipelineServer [--port N | --socket PATH] [--properties FILE]"
+               + " [--platform-threads]"
+            );
+            System.exit(2);
+         }
+      }
+
+      final Pipeline       pipeline = new Pipeline(props);
+      final PipelineServer server   = new PipelineServer(pipeline);
+      server.setVirtualThreads(virtual);
+      pipeline.initPipeline();
+
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         public void run() {
+            server.stop();
+            pipeline.shutdown();
+         }
+      });
+
+      if (socket != null) {
+         server.listen(socket);
+         System.err.println("PipelineServer: listening on " + socket);
+      } else {
+         server.listen(port);
+         System.err.println("PipelineServer: listening on localhost:" + server.getPort());
+      }
+      if (!server.isVirtualThreads()) {
+         System.err.println("PipelineServer: serving connections on platform threads");
+      }
+
+      // the connection threads are daemons
+      while (true) {
+         try {
+            Thread.sleep(Long.MAX_VALUE);
+         } catch (InterruptedException e) {
+            return;
+         }
+      }
+   }//main
+}
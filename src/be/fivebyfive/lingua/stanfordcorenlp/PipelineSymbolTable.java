@@ -0,0 +1,113 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Small integer codes for tags and relation names. A table holds at most
+ * its limit of symbols; past that, code() returns UNCODED, and whoever asked
+ * keeps the symbol as a String instead.
+ */
+public class PipelineSymbolTable {
+   public final static short NONE    = -1;
+   public final static short UNCODED = -2;
+
+   // the shared tables live as long as the JVM; real tag sets are far
+   // smaller than this, but collapsed relations (prep_*, conj_*) are open
+   public final static int DEFAULT_LIMIT = 4096;
+   public final static int MAX_LIMIT     = Short.MAX_VALUE + 1;
+
+   public final static PipelineSymbolTable POS_TAGS       = new PipelineSymbolTable();
+   public final static PipelineSymbolTable NER_TAGS       = new PipelineSymbolTable();
+   public final static PipelineSymbolTable RELATIONS      = new PipelineSymbolTable();
+   public final static PipelineSymbolTable LONG_RELATIONS = new PipelineSymbolTable();
+
+   private final ConcurrentHashMap<String, Short> codes
+      = new ConcurrentHashMap<String, Short>();
+   private final int limit;
+   private volatile String[] symbols = new String[16];
+   private int size = 0;
+
+   public PipelineSymbolTable() {
+      this(DEFAULT_LIMIT);
+   }
+
+   public PipelineSymbolTable(int limit) {
+      if (limit < 0 || limit > MAX_LIMIT) {
+         throw new IllegalArgumentException(
+            "PipelineSymbolTable(): limit must be between 0 and " + MAX_LIMIT
+         );
+      }
+      this.limit = limit;
+   }
+
+   // NONE for null, UNCODED if the table is full and symbol not in it
+   public short code(String symbol) {
+      if (symbol == null) {
+         return NONE;
+      }
+      Short code = codes.get(symbol);
+      return code != null ? code : add(symbol);
+   }
+
+   // the same, but never adds symbol
+   public short find(String symbol) {
+      if (symbol == null) {
+         return NONE;
+      }
+      Short code = codes.get(symbol);
+      return code != null ? code : UNCODED;
+   }
+
+   public String symbol(int code) {
+      String[] syms = symbols;
+      return code >= 0 && code < syms.length ? syms[code] : null;
+   }
+
+   public synchronized int size() {
+      return size;
+   }
+
+   public int getLimit() {
+      return limit;
+   }
+
+   private synchronized short add(String symbol) {
+      Short code = codes.get(symbol);
+      if (code != null) {
+         return code;
+      }
+      if (size >= limit) {
+         return UNCODED;
+      }
+
+      String[] syms = symbols;
+      if (size == syms.length) {
+         String[] grown = new String[Math.min(syms.length * 2, limit)];
+         System.arraycopy(syms, 0, grown, 0, syms.length);
+         syms = grown;
+      }
+      syms[size] = symbol;
+      symbols = syms;
+
+      code = (short)size++;
+      codes.put(symbol, code);
+      return code;
+   }
+}
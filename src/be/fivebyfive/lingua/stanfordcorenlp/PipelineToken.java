@@ -17,31 +17,100 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+// Tags are kept as PipelineSymbolTable codes, so that every token with the
+// same tag shares one String, also after a round trip through a cache file.
+// A tag the table has no room for is kept as it is.
 public class PipelineToken extends PipelineItem {
-	private String word;
-	private String posTag;
-	private String nerTag;
-	private String lemma;
+	private final static long serialVersionUID = 1L;
+
+	private String           word;
+	private transient short  posCode;
+	private transient short  nerCode;
+	private String           lemma;
+	private transient String posUncoded;
+	private transient String nerUncoded;
 
 	public String getWord()   { return word; }
-	public String getPOSTag() { return posTag; }
-	public String getNERTag() { return nerTag; }
 	public String getLemma()  { return lemma; }
 
+	public String getPOSTag() {
+		return posCode == PipelineSymbolTable.UNCODED
+			? posUncoded : PipelineSymbolTable.POS_TAGS.symbol(posCode);
+	}
+
+	public String getNERTag() {
+		return nerCode == PipelineSymbolTable.UNCODED
+			? nerUncoded : PipelineSymbolTable.NER_TAGS.symbol(nerCode);
+	}
+
+	// codes in PipelineSymbolTable.POS_TAGS and NER_TAGS; NONE for no tag,
+	// UNCODED for one that is not in the table
+	public short getPOSCode() { return posCode; }
+	public short getNERCode() { return nerCode; }
+
 	public PipelineToken(String word, String posTag, String nerTag, String lemma) {
-		this.word   = word;
-		this.posTag = posTag;
-		this.nerTag = nerTag;
-		this.lemma  = lemma;
+		this.word  = word;
+		this.lemma = lemma;
+		setTags(posTag, nerTag);
+	}
+
+	public PipelineToken(String word, short posCode, short nerCode, String lemma) {
+		this.word    = word;
+		this.posCode = posCode;
+		this.nerCode = nerCode;
+		this.lemma   = lemma;
+	}
+
+	// an unfrozen copy, with an ID of its own
+	public PipelineToken(PipelineToken token) {
+		this(token.word, token.posCode, token.nerCode, token.lemma);
+		this.posUncoded = token.posUncoded;
+		this.nerUncoded = token.nerUncoded;
+	}
+
+	private void setTags(String posTag, String nerTag) {
+		posCode    = PipelineSymbolTable.POS_TAGS.code(posTag);
+		nerCode    = PipelineSymbolTable.NER_TAGS.code(nerTag);
+		posUncoded = posCode == PipelineSymbolTable.UNCODED ? posTag : null;
+		nerUncoded = nerCode == PipelineSymbolTable.UNCODED ? nerTag : null;
+	}
+
+	// codes are only good for this JVM, so the tags are written out by name
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(getPOSTag());
+		out.writeObject(getNERTag());
 	}
 
-	@Override public String toString() {
-		return word + "/" + lemma + "/" + posTag + "/" + nerTag;
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		setTags((String)in.readObject(), (String)in.readObject());
 	}
 
-	public String toCompactString() { return toCompactString(false); }
+	public void writeTo(Appendable out) throws IOException {
+		out.append(word).append('/').append(lemma).append('/')
+		   .append(getPOSTag()).append('/').append(getNERTag());
+	}
+
+	public void writeCompactTo(Appendable out) throws IOException {
+		writeCompactTo(out, false);
+	}
+
+	public void writeCompactTo(Appendable out, boolean lemmaize) throws IOException {
+		out.append(lemmaize ? word : lemma).append('/').append(getPOSTag());
+	}
 
 	public String toCompactString(boolean lemmaize) {
-		return (lemmaize ? word : lemma) + "/" + posTag;
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeCompactTo(sb, lemmaize);
+		} catch (IOException e) {
+			throw renderError(e);
+		}
+		return sb.toString();
 	}
 }
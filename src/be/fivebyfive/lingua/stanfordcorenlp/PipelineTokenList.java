@@ -17,20 +17,28 @@
  */
 package be.fivebyfive.lingua.stanfordcorenlp;
 
+import java.io.IOException;
+
 public class PipelineTokenList extends PipelineList<PipelineToken>  {
-	@Override public String toCompactString() {
-		return joinListCompact(" ");
+	private final static long serialVersionUID = 1L;
+
+	@Override public void writeCompactTo(Appendable out) throws IOException {
+		writeCompactTo(out, " ");
 	}
 
-	@Override public String toString() {
-		return joinList(" ");
+	@Override public void writeTo(Appendable out) throws IOException {
+		writeTo(out, " ");
 	}
       
    public PipelineTokenList slice(int start, int end) {
-      PipelineTokenList out = new PipelineTokenList();
-      
+      return view(start, end).toTokenList();
+   }
+
+   // like slice(), without copying: empty if either end is out of range,
+   // and swapped if end < start
+   public PipelineTokenView view(int start, int end) {
       if (start < 0 || start > this.size() || end < 0 || end > this.size()) 
-         return out;
+         return new PipelineTokenView(this, 0, 0);
       
       if (end < start) {
          int tmp = end;
@@ -38,10 +46,6 @@ public class PipelineTokenList extends PipelineList<PipelineToken>  {
          start = tmp;
       }
       
-      for (int i = start; i < end; i++) {
-         out.add(this.get(i));
-      }
-      
-      return out;
+      return new PipelineTokenView(this, start, end);
    }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/*
+ * A read-only window onto a range of a sentence's tokens, without copying
+ * them; see PipelineTokenList.view(). Coref mentions keep their tokens this
+ * way, so converting a chain allocates no lists.
+ */
+public class PipelineTokenView extends AbstractList<PipelineToken>
+      implements RandomAccess, Serializable {
+   private final static long serialVersionUID = 1L;
+
+   private final PipelineTokenList tokens;
+   private final int               start;
+   private final int               end;
+
+   PipelineTokenView(PipelineTokenList tokens, int start, int end) {
+      this.tokens = tokens;
+      this.start  = start;
+      this.end    = end;
+   }
+
+   public PipelineTokenList getTokens() { return tokens; }
+   public int               getStart()  { return start; }
+   public int               getEnd()    { return end; }
+
+   @Override
+   public int size() {
+      return end - start;
+   }
+
+   @Override
+   public PipelineToken get(int i) {
+      if (i < 0 || i >= end - start) {
+         throw new IndexOutOfBoundsException(
+            "PipelineTokenView.get(): " + i + " not in [0, " + (end - start) + ")"
+         );
+      }
+      return tokens.get(start + i);
+   }
+
+   // a token of the underlying list, by its index there; null if out of range
+   public PipelineToken getParentToken(int index) {
+      return index >= 0 && index < tokens.size() ? tokens.get(index) : null;
+   }
+
+   public PipelineTokenList toTokenList() {
+      PipelineTokenList out = new PipelineTokenList();
+      for (int i = start; i < end; i++) {
+         out.add(tokens.get(i));
+      }
+      return out;
+   }
+
+   // the words, separated by spaces
+   public void writeTo(Appendable out) throws IOException {
+      for (int i = start; i < end; i++) {
+         if (i > start) {
+            out.append(' ');
+         }
+         out.append(tokens.get(i).getWord());
+      }
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      try {
+         writeTo(sb);
+      } catch (IOException e) {
+         throw PipelineItem.renderError(e);
+      }
+      return sb.toString();
+   }
+}
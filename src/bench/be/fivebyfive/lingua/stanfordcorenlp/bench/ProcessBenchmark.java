@@ -0,0 +1,97 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp.bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineColumnarDocument;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+
+/*
+ * Pipeline.process and friends over synthetic documents. The annotator only
+ * builds the CoreNLP data structures, so this mostly measures conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessBenchmark {
+   @Param({ "1", "10", "100", "1000" })
+   public int sentences;
+
+   @Param({ "20" })
+   public int tokens;
+
+   @Param({ "false", "true" })
+   public boolean metrics;
+
+   // "all" leaves lingua.layers unset
+   @Param({ "all", "lemma" })
+   public String layers;
+
+   // lingua.sentence-threads; try -p sentenceThreads=1,4
+   @Param({ "1" })
+   public int sentenceThreads;
+
+   private SyntheticPipeline pipeline;
+   private String            text;
+
+   @Setup
+   public void setup() {
+      Properties props = new Properties();
+      props.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse, dcoref");
+      props.setProperty("lingua.metrics", Boolean.toString(metrics));
+      props.setProperty("lingua.sentence-threads", Integer.toString(sentenceThreads));
+      if (!layers.equals("all")) {
+         props.setProperty("lingua.layers", layers);
+      }
+      pipeline = new SyntheticPipeline(props);
+      pipeline.initPipeline();
+      text = SyntheticAnnotator.text(sentences, tokens);
+   }
+
+   @TearDown
+   public void tearDown() {
+      pipeline.shutdown();
+   }
+
+   @Benchmark
+   public PipelineSentenceList process() {
+      return pipeline.process(text);
+   }
+
+   @Benchmark
+   public String processToJson() {
+      return pipeline.processToJson(text);
+   }
+
+   @Benchmark
+   public PipelineColumnarDocument processColumnar() {
+      return pipeline.processColumnar(text);
+   }
+}
@@ -0,0 +1,107 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp.bench;
+
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineIDMap;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineItem;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+/*
+ * The result model on its own: rendering, ID maps, slicing and ID
+ * generation, over a document converted once in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultBenchmark {
+   @Param({ "1", "10", "100", "1000" })
+   public int sentences;
+
+   @Param({ "20" })
+   public int tokens;
+
+   private PipelineSentenceList result;
+   private PipelineTokenList    sentenceTokens;
+
+   @Setup
+   public void setup() {
+      SyntheticPipeline pipeline = new SyntheticPipeline();
+      result         = pipeline.process(SyntheticAnnotator.text(sentences, tokens));
+      sentenceTokens = result.get(0).getTokens();
+   }
+
+   @Benchmark
+   public String listToString() {
+      return result.toString();
+   }
+
+   @Benchmark
+   public String listToCompactString() {
+      return result.toCompactString();
+   }
+
+   @Benchmark
+   public String tokenJoinList() {
+      return sentenceTokens.joinList(" ");
+   }
+
+   @Benchmark
+   public HashMap<String, PipelineToken> tokenToHashMap() {
+      return sentenceTokens.toHashMap();
+   }
+
+   @Benchmark
+   public PipelineIDMap<PipelineToken> tokenToIDMap() {
+      return sentenceTokens.toIDMap();
+   }
+
+   @Benchmark
+   public HashMap<String, ?> sentenceToHashMap() {
+      return result.toHashMap();
+   }
+
+   @Benchmark
+   public PipelineTokenList tokenSlice() {
+      return sentenceTokens.slice(2, tokens - 2);
+   }
+
+   @Benchmark
+   public UUID generateID() {
+      return PipelineItem.generateID();
+   }
+
+   @Benchmark
+   public long nextID() {
+      return PipelineItem.nextID();
+   }
+}
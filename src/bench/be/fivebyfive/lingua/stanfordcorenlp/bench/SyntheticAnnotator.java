@@ -0,0 +1,158 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.CorefChain;
+import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
+import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
+import edu.stanford.nlp.dcoref.Dictionaries;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+
+import edu.stanford.nlp.trees.EnglishGrammaticalRelations;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraph;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation;
+
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.IntPair;
+import edu.stanford.nlp.util.IntTuple;
+
+/*
+ * Stands in for the whole CoreNLP annotator chain, so that the wrapper can be
+ * benchmarked without the models. Sentences end at ". ", tokens at spaces;
+ * every token gets a POS tag, NER tag and lemma, each sentence a chain of
+ * dependencies, and the first token of every sentence joins one coref chain
+ * per ten sentences.
+ */
+public class SyntheticAnnotator extends AnnotationPipeline {
+   private final static String[] POS = { "NN", "VBD", "DT", "JJ", "IN", "NNP" };
+   private final static String[] NER = { "O", "O", "O", "PERSON", "O", "ORGANIZATION" };
+   private final static GrammaticalRelation[] RELATIONS = {
+      EnglishGrammaticalRelations.NOMINAL_SUBJECT,
+      EnglishGrammaticalRelations.DIRECT_OBJECT,
+      EnglishGrammaticalRelations.DETERMINER,
+      EnglishGrammaticalRelations.ADJECTIVAL_MODIFIER
+   };
+
+   @Override
+   public void annotate(Annotation document) {
+      String text = document.get(TextAnnotation.class);
+      List<CoreMap>   sentences = new ArrayList<CoreMap>();
+      List<CoreLabel> allTokens = new ArrayList<CoreLabel>();
+      Map<Integer, Map<IntPair, Set<CorefMention>>> chains
+         = new HashMap<Integer, Map<IntPair, Set<CorefMention>>>();
+      Map<Integer, CorefMention> representatives = new HashMap<Integer, CorefMention>();
+
+      int offset = 0;
+      for (String str : text.split("(?<=\\.) ")) {
+         int sentNum = sentences.size();
+         List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+         SemanticGraph graph = new SemanticGraph();
+         IndexedWord prev = null;
+
+         for (String word : str.split(" ")) {
+            int i = tokens.size();
+            CoreLabel token = new CoreLabel();
+            token.set(TextAnnotation.class, word);
+            token.setWord(word);
+            token.setTag(POS[i % POS.length]);
+            token.setNER(NER[i % NER.length]);
+            token.setLemma(word.toLowerCase());
+            token.setIndex(i + 1);
+            tokens.add(token);
+
+            IndexedWord node = new IndexedWord(token);
+            graph.addVertex(node);
+            if (prev != null) {
+               graph.addEdge(prev, node, RELATIONS[i % RELATIONS.length], 1.0);
+            }
+            prev = node;
+         }
+
+         CoreMap sentence = new ArrayCoreMap();
+         sentence.set(TextAnnotation.class, str);
+         sentence.set(CharacterOffsetBeginAnnotation.class, offset);
+         sentence.set(TokensAnnotation.class, tokens);
+         sentence.set(BasicDependenciesAnnotation.class, graph);
+         sentence.set(CollapsedDependenciesAnnotation.class, graph);
+         sentence.set(CollapsedCCProcessedDependenciesAnnotation.class, graph);
+         sentences.add(sentence);
+         allTokens.addAll(tokens);
+         offset += str.length() + 1;
+
+         int chainID = sentNum / 10 + 1;
+         CorefMention m = new CorefMention(
+            Dictionaries.MentionType.PROPER,
+            Dictionaries.Number.SINGULAR,
+            Dictionaries.Gender.UNKNOWN,
+            Dictionaries.Animacy.ANIMATE,
+            1, 2, 1, chainID, sentNum + 1, sentNum + 1,
+            new IntTuple(new int[] { sentNum + 1, 1 }),
+            tokens.get(0).word()
+         );
+         if (!chains.containsKey(chainID)) {
+            chains.put(chainID, new HashMap<IntPair, Set<CorefMention>>());
+            representatives.put(chainID, m);
+         }
+         chains.get(chainID).put(new IntPair(sentNum + 1, 1), Collections.singleton(m));
+      }
+
+      Map<Integer, CorefChain> graph = new HashMap<Integer, CorefChain>();
+      for (Map.Entry<Integer, Map<IntPair, Set<CorefMention>>> e : chains.entrySet()) {
+         graph.put(e.getKey(), new CorefChain(e.getKey(), e.getValue(), representatives.get(e.getKey())));
+      }
+
+      document.set(TokensAnnotation.class, allTokens);
+      document.set(SentencesAnnotation.class, sentences);
+      document.set(CorefChainAnnotation.class, graph);
+   }
+
+   public static String text(int sentences, int tokens) {
+      StringBuilder sb = new StringBuilder();
+      for (int s = 0; s < sentences; s++) {
+         if (s > 0) {
+            sb.append(' ');
+         }
+         for (int t = 0; t < tokens; t++) {
+            sb.append(t == 0 ? "Word" : " word").append(s).append('x').append(t);
+         }
+         sb.append('.');
+      }
+      return sb.toString();
+   }
+}
@@ -0,0 +1,40 @@
+/*
+ * Lingua::StanfordCoreNLP
+ * Copyright © 2011-2013 Kalle Räisänen.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see L<http://www.gnu.org/licenses/>.
+ */
+package be.fivebyfive.lingua.stanfordcorenlp.bench;
+
+import java.util.Properties;
+
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+
+import be.fivebyfive.lingua.stanfordcorenlp.Pipeline;
+
+public class SyntheticPipeline extends Pipeline {
+   public SyntheticPipeline() {
+      this(new Properties());
+   }
+
+   public SyntheticPipeline(Properties props) {
+      super(props);
+   }
+
+   @Override
+   protected Annotator createAnnotator(String name, Properties props) {
+      return name.equals("tokenize") ? new SyntheticAnnotator() : new AnnotationPipeline();
+   }
+}
@@ -92,7 +92,9 @@ my $token_look = $tokens[1];
 my $token_IBM  = $tokens[4];
 
 isa_ok($token_look, $java_namespace . '::PipelineToken');
-can_ok($token_look, qw(getWord getPOSTag getNERTag getLemma toCompactString toString), @item_methods);
+can_ok($token_look, qw(
+	getWord getPOSTag getNERTag getLemma getPOSCode getNERCode toCompactString toString
+), @item_methods);
 
 ok(
 	$token_look->getWord   eq 'looked',
@@ -114,6 +116,12 @@ ok(
 	'"ner" annotator'
 );
 
+ok(
+	($token_look->getPOSCode != $token_IBM->getPOSCode) &&
+	($token_look->getNERCode == $tokens[5]->getNERCode),
+	'Lingua::StanfordCoreNLP::PipelineToken->getPOSCode, getNERCode'
+);
+
 
 ##
 ## Lingua::StanfordCoreNLP::PipelineCoreferenceList
@@ -173,7 +181,8 @@ my $dep_nsubj = $deps[0];
 isa_ok($dep_nsubj, $java_namespace . '::PipelineDependency');
 can_ok($dep_nsubj, qw(
 	getGovernor getGovernorIndex getDependent getDependentIndex
-	getRelation getLongRelation toCompactString toString
+	getRelation getLongRelation getRelationCode getLongRelationCode
+	toCompactString toString
 ), @item_methods);
 
 ok(
@@ -185,4 +194,25 @@ ok(
 
 
 
+##
+## Lingua::StanfordCoreNLP::Pipeline->processToJson
+##
+SKIP: {
+	skip 'JSON::PP not installed', 2 unless eval { require JSON::PP; 1 };
+
+	my $json = JSON::PP->new->decode($pipeline->processToJson($test_sentences));
+
+	ok(
+		@{$json->{sentences}} == 2,
+		'Lingua::StanfordCoreNLP::Pipeline->processToJson'
+	);
+
+	ok(
+		$json->{sentences}[0]{tokens}[1][0] eq 'looked' &&
+		$json->{sentences}[0]{tokens}[1][3] eq 'look',
+		'Lingua::StanfordCoreNLP::Pipeline->processToJson tokens'
+	);
+}
+
+
 done_testing;
@@ -0,0 +1,571 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## Concurrent use of a single Pipeline, with a stub annotator standing in for
+## the CoreNLP models so that the test runs quickly.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $threads    = 16;
+my $iterations = 200;
+
+is(
+	ThreadStress->run($threads, $iterations),
+	'',
+	'Pipeline->process() from ' . $threads . ' threads'
+);
+
+is(
+	StubPipeline->constructed,
+	1,
+	'Lingua::StanfordCoreNLP::Pipeline->initPipeline() runs once under contention'
+);
+
+is(
+	ThreadStress->runBatch($iterations),
+	'',
+	'Lingua::StanfordCoreNLP::Pipeline->processBatch()'
+);
+
+is(
+	ThreadStress->uniqueIDs($threads, 10000),
+	'',
+	'Lingua::StanfordCoreNLP::PipelineItem->nextID() hands out unique IDs across threads'
+);
+is(ThreadStress->epochIDs, '', 'Lingua::StanfordCoreNLP::PipelineItem->getLongID() tells counter settings apart');
+
+is(
+	ThreadStress->runAsync($iterations),
+	'',
+	'Lingua::StanfordCoreNLP::Pipeline->processAsync()'
+);
+
+is(
+	ThreadStress->asyncPolicies,
+	'',
+	'Lingua::StanfordCoreNLP::Pipeline->processAsync() rejects and cancels'
+);
+
+is(
+	ThreadStress->asyncInit,
+	'',
+	'Lingua::StanfordCoreNLP::Pipeline->initPipelineAsync() loads once and warms up quietly'
+);
+
+my $metered = ThreadStress->meteredPipeline;
+$metered->process(ThreadStress->document($_)) for 1 .. 10;
+my %metrics = map { split / / } split /\n/, $metered->getMetricsString;
+is($metrics{documents}, 10, 'Lingua::StanfordCoreNLP::Pipeline->getMetricsString() documents');
+is($metrics{sentences}, 20, 'Lingua::StanfordCoreNLP::Pipeline->getMetricsString() sentences');
+is($metrics{'stage.tokenize.calls'}, 10, 'Lingua::StanfordCoreNLP::Pipeline->getMetricsString() per-stage calls');
+is($metrics{'stage.tokenize.tokens'}, $metrics{tokens}, 'Lingua::StanfordCoreNLP::Pipeline->getMetricsString() per-stage tokens');
+is(ThreadStress->checkMBean($metered), '', 'PipelineMetrics is registered with JMX');
+$metered->shutdown;
+is(ThreadStress->mbeanLifecycle, '', 'PipelineMetrics gets a unique name, and is unregistered on reload and shutdown');
+
+my $parallel = SentencePipeline->withThreads(4);
+my $result   = $parallel->process(ThreadStress->longDocument(40));
+is(ThreadStress->checkLong($result, 40), '', 'lingua.sentence-threads keeps sentences in order');
+cmp_ok($parallel->taggerThreads, '>', 1, 'lingua.sentence-threads tags sentences on several threads');
+is($parallel->corefRuns, 1, 'dcoref runs once, after every sentence is tagged');
+is($parallel->taggerNames, '', 'lingua.sentence-threads numbers its threads');
+cmp_ok($parallel->convertedBeforeFirst(ThreadStress->longDocument(40)), '<', 40, 'lingua.sentence-threads hands sentences over as they are converted');
+my %parallel = map { split / / } split /\n/, $parallel->getMetricsString;
+is($parallel{'stage.pos.calls'}, 2, 'lingua.sentence-threads times each stage once per document');
+cmp_ok($parallel{'stage.pos.time-ms'}, '<', 600, 'lingua.sentence-threads times stages by elapsed time');
+$parallel->shutdown;
+
+done_testing;
+
+__DATA__
+__Java__
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.ObjectName;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChainList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineItem;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineListener;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class StubAnnotator extends AnnotationPipeline {
+	public void annotate(Annotation doc) {
+		List<CoreMap> sentences = new ArrayList<CoreMap>();
+
+		for (String str : doc.get(TextAnnotation.class).split("(?<=\\.)\\s+")) {
+			List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+			for (String word : str.split("\\s+")) {
+				CoreLabel token = new CoreLabel();
+				token.set(TextAnnotation.class, word);
+				token.setWord(word);
+				token.setTag("NN");
+				token.setNER("O");
+				token.setLemma(word.toLowerCase());
+				tokens.add(token);
+			}
+			CoreMap sentence = new ArrayCoreMap();
+			sentence.set(TextAnnotation.class, str);
+			sentence.set(TokensAnnotation.class, tokens);
+			sentences.add(sentence);
+		}
+		doc.set(SentencesAnnotation.class, sentences);
+	}
+}
+
+class StubPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	private static AtomicInteger constructed = new AtomicInteger();
+
+	public StubPipeline() {
+		super(new Properties());
+	}
+
+	public StubPipeline(Properties props) {
+		super(props);
+	}
+
+	public static int constructed() {
+		return constructed.get();
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (!name.equals("tokenize")) {
+			return new AnnotationPipeline();
+		}
+		constructed.incrementAndGet();
+		try {
+			// make the window for a double initialization wide open
+			Thread.sleep(200);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return new StubAnnotator();
+	}
+}
+
+class SentencePipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	private Set<String>   taggers   = ConcurrentHashMap.newKeySet();
+	private AtomicInteger corefRuns = new AtomicInteger();
+	private AtomicInteger converted = new AtomicInteger();
+
+	public SentencePipeline(Properties props) {
+		super(props);
+	}
+
+	public static SentencePipeline withThreads(int threads) {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, pos, dcoref");
+		props.setProperty("lingua.sentence-threads", Integer.toString(threads));
+		props.setProperty("lingua.metrics", "true");
+		return new SentencePipeline(props);
+	}
+
+	public int taggerThreads() { return taggers.size(); }
+	public int corefRuns()     { return corefRuns.get(); }
+
+	// the names of the tagger threads that are not numbered pool threads
+	public String taggerNames() {
+		StringBuilder wrong = new StringBuilder();
+		for (String name : taggers) {
+			if (!name.matches("lingua-corenlp-sentence-\\d+")) {
+				wrong.append(wrong.length() > 0 ? " " : "").append(name);
+			}
+		}
+		return wrong.toString();
+	}
+
+	// how many sentences were converted when the listener got the first one
+	public int convertedBeforeFirst(String text) {
+		final AtomicInteger first = new AtomicInteger(-1);
+		converted.set(0);
+		process(text, new PipelineListener() {
+			public void sentence(PipelineSentence sentence) {
+				first.compareAndSet(-1, converted.get());
+			}
+
+			public void corefChains(PipelineCorefChainList chains) {
+			}
+		});
+		return first.get();
+	}
+
+	protected PipelineSentence convertSentence(CoreMap sentence, String depMode, Set<String> layers) {
+		try {
+			Thread.sleep(5);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		converted.incrementAndGet();
+		return super.convertSentence(sentence, depMode, layers);
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreLabel> all = new ArrayList<CoreLabel>();
+					for (String word : doc.get(TextAnnotation.class).split("\\s+")) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, word);
+						token.setWord(word);
+						all.add(token);
+					}
+					doc.set(TokensAnnotation.class, all);
+				}
+			};
+		} else if (name.equals("ssplit")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreMap>   sentences = new ArrayList<CoreMap>();
+					List<CoreLabel> current   = new ArrayList<CoreLabel>();
+					StringBuilder   text      = new StringBuilder();
+					for (CoreLabel token : doc.get(TokensAnnotation.class)) {
+						current.add(token);
+						text.append(text.length() > 0 ? " " : "").append(token.word());
+						if (token.word().endsWith(".")) {
+							CoreMap sentence = new ArrayCoreMap();
+							sentence.set(TextAnnotation.class, text.toString());
+							sentence.set(TokensAnnotation.class, current);
+							sentences.add(sentence);
+							current = new ArrayList<CoreLabel>();
+							text    = new StringBuilder();
+						}
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("pos")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					taggers.add(Thread.currentThread().getName());
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						try {
+							Thread.sleep(10);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+							token.setTag("NN");
+						}
+					}
+				}
+			};
+		} else {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreLabel token : doc.get(TokensAnnotation.class)) {
+						if (token.tag() == null) {
+							return;
+						}
+					}
+					corefRuns.incrementAndGet();
+				}
+			};
+		}
+	}
+}
+
+class ThreadStress {
+	static String check(PipelineSentenceList result, int i) {
+		if (result.size() != 2) {
+			return "document " + i + ": expected 2 sentences, got " + result.size();
+		}
+		PipelineTokenList tokens = result.get(1).getTokens();
+		if (tokens.size() != 3 || !tokens.get(1).getWord().equals("w" + i)) {
+			return "document " + i + ": got tokens " + tokens;
+		}
+		return null;
+	}
+
+	public static String document(int i) {
+		return "Document number " + i + ". Token w" + i + " here.";
+	}
+
+	public static String longDocument(int sentences) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < sentences; i++) {
+			text.append("Sentence number w").append(i).append(" here. ");
+		}
+		return text.toString();
+	}
+
+	public static String checkLong(PipelineSentenceList result, int sentences) {
+		if (result.size() != sentences) {
+			return "expected " + sentences + " sentences, got " + result.size();
+		}
+		for (int i = 0; i < sentences; i++) {
+			PipelineTokenList tokens = result.get(i).getTokens();
+			if (!tokens.get(2).getWord().equals("w" + i) || !"NN".equals(tokens.get(2).getPOSTag())) {
+				return "sentence " + i + ": got tokens " + tokens;
+			}
+		}
+		return "";
+	}
+
+	public static String run(int threads, final int iterations) throws InterruptedException {
+		final StubPipeline pipeline = new StubPipeline();
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<String> error = new AtomicReference<String>("");
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < iterations; i++) {
+							String err = check(pipeline.process(document(i)), i);
+							if (err != null) {
+								error.compareAndSet("", err);
+							}
+						}
+					} catch (Throwable e) {
+						error.compareAndSet("", e.toString());
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return error.get();
+	}
+
+	public static String runBatch(int iterations) {
+		StubPipeline pipeline = new StubPipeline();
+		String[] texts = new String[iterations];
+		for (int i = 0; i < iterations; i++) {
+			texts[i] = document(i);
+		}
+
+		PipelineSentenceList[] results = pipeline.processBatch(texts);
+		pipeline.shutdown();
+
+		for (int i = 0; i < iterations; i++) {
+			String err = check(results[i], i);
+			if (err != null) {
+				return err;
+			}
+		}
+		return "";
+	}
+
+	public static String runAsync(int iterations) throws Exception {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize");
+		props.setProperty("lingua.threads", "4");
+		props.setProperty("lingua.queue-size", "8");
+		StubPipeline pipeline = new StubPipeline(props);
+
+		List<CompletableFuture<PipelineSentenceList>> futures
+			= new ArrayList<CompletableFuture<PipelineSentenceList>>();
+		for (int i = 0; i < iterations; i++) {
+			futures.add(pipeline.processAsync(document(i)));
+			if (pipeline.getAsyncPending() > 12) {
+				return "more than 12 documents pending";
+			}
+		}
+		for (int i = 0; i < iterations; i++) {
+			String err = check(futures.get(i).get(), i);
+			if (err != null) {
+				return err;
+			}
+		}
+		pipeline.shutdown();
+		return "";
+	}
+
+	public static String asyncPolicies() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize");
+		props.setProperty("lingua.threads", "1");
+		props.setProperty("lingua.queue-size", "1");
+		props.setProperty("lingua.queue-policy", "reject");
+		StubPipeline pipeline = new StubPipeline(props);
+
+		// the first document keeps the only thread busy loading the stub
+		CompletableFuture<PipelineSentenceList> first  = pipeline.processAsync(document(0));
+		CompletableFuture<PipelineSentenceList> second = pipeline.processAsync(document(1));
+		CompletableFuture<PipelineSentenceList> third  = pipeline.processAsync(document(2));
+
+		if (!third.isCompletedExceptionally()) {
+			return "third document was not rejected";
+		}
+		second.cancel(true);
+		if (pipeline.getAsyncPending() != 1) {
+			return "cancelling did not free the queue slot";
+		}
+		String err = check(first.get(), 0);
+		pipeline.shutdown();
+		return err != null ? err : "";
+	}
+
+	public static String asyncInit() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit");
+		props.setProperty("lingua.metrics", "true");
+		props.setProperty("lingua.metrics-name", "t-002-async");
+		props.setProperty("lingua.cache-size", "10");
+		final StubPipeline pipeline = new StubPipeline(props);
+		int constructed = StubPipeline.constructed();
+
+		// process() gets to the models first, and initPipelineAsync() finds them loaded
+		Thread first = new Thread(new Runnable() {
+			public void run() {
+				pipeline.process(document(1));
+			}
+		});
+		first.start();
+		Thread.sleep(50);
+		Future<be.fivebyfive.lingua.stanfordcorenlp.Pipeline> init
+			= pipeline.initPipelineAsync(document(0), 2);
+		init.get();
+		first.join();
+
+		String err = "";
+		if (StubPipeline.constructed() != constructed + 1) {
+			err = "models loaded " + (StubPipeline.constructed() - constructed) + " times";
+		} else if (!pipeline.isReady()) {
+			err = "not ready";
+		} else if (!pipeline.getLoadTimes().keySet().toString().equals("[tokenize, ssplit]")) {
+			err = "load times for " + pipeline.getLoadTimes().keySet();
+		} else if (pipeline.getWarmupTime() < 0) {
+			err = "no warm-up time";
+		} else if (!pipeline.getMetrics().get("documents").equals(Long.valueOf(1))) {
+			err = "warm-up counted: documents = " + pipeline.getMetrics().get("documents");
+		} else if (pipeline.getCache().size() != 1) {
+			err = "warm-up cached: " + pipeline.getCache().size() + " results";
+		}
+		pipeline.shutdown();
+		return err;
+	}
+
+	public static StubPipeline meteredPipeline() {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit");
+		props.setProperty("lingua.metrics", "true");
+		props.setProperty("lingua.metrics-name", "t-002");
+		return new StubPipeline(props);
+	}
+
+	public static String checkMBean(StubPipeline pipeline) throws Exception {
+		Object docs = ManagementFactory.getPlatformMBeanServer().getAttribute(
+			new ObjectName("be.fivebyfive.lingua.stanfordcorenlp:type=PipelineMetrics,name=\"t-002\""),
+			"Documents"
+		);
+		return docs.equals(Long.valueOf(10)) ? "" : "Documents = " + docs;
+	}
+
+	public static String mbeanLifecycle() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit");
+		props.setProperty("lingua.metrics", "true");
+		StubPipeline a = new StubPipeline(props);
+		StubPipeline b = new StubPipeline((Properties)props.clone());
+		a.initPipeline();
+		b.initPipeline();
+
+		ObjectName name = a.getMetricsCollector().getObjectName();
+		if (name == null || name.equals(b.getMetricsCollector().getObjectName())) {
+			return "default names: " + name + ", " + b.getMetricsCollector().getObjectName();
+		}
+		a.initPipeline();
+		if (!name.equals(a.getMetricsCollector().getObjectName())) {
+			return "renamed on reload: " + a.getMetricsCollector().getObjectName();
+		}
+
+		a.getProperties().setProperty("lingua.metrics", "false");
+		a.initPipeline();
+		if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+			return name + " still registered after turning metrics off";
+		}
+
+		name = b.getMetricsCollector().getObjectName();
+		b.shutdown();
+		return ManagementFactory.getPlatformMBeanServer().isRegistered(name)
+			? name + " still registered after shutdown" : "";
+	}
+
+	public static String uniqueIDs(int threads, final int perThread) throws InterruptedException {
+		final long[][] ids = new long[threads][perThread];
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for (int t = 0; t < threads; t++) {
+			final long[] mine = ids[t];
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						mine[i] = PipelineItem.nextID();
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		Set<Long> seen = new HashSet<Long>();
+		for (long[] mine : ids) {
+			for (long id : mine) {
+				if (!seen.add(id)) {
+					return "duplicate ID " + id;
+				}
+			}
+		}
+		return "";
+	}
+
+	// items made under two counter settings that differ only in the high
+	// word, so that their low words run the same
+	public static String epochIDs() {
+		PipelineTokenList tokens = new PipelineTokenList();
+		for (long most = 1; most <= 2; most++) {
+			PipelineItem.initializeCounters(0, most);
+			for (int i = 0; i < 100; i++) {
+				PipelineToken token = new PipelineToken("w" + i, "NN", "O", "w" + i);
+				token.getLongID();
+				tokens.add(token);
+			}
+		}
+		PipelineItem.randomizeCounters();
+		int ids = tokens.toIDMap().size();
+		return ids == tokens.size() ? "" : tokens.size() + " tokens, but " + ids + " long IDs";
+	}
+}
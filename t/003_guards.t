@@ -0,0 +1,144 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## Resource guards, with stub annotators standing in for the CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $short = 'A short sentence.';
+my $long  = join(' ', ('word') x 50) . '.';
+
+is(
+	GuardedPipeline->tripped('lingua.max-input', 10, $short . ' ' . $short),
+	'max-input',
+	'lingua.max-input'
+);
+
+is(
+	GuardedPipeline->tripped('lingua.timeout', 50, $short . ' ' . $short),
+	'timeout',
+	'lingua.timeout'
+);
+
+my $pipeline = GuardedPipeline->withProperty('lingua.max-sentence-length', 20);
+my $result   = $pipeline->process($short . ' ' . $long);
+
+is($result->get(0)->getGuard, undef, 'short sentence is parsed');
+is($result->get(1)->getGuard, 'max-sentence-length', 'long sentence is not parsed');
+is($result->getGuards->size, 1, 'Lingua::StanfordCoreNLP::PipelineSentenceList->getGuards()');
+is($pipeline->parsed, 1, 'parse only sees the short sentence');
+is($pipeline->corefRuns, 0, 'dcoref is skipped');
+
+$result = $pipeline->process($short . ' ' . $short);
+is($result->getGuards->size, 0, 'no guards trip on short sentences');
+is($pipeline->corefRuns, 1, 'dcoref runs when every sentence was parsed');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineGuardException;
+
+class GuardedPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	private AtomicInteger parsed    = new AtomicInteger();
+	private AtomicInteger corefRuns = new AtomicInteger();
+
+	public GuardedPipeline(Properties props) {
+		super(props);
+	}
+
+	public static GuardedPipeline withProperty(String name, int value) {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, parse, dcoref");
+		props.setProperty(name, Integer.toString(value));
+		return new GuardedPipeline(props);
+	}
+
+	public static String tripped(String name, int value, String text) {
+		try {
+			withProperty(name, value).process(text);
+			return "";
+		} catch (PipelineGuardException e) {
+			return e.getGuard();
+		}
+	}
+
+	public int parsed()    { return parsed.get(); }
+	public int corefRuns() { return corefRuns.get(); }
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreLabel> all = new ArrayList<CoreLabel>();
+					for (String word : doc.get(TextAnnotation.class).split("\\s+")) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, word);
+						token.setWord(word);
+						all.add(token);
+					}
+					doc.set(TokensAnnotation.class, all);
+				}
+			};
+		} else if (name.equals("ssplit")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreMap>   sentences = new ArrayList<CoreMap>();
+					List<CoreLabel> current   = new ArrayList<CoreLabel>();
+					for (CoreLabel token : doc.get(TokensAnnotation.class)) {
+						current.add(token);
+						if (token.word().endsWith(".")) {
+							CoreMap sentence = new ArrayCoreMap();
+							sentence.set(TextAnnotation.class, current.toString());
+							sentence.set(TokensAnnotation.class, current);
+							sentences.add(sentence);
+							current = new ArrayList<CoreLabel>();
+						}
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("parse")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					try {
+						Thread.sleep(40);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					parsed.addAndGet(doc.get(SentencesAnnotation.class).size());
+				}
+			};
+		} else {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					corefRuns.incrementAndGet();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,196 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## PipelinePool, with stub annotators standing in for the CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $pool = new StubPool();
+$pool->define('fast',  StubPool->props('tokenize, ssplit, pos'));
+$pool->define('full',  StubPool->props('tokenize, ssplit, pos, parse'));
+$pool->define('other', StubPool->props('tokenize, ssplit, pos', 'pos.model', 'other.tagger'));
+
+my $fast = $pool->get('fast');
+$fast->process('One sentence.');
+$pool->get('full')->process('Another one.');
+is($pool->loaded, 4, 'annotators are shared between configurations');
+
+$pool->get('other')->process('A third.');
+is($pool->loaded, 5, 'annotators with different properties are not shared');
+is($pool->getAnnotatorCount, 5, 'Lingua::StanfordCoreNLP::PipelinePool->getAnnotatorCount()');
+
+ok($pool->evict('other'), 'Lingua::StanfordCoreNLP::PipelinePool->evict()');
+is($pool->getAnnotatorCount, 4, 'evicting drops annotators used by no other configuration');
+
+is($pool->evictIdle(-1)->size, 2, 'Lingua::StanfordCoreNLP::PipelinePool->evictIdle()');
+is($pool->getAnnotatorCount, 0, 'no annotators are left');
+
+is($fast->process('Still works.')->size, 1, 'an evicted pipeline reloads when used');
+is($pool->loaded, 8, 'and loads its annotators again');
+
+my %metrics = map { split / / } split /\n/, $pool->getMetricsString;
+is($metrics{releases}, 5, 'Lingua::StanfordCoreNLP::PipelinePool->getMetrics() releases');
+is($metrics{'release-errors'}, 0, 'Lingua::StanfordCoreNLP::PipelinePool->getMetrics() release-errors');
+
+my $sutime = new StubPool();
+$sutime->define('plain', StubPool->props('tokenize, ssplit, ner'));
+$sutime->define('rules', StubPool->props('tokenize, ssplit, ner', 'sutime.rules', 'other.rules'));
+$sutime->get($_)->process('One sentence.') for qw(plain rules);
+is($sutime->loaded, 4, 'annotators are not shared across properties CoreNLP reads under another prefix');
+
+my $blocked = new BlockedPool();
+$blocked->define('fast', StubPool->props('tokenize, ssplit, pos'));
+$blocked->get('fast')->process('One sentence.');
+$blocked->evict('fast');
+is($blocked->getReleaseErrors, 3, 'Lingua::StanfordCoreNLP::PipelinePool->getReleaseErrors()');
+like($blocked->getLastReleaseError, qr/SecurityException/, 'Lingua::StanfordCoreNLP::PipelinePool->getLastReleaseError()');
+
+is(StubPool->evictWhileLoading, '', 'annotators of a configuration that is still loading are kept');
+is(PoolCheck->coreNLPPool, '', 'only annotators the pool loaded are dropped from StanfordCoreNLP\'s pool');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.AnnotatorPool;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+class StubPool extends be.fivebyfive.lingua.stanfordcorenlp.PipelinePool {
+	private int loaded = 0;
+
+	// a "pos" with pos.model=slow waits for this
+	private final CountDownLatch slowStarted = new CountDownLatch(1);
+	private final CountDownLatch slowGo      = new CountDownLatch(1);
+
+	public static Properties props(String annotators) {
+		Properties props = new Properties();
+		props.setProperty("annotators", annotators);
+		return props;
+	}
+
+	public static Properties props(String annotators, String key, String value) {
+		Properties props = props(annotators);
+		props.setProperty(key, value);
+		return props;
+	}
+
+	public synchronized int loaded() {
+		return loaded;
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		synchronized (this) {
+			loaded++;
+		}
+		if (name.equals("pos") && "slow".equals(props.getProperty("pos.model"))) {
+			slowStarted.countDown();
+			try {
+				slowGo.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!name.equals("tokenize")) {
+			return new AnnotationPipeline();
+		}
+		return new AnnotationPipeline() {
+			public void annotate(Annotation doc) {
+				String text = doc.get(TextAnnotation.class);
+				List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+				for (String word : text.split("\\s+")) {
+					CoreLabel token = new CoreLabel();
+					token.set(TextAnnotation.class, word);
+					token.setWord(word);
+					tokens.add(token);
+				}
+				CoreMap sentence = new ArrayCoreMap();
+				sentence.set(TextAnnotation.class, text);
+				sentence.set(TokensAnnotation.class, tokens);
+				List<CoreMap> sentences = new ArrayList<CoreMap>();
+				sentences.add(sentence);
+				doc.set(TokensAnnotation.class, tokens);
+				doc.set(SentencesAnnotation.class, sentences);
+			}
+		};
+	}
+
+	public static String evictWhileLoading() throws Exception {
+		final StubPool pool = new StubPool();
+		pool.define("fast", props("tokenize, ssplit, pos"));
+		pool.define("slow", props("tokenize, ssplit, pos", "pos.model", "slow"));
+		pool.get("fast").process("One sentence.");
+
+		Thread loader = new Thread(new Runnable() {
+			public void run() {
+				pool.get("slow").process("Another one.");
+			}
+		});
+		loader.start();
+		pool.slowStarted.await();
+
+		// slow has taken tokenize and ssplit, and is loading its pos
+		pool.evict("fast");
+		pool.slowGo.countDown();
+		loader.join();
+
+		if (pool.getAnnotatorCount() != 3) {
+			return pool.getAnnotatorCount() + " annotators, expected 3";
+		}
+		pool.get("fast").process("Once more.");
+		return pool.loaded() == 5 ? "" : "loaded " + pool.loaded() + " annotators, expected 5";
+	}
+}
+
+// a pool that is not allowed to reach into StanfordCoreNLP's
+class BlockedPool extends StubPool {
+	protected AnnotatorPool coreNLPPool() {
+		throw new SecurityException("no access");
+	}
+}
+
+class PoolCheck {
+	// tokenize and ssplit need no models
+	public static String coreNLPPool() {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize");
+		new StanfordCoreNLP(props, false);
+		Annotator theirs = StanfordCoreNLP.getExistingAnnotator("tokenize");
+
+		be.fivebyfive.lingua.stanfordcorenlp.PipelinePool pool = new be.fivebyfive.lingua.stanfordcorenlp.PipelinePool();
+		pool.define("real", StubPool.props("tokenize, ssplit"));
+		int size = pool.get("real").process("Hello there. How are you?").size();
+		if (size != 2) {
+			return size + " sentences";
+		}
+		Annotator ours = StanfordCoreNLP.getExistingAnnotator("ssplit");
+
+		pool.evict("real");
+		if (StanfordCoreNLP.getExistingAnnotator("tokenize") != theirs) {
+			return "dropped a tokenize the pool did not load";
+		}
+		return StanfordCoreNLP.getExistingAnnotator("ssplit") != ours ? "" : "kept the ssplit the pool loaded";
+	}
+}
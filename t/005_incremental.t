@@ -0,0 +1,149 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## Incremental re-annotation, with stub annotators standing in for the
+## CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $pipeline = CountingPipeline->create;
+my $first    = $pipeline->processIncremental(undef, 'One two. Three four. Five six.');
+
+is($first->size, 3, 'Lingua::StanfordCoreNLP::Pipeline->processIncremental() without a previous result');
+is($pipeline->tagged, 3, 'every sentence is tagged the first time');
+
+my $second = $pipeline->processIncremental($first, 'One two. Three FOUR. Five six.');
+
+is($second->size, 3, 'edited document has 3 sentences');
+is($pipeline->tagged, 4, 'only the edited sentence is tagged again');
+is($pipeline->corefRuns, 2, 'dcoref runs over the whole edited document');
+is($second->get(1)->getTokens->get(1)->getPOSTag, 'NNP', 'edited sentence has new tags');
+ok($second->get(0)->getTokens->get(0)->identicalTo($first->get(0)->getTokens->get(0)), 'unchanged sentences keep their tokens');
+ok(!$second->get(0)->getTokens->isFrozen, 'unchanged sentences stay open to change');
+
+my $third = $pipeline->processIncremental($second, 'Zero. One two. Three FOUR. Five six.');
+
+is($third->size, 4, 'sentence inserted at the start');
+is($pipeline->tagged, 5, 'only the inserted sentence is tagged');
+is($third->get(3)->getSentence, $second->get(2)->getSentence, 'later sentences move down');
+
+my $copy = CountingPipeline->roundTrip($third);
+is($copy->toCompactString, $third->toCompactString, 'processIncremental() results serialize');
+is($pipeline->processIncremental($copy, 'Zero. One two.')->size, 2, 'a result read back in can be passed on');
+is($pipeline->tagged, 7, 'and is annotated from scratch');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+
+class CountingPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	private AtomicInteger tagged    = new AtomicInteger();
+	private AtomicInteger corefRuns = new AtomicInteger();
+
+	public CountingPipeline(Properties props) {
+		super(props);
+	}
+
+	public static CountingPipeline create() {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, pos, dcoref");
+		return new CountingPipeline(props);
+	}
+
+	public int tagged()    { return tagged.get(); }
+	public int corefRuns() { return corefRuns.get(); }
+
+	public static PipelineSentenceList roundTrip(PipelineSentenceList list) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream    out   = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		return (PipelineSentenceList)new ObjectInputStream(
+			new ByteArrayInputStream(bytes.toByteArray())
+		).readObject();
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreLabel> all = new ArrayList<CoreLabel>();
+					for (String word : doc.get(TextAnnotation.class).split("\\s+")) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, word);
+						token.setWord(word);
+						all.add(token);
+					}
+					doc.set(TokensAnnotation.class, all);
+				}
+			};
+		} else if (name.equals("ssplit")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreMap>   sentences = new ArrayList<CoreMap>();
+					List<CoreLabel> current   = new ArrayList<CoreLabel>();
+					for (CoreLabel token : doc.get(TokensAnnotation.class)) {
+						current.add(token);
+						if (token.word().endsWith(".")) {
+							CoreMap sentence = new ArrayCoreMap();
+							sentence.set(TextAnnotation.class, current.toString());
+							sentence.set(TokensAnnotation.class, current);
+							sentences.add(sentence);
+							current = new ArrayList<CoreLabel>();
+						}
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("pos")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+							String word = token.word();
+							token.setTag(word.equals(word.toUpperCase()) ? "NNP" : "NN");
+						}
+						tagged.incrementAndGet();
+					}
+				}
+			};
+		} else {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					corefRuns.incrementAndGet();
+				}
+			};
+		}
+	}
+}
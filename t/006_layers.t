@@ -0,0 +1,105 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## Output layers (lingua.layers), with a stub annotator standing in for the
+## CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $text = 'Jane looked at the computer. She turned it off.';
+
+my $token = LayeredPipeline->withLayers(undef)->process($text)->get(0)->getTokens->get(0);
+is($token->getPOSTag, 'NN', 'every layer by default');
+is($token->getLemma, 'jane', 'every layer by default');
+
+my $pipeline = LayeredPipeline->withLayers('lemma');
+my $result   = $pipeline->process($text);
+$token = $result->get(0)->getTokens->get(0);
+
+is($token->getWord, 'Jane', 'words are always converted');
+is($token->getLemma, 'jane', 'lemma layer is converted');
+is($token->getPOSTag, undef, 'pos layer is left out');
+is($token->getNERTag, undef, 'ner layer is left out');
+
+my $columnar = $pipeline->processColumnar($text)->get(1);
+is($columnar->getLemma(0), 'she', 'Lingua::StanfordCoreNLP::Pipeline->processColumnar() lemma layer');
+is($columnar->getPOSTag(0), undef, 'Lingua::StanfordCoreNLP::Pipeline->processColumnar() leaves out pos');
+
+is(LayeredPipeline->rejects('lemma, trees'), 1, 'unknown layers are rejected');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+class LayeredPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	public LayeredPipeline(Properties props) {
+		super(props);
+	}
+
+	public static LayeredPipeline withLayers(String layers) {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize");
+		if (layers != null) {
+			props.setProperty("lingua.layers", layers);
+		}
+		return new LayeredPipeline(props);
+	}
+
+	public static int rejects(String layers) {
+		try {
+			withLayers(layers).initPipeline();
+			return 0;
+		} catch (IllegalArgumentException e) {
+			return 1;
+		}
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		return new AnnotationPipeline() {
+			public void annotate(Annotation doc) {
+				List<CoreMap> sentences = new ArrayList<CoreMap>();
+
+				for (String str : doc.get(TextAnnotation.class).split("(?<=\\.)\\s+")) {
+					List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+					for (String word : str.split("\\s+")) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, word);
+						token.setWord(word);
+						token.setTag("NN");
+						token.setNER("O");
+						token.setLemma(word.toLowerCase());
+						tokens.add(token);
+					}
+					CoreMap sentence = new ArrayCoreMap();
+					sentence.set(TextAnnotation.class, str);
+					sentence.set(TokensAnnotation.class, tokens);
+					sentences.add(sentence);
+				}
+				doc.set(SentencesAnnotation.class, sentences);
+			}
+		};
+	}
+}
@@ -0,0 +1,136 @@
+#!/usr/bin/perl
+
+use Test::More;
+use File::Temp qw(tempdir);
+
+##
+## Segment files: PipelineSegmentWriter and PipelineSegment, with documents
+## built by hand instead of by the CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $file = tempdir(CLEANUP => 1) . '/test.seg';
+
+my $writer = new Lingua::StanfordCoreNLP::PipelineSegmentWriter($file);
+my @docs   = map { SegmentFixture->document($_) } 0 .. 9;
+is($writer->add($docs[0]), 0, 'Lingua::StanfordCoreNLP::PipelineSegmentWriter->add()');
+$writer->add($_) for @docs[1 .. 9];
+$writer->close;
+
+my $segment = new Lingua::StanfordCoreNLP::PipelineSegment($file);
+is($segment->getDocumentCount, 10, 'Lingua::StanfordCoreNLP::PipelineSegment->getDocumentCount()');
+is($segment->getSentenceCount, 20, 'Lingua::StanfordCoreNLP::PipelineSegment->getSentenceCount()');
+
+my $sentence = $segment->getSentence(7, 1);
+is($sentence->getSentence, 'She saw 7 birds.', 'Lingua::StanfordCoreNLP::PipelineSegmentSentence->getSentence()');
+is($sentence->getWord(2), '7', 'Lingua::StanfordCoreNLP::PipelineSegmentSentence->getWord()');
+is($sentence->getPOSTag(0), 'PRP', 'Lingua::StanfordCoreNLP::PipelineSegmentSentence->getPOSTag()');
+is($sentence->getLemma(1), 'see', 'Lingua::StanfordCoreNLP::PipelineSegmentSentence->getLemma()');
+is($sentence->getRelation(0), 'nsubj', 'Lingua::StanfordCoreNLP::PipelineSegmentSentence->getRelation()');
+is($segment->getSentence(15)->getSentence, 'She saw 7 birds.', 'sentences are numbered through the segment');
+
+my $doc = $segment->getDocument(3);
+is($doc->getChainCount, 1, 'Lingua::StanfordCoreNLP::PipelineSegmentDocument->getChainCount()');
+is($doc->getMention(0, 1)->[0], 1, 'Lingua::StanfordCoreNLP::PipelineSegmentDocument->getMention()');
+
+is(
+	$doc->toSentenceList->toString,
+	$docs[3]->toString,
+	'Lingua::StanfordCoreNLP::PipelineSegmentDocument->toSentenceList()'
+);
+is(
+	$doc->toSentenceList->get(0)->getCorefChains->toString,
+	$docs[3]->get(0)->getCorefChains->toString,
+	'coreference chains survive the round trip'
+);
+
+my $list    = $doc->toSentenceList;
+my $mention = $list->get(0)->getCorefChains->get(0)->getMentions->get(1);
+ok(
+	$mention->getTokenView->get(0)->identicalTo($list->get(1)->getTokens->get(0)),
+	'Lingua::StanfordCoreNLP::PipelineCorefMention->getTokenView() shares the sentence\'s tokens'
+);
+is($mention->getHeadToken->getWord, 'She', 'Lingua::StanfordCoreNLP::PipelineCorefMention->getHeadToken()');
+is($mention->getTokens->size, 1, 'Lingua::StanfordCoreNLP::PipelineCorefMention->getTokens()');
+ok(SegmentFixture->sameTokens($mention), 'Lingua::StanfordCoreNLP::PipelineCorefMention->getTokens() copies once');
+
+my $jane = SegmentFixture->document(0)->get(0)->getTokens;
+is(SegmentFixture->viewed($jane, 2, 4, 3)->getHeadToken->getWord, 'Übersee', 'head of a view onto the sentence');
+is(SegmentFixture->viewed($jane, 3, 1, 2)->getHeadToken->getWord, 'at', 'head of a swapped view');
+is(SegmentFixture->viewed($jane, 4, 9, 4)->getHeadToken->getWord, '.', 'head of an emptied view');
+
+done_testing;
+
+__DATA__
+__Java__
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChain;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefMention;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependency;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependencyList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class SegmentFixture {
+	static PipelineSentence sentence(String text, String[][] tokens) {
+		PipelineTokenList ptl = new PipelineTokenList();
+		for (String[] t : tokens) {
+			ptl.add(new PipelineToken(t[0], t[1], t[2], t[3]));
+		}
+		PipelineDependencyList deps = new PipelineDependencyList();
+		deps.add(new PipelineDependency(ptl.get(1), ptl.get(0), 1, 0, "nsubj", "nominal subject"));
+		deps.add(new PipelineDependency(ptl.get(1), ptl.get(3), 1, 3, "dobj", "direct object"));
+		return new PipelineSentence(text, ptl, deps);
+	}
+
+	static PipelineCorefMention mention(int sent, PipelineTokenList tokens) {
+		PipelineCorefMention m = new PipelineCorefMention(0, 1, 0, sent);
+		m.setTokens(tokens.slice(0, 1));
+		return m;
+	}
+
+	public static boolean sameTokens(PipelineCorefMention m) {
+		return m.getTokens() == m.getTokens();
+	}
+
+	public static PipelineCorefMention viewed(PipelineTokenList tokens, int start, int end, int head) {
+		PipelineCorefMention m = new PipelineCorefMention(start, end, head, 0);
+		m.setTokens(tokens.view(start, end));
+		return m;
+	}
+
+	public static PipelineSentenceList document(int i) {
+		PipelineSentenceList doc = new PipelineSentenceList();
+		doc.add(sentence("Jane looked at Übersee.", new String[][] {
+			{ "Jane", "NNP", "PERSON", "Jane" },
+			{ "looked", "VBD", "O", "look" },
+			{ "at", "IN", "O", "at" },
+			{ "Übersee", "NNP", "LOCATION", "Übersee" },
+			{ ".", ".", "O", "." }
+		}));
+		doc.add(sentence("She saw " + i + " birds.", new String[][] {
+			{ "She", "PRP", "O", "she" },
+			{ "saw", "VBD", "O", "see" },
+			{ Integer.toString(i), "CD", "NUMBER", Integer.toString(i) },
+			{ "birds", "NNS", "O", "bird" },
+			{ ".", ".", "O", "." }
+		}));
+
+		PipelineCorefChain chain = new PipelineCorefChain();
+		PipelineCorefMention rep = mention(0, doc.get(0).getTokens());
+		rep.setHeadToken(doc.get(0).getTokens().get(0));
+		chain.setRepresentativeMention(rep);
+		chain.addMention(mention(0, doc.get(0).getTokens()));
+		chain.addMention(mention(1, doc.get(1).getTokens()));
+		doc.get(0).addCorefChain(chain);
+		return doc;
+	}
+}
@@ -0,0 +1,110 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## PipelineIndex, over documents built by hand instead of by the CoreNLP
+## models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $index = new Lingua::StanfordCoreNLP::PipelineIndex();
+$index->add(IndexFixture->document($_)) for 0 .. 9;
+
+is($index->getDocumentCount, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->getDocumentCount()');
+is($index->getSentenceCount, 20, 'Lingua::StanfordCoreNLP::PipelineIndex->getSentenceCount()');
+
+is(scalar @{$index->lemma('see')}, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->lemma()');
+is(scalar @{$index->ner('NUMBER')}, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->ner()');
+is(scalar @{$index->pos('NNP')}, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->pos()');
+
+my $hits = $index->dependency('nsubj', 'look', 'Jane');
+is(scalar @$hits, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->dependency()');
+is($hits->[3], 6, 'sentences are numbered through the index');
+is($index->getDocument($hits->[3]), 3, 'Lingua::StanfordCoreNLP::PipelineIndex->getDocument()');
+is($index->getSentenceIndex(7), 1, 'Lingua::StanfordCoreNLP::PipelineIndex->getSentenceIndex()');
+is(scalar @{$index->dependency('nsubj', undef, 'she')}, 10, 'dependency() with any governor');
+is(scalar @{$index->dependency('dobj', 'look', 'Jane')}, 0, 'dependency() with the wrong relation');
+
+is(
+	scalar @{$index->and($index->lemma('bird'), $index->lemma('7'))},
+	1,
+	'Lingua::StanfordCoreNLP::PipelineIndex->and()'
+);
+
+my $mentions = $index->corefMentions('she', 'PERSON');
+is(scalar @$mentions, 10, 'Lingua::StanfordCoreNLP::PipelineIndex->corefMentions()');
+is($mentions->[0][0], 0, 'coreferent mentions of "she" with a PERSON head');
+is(scalar @{$index->corefMentions('she', undef)}, 20, 'corefMentions() with any NER tag');
+
+$index->add(IndexFixture->document(10));
+is(scalar @{$index->lemma('see')}, 11, 'documents can be added later');
+
+my %metrics = map { split / / } split /\n/, $index->getMetricsString;
+is($metrics{'query.lemma.calls'}, 4, 'Lingua::StanfordCoreNLP::PipelineIndex->getMetricsString() counts queries');
+is($metrics{'query.dependency.results'}, 20, 'Lingua::StanfordCoreNLP::PipelineIndex->getMetricsString() counts results');
+
+done_testing;
+
+__DATA__
+__Java__
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChain;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefMention;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependency;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependencyList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class IndexFixture {
+	static PipelineSentence sentence(String text, String[][] tokens) {
+		PipelineTokenList ptl = new PipelineTokenList();
+		for (String[] t : tokens) {
+			ptl.add(new PipelineToken(t[0], t[1], t[2], t[3]));
+		}
+		PipelineDependencyList deps = new PipelineDependencyList();
+		deps.add(new PipelineDependency(ptl.get(1), ptl.get(0), 1, 0, "nsubj", "nominal subject"));
+		return new PipelineSentence(text, ptl, deps);
+	}
+
+	static PipelineCorefMention mention(int sent, PipelineTokenList tokens) {
+		PipelineCorefMention m = new PipelineCorefMention(0, 1, 0, sent);
+		m.setTokens(tokens.slice(0, 1));
+		return m;
+	}
+
+	public static PipelineSentenceList document(int i) {
+		PipelineSentenceList doc = new PipelineSentenceList();
+		doc.add(sentence("Jane looked at it.", new String[][] {
+			{ "Jane", "NNP", "PERSON", "Jane" },
+			{ "looked", "VBD", "O", "look" },
+			{ "at", "IN", "O", "at" },
+			{ "it", "PRP", "O", "it" },
+			{ ".", ".", "O", "." }
+		}));
+		doc.add(sentence("She saw " + i + " birds.", new String[][] {
+			{ "She", "PRP", "O", "she" },
+			{ "saw", "VBD", "O", "see" },
+			{ Integer.toString(i), "CD", "NUMBER", Integer.toString(i) },
+			{ "birds", "NNS", "O", "bird" },
+			{ ".", ".", "O", "." }
+		}));
+
+		PipelineCorefChain chain = new PipelineCorefChain();
+		PipelineCorefMention rep = mention(0, doc.get(0).getTokens());
+		rep.setHeadToken(doc.get(0).getTokens().get(0));
+		chain.setRepresentativeMention(rep);
+		chain.addMention(mention(0, doc.get(0).getTokens()));
+		chain.addMention(mention(1, doc.get(1).getTokens()));
+		doc.get(0).addCorefChain(chain);
+		return doc;
+	}
+}
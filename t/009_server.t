@@ -0,0 +1,214 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## PipelineServer and Lingua::StanfordCoreNLP::Client, with a stub annotator
+## standing in for the CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+	use_ok('Lingua::StanfordCoreNLP::Client');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $server = ServerFixture->start;
+my $client = Lingua::StanfordCoreNLP::Client->new(port => $server->getPort);
+
+ok($client->ping, 'Lingua::StanfordCoreNLP::Client->ping()');
+
+my $result = $client->process('Jane looked. She smiled at Bob.');
+is(scalar @{$result->{sentences}}, 2, 'Lingua::StanfordCoreNLP::Client->process()');
+is($result->{sentences}[1]{tokens}[3][0], 'Bob.', 'tokens come back as [word, pos, ner, lemma]');
+is($result->{sentences}[1]{tokens}[3][3], 'bob.', 'lemmas');
+
+$result = $client->process("Caf\x{e9} cr\x{e8}me.");
+is($result->{sentences}[0]{tokens}[0][0], "Caf\x{e9}", 'text is sent and returned as UTF-8');
+
+like(
+	$client->processToJson('Jane looked.'),
+	qr/^\{"sentences":\[\{"sentence":"Jane looked\."/,
+	'Lingua::StanfordCoreNLP::Client->processToJson()'
+);
+
+eval { $client->process(join(' ', ('word') x 50)) };
+like($@, qr/^Lingua::StanfordCoreNLP::Client: max-input: /, 'guards die with the guard name');
+
+ok($client->ping, 'the connection survives a failed request');
+
+my %metrics = map { split / / } split /\n/, $client->getMetricsString;
+is($metrics{documents}, 3, 'Lingua::StanfordCoreNLP::Client->getMetricsString()');
+is($metrics{'async.queue.calls'}, 4, 'metrics for the processAsync queue');
+is($metrics{'server.intake.calls'}, 7, 'metrics for reading requests');
+is($metrics{'server.serialize.calls'}, 3, 'metrics for writing responses');
+is(
+	$metrics{'server.virtual-threads'},
+	ServerFixture->hasVirtualThreads ? 1 : 0,
+	'connections are served on virtual threads where the JVM has them'
+);
+
+my $other = Lingua::StanfordCoreNLP::Client->new(port => $server->getPort);
+is(
+	scalar @{$other->process('One. Two. Three.')->{sentences}},
+	3,
+	'a second client shares the server'
+);
+$other->close;
+
+is(ServerFixture->concurrent($server, 8, 50), '', 'requests from several connections at once');
+is(ServerFixture->constructed, 1, 'the models are loaded once');
+
+%metrics = map { split / / } split /\n/, $server->getMetricsString;
+ok($metrics{'async.annotate.max-active'} <= 4, 'no more than lingua.threads documents are annotated at once');
+
+$client->close;
+$server->stop;
+ok(!$server->isRunning, 'PipelineServer->stop()');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import be.fivebyfive.lingua.stanfordcorenlp.Pipeline;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineServer;
+
+class ServerAnnotator extends AnnotationPipeline {
+	public void annotate(Annotation doc) {
+		List<CoreMap> sentences = new ArrayList<CoreMap>();
+
+		for (String str : doc.get(TextAnnotation.class).split("(?<=\\.)\\s+")) {
+			List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+			for (String word : str.split("\\s+")) {
+				CoreLabel token = new CoreLabel();
+				token.set(TextAnnotation.class, word);
+				token.setWord(word);
+				token.setTag("NN");
+				token.setNER("O");
+				token.setLemma(word.toLowerCase());
+				tokens.add(token);
+			}
+			CoreMap sentence = new ArrayCoreMap();
+			sentence.set(TextAnnotation.class, str);
+			sentence.set(TokensAnnotation.class, tokens);
+			sentences.add(sentence);
+		}
+		doc.set(SentencesAnnotation.class, sentences);
+	}
+}
+
+class ServerFixture extends Pipeline {
+	private static AtomicInteger constructed = new AtomicInteger();
+
+	public ServerFixture(Properties props) {
+		super(props);
+	}
+
+	public static int constructed() {
+		return constructed.get();
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (!name.equals("tokenize")) {
+			return new AnnotationPipeline();
+		}
+		constructed.incrementAndGet();
+		return new ServerAnnotator();
+	}
+
+	public static boolean hasVirtualThreads() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	public static PipelineServer start() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit");
+		props.setProperty("lingua.max-input", "200");
+		props.setProperty("lingua.metrics", "true");
+		props.setProperty("lingua.metrics-name", "t-009");
+		props.setProperty("lingua.threads", "4");
+
+		PipelineServer server = new PipelineServer(new ServerFixture(props));
+		server.listen(0);
+		return server;
+	}
+
+	static String roundTrip(DataInputStream in, DataOutputStream out, String text) throws Exception {
+		byte[] body = text.getBytes("UTF-8");
+		out.writeByte(PipelineServer.PROCESS);
+		out.writeInt(body.length);
+		out.write(body);
+		out.flush();
+
+		byte   type     = in.readByte();
+		byte[] response = new byte[in.readInt()];
+		in.readFully(response);
+		if (type != PipelineServer.PROCESS) {
+			return "got a '" + (char)type + "' response";
+		}
+		String json = new String(response, "UTF-8");
+		return json.contains("\"" + text + "\"") ? null : "wrong result for " + text + ": " + json;
+	}
+
+	public static String concurrent(final PipelineServer server, int clients, final int requests)
+			throws Exception {
+		final AtomicReference<String> error = new AtomicReference<String>("");
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+						DataInputStream  in  = new DataInputStream(socket.getInputStream());
+						DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+						for (int i = 0; i < requests; i++) {
+							String err = roundTrip(in, out, "Client " + client + " request " + i + ".");
+							if (err != null) {
+								error.compareAndSet("", err);
+							}
+						}
+						socket.close();
+					} catch (Throwable e) {
+						error.compareAndSet("", e.toString());
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return error.get();
+	}
+}
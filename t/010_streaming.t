@@ -0,0 +1,294 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## Streaming to a PipelineListener, with stub annotators standing in for the
+## CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $pipeline = StreamPipeline->create(0, 0);
+my $text     = 'Dr. Jane Smith came in. Bob said hello. Jane waved at Bob.';
+
+is(
+	Streaming->events($pipeline, $text),
+	'sentence Dr. Jane Smith came in.|sentence Bob said hello.|sentence Jane waved at Bob.|corefChains 2',
+	'Lingua::StanfordCoreNLP::Pipeline->process($str, $listener) streams sentences in order, then the chains'
+);
+
+is(
+	Streaming->chains($pipeline->process($text)),
+	'0:1-2,2:0-1|1:0-1,2:3-4',
+	'the streamed chains are those of process()'
+);
+
+# the stub splitter keeps "Dr. Jane" together, java.text.BreakIterator does not
+my $group = 'Dr. Jane Smith met Mr. Bob Jones at noon. Jane said hello to Bob. They left early. ';
+my $long  = $group x 40;
+my $paras = join("\n\n", ($group) x 40);
+
+for my $case (
+	[ $long,  300,  0, 'one paragraph, no overlap' ],
+	[ $long,  300,  2, 'one paragraph, overlap' ],
+	[ $long,  1000, 2, 'one paragraph, larger windows' ],
+	[ $paras, 300,  0, 'paragraphs, no overlap' ],
+	[ $paras, 300,  2, 'paragraphs, overlap' ],
+) {
+	my ($str, $size, $overlap, $name) = @$case;
+	is(
+		Streaming->compareChunked($str, $size, $overlap),
+		'',
+		'Lingua::StanfordCoreNLP::Pipeline->processChunked() equals process(): ' . $name
+	);
+}
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.stanford.nlp.dcoref.CorefChain;
+import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
+import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
+import edu.stanford.nlp.dcoref.Dictionaries;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.IntPair;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChain;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChainList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefMention;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineListener;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+
+class StreamPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	// unlike java.text.BreakIterator, the stub splitter knows these
+	static final Set<String> ABBREVIATIONS = new HashSet<String>(Arrays.asList("Dr.", "Mr.", "Mrs."));
+	static final Set<String> NAMES         = new HashSet<String>(Arrays.asList("Jane", "Bob"));
+
+	public StreamPipeline(Properties props) {
+		super(props);
+	}
+
+	public static StreamPipeline create(int chunkSize, int overlap) {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, pos, lemma, dcoref");
+		if (chunkSize > 0) {
+			props.setProperty("lingua.chunk-size", Integer.toString(chunkSize));
+			props.setProperty("lingua.chunk-overlap", Integer.toString(overlap));
+		}
+		return new StreamPipeline(props);
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreLabel> all = new ArrayList<CoreLabel>();
+					Matcher m = Pattern.compile("\\S+").matcher(doc.get(TextAnnotation.class));
+					while (m.find()) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, m.group());
+						token.setWord(m.group());
+						token.set(CharacterOffsetBeginAnnotation.class, m.start());
+						token.set(CharacterOffsetEndAnnotation.class, m.end());
+						all.add(token);
+					}
+					doc.set(TokensAnnotation.class, all);
+				}
+			};
+		} else if (name.equals("ssplit")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					String          text      = doc.get(TextAnnotation.class);
+					List<CoreMap>   sentences = new ArrayList<CoreMap>();
+					List<CoreLabel> current   = new ArrayList<CoreLabel>();
+					List<CoreLabel> all       = doc.get(TokensAnnotation.class);
+					for (int i = 0; i < all.size(); i++) {
+						CoreLabel token = all.get(i);
+						current.add(token);
+						if (i == all.size() - 1
+								|| (token.word().endsWith(".") && !ABBREVIATIONS.contains(token.word()))) {
+							int begin = current.get(0).get(CharacterOffsetBeginAnnotation.class);
+							int end   = token.get(CharacterOffsetEndAnnotation.class);
+							CoreMap sentence = new ArrayCoreMap();
+							sentence.set(TextAnnotation.class, text.substring(begin, end));
+							sentence.set(TokensAnnotation.class, current);
+							sentence.set(CharacterOffsetBeginAnnotation.class, begin);
+							sentence.set(CharacterOffsetEndAnnotation.class, end);
+							sentences.add(sentence);
+							current = new ArrayList<CoreLabel>();
+						}
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("pos") || name.equals("lemma")) {
+			final boolean pos = name.equals("pos");
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+							if (pos) {
+								token.setTag(Character.isUpperCase(token.word().charAt(0)) ? "NNP" : "NN");
+							} else {
+								token.setLemma(token.word().toLowerCase());
+							}
+						}
+					}
+				}
+			};
+		} else {
+			// one chain per name that occurs more than once
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					Map<String, List<CorefMention>> byName = new LinkedHashMap<String, List<CorefMention>>();
+					List<CoreMap> sentences = doc.get(SentencesAnnotation.class);
+					int id = 0;
+					for (int s = 0; s < sentences.size(); s++) {
+						List<CoreLabel> tokens = sentences.get(s).get(TokensAnnotation.class);
+						for (int t = 0; t < tokens.size(); t++) {
+							String word = tokens.get(t).word().replaceAll("\\.$", "");
+							if (!NAMES.contains(word)) {
+								continue;
+							}
+							List<CorefMention> mentions = byName.get(word);
+							if (mentions == null) {
+								mentions = new ArrayList<CorefMention>();
+								byName.put(word, mentions);
+							}
+							mentions.add(new CorefMention(
+								Dictionaries.MentionType.PROPER, Dictionaries.Number.SINGULAR,
+								Dictionaries.Gender.UNKNOWN, Dictionaries.Animacy.ANIMATE,
+								t + 1, t + 2, t + 1, byName.size(), ++id, s + 1,
+								new IntPair(s + 1, t + 1), word
+							));
+						}
+					}
+
+					Map<Integer, CorefChain> chains = new HashMap<Integer, CorefChain>();
+					for (List<CorefMention> mentions : byName.values()) {
+						if (mentions.size() < 2) {
+							continue;
+						}
+						Map<IntPair, Set<CorefMention>> map = new HashMap<IntPair, Set<CorefMention>>();
+						for (CorefMention m : mentions) {
+							Set<CorefMention> one = new HashSet<CorefMention>();
+							one.add(m);
+							map.put(new IntPair(m.sentNum, m.headIndex), one);
+						}
+						int cluster = mentions.get(0).corefClusterID;
+						chains.put(cluster, new CorefChain(cluster, map, mentions.get(0)));
+					}
+					doc.set(CorefChainAnnotation.class, chains);
+				}
+			};
+		}
+	}
+}
+
+class Streaming {
+	public static String events(be.fivebyfive.lingua.stanfordcorenlp.Pipeline pipeline, String text) {
+		final StringBuilder events = new StringBuilder();
+		pipeline.process(text, new PipelineListener() {
+			public void sentence(PipelineSentence sentence) {
+				events.append(events.length() > 0 ? "|" : "").append("sentence ").append(sentence.getSentence());
+			}
+
+			public void corefChains(PipelineCorefChainList chains) {
+				events.append(events.length() > 0 ? "|" : "").append("corefChains ").append(chains.size());
+			}
+		});
+		return events.toString();
+	}
+
+	/*
+	 * The sentences, tokens and, with overlap (without it, chains end at
+	 * window boundaries), the coref chains of processChunked() against
+	 * those of process().
+	 */
+	public static String compareChunked(String text, int size, int overlap) {
+		PipelineSentenceList whole   = StreamPipeline.create(0, 0).process(text);
+		PipelineSentenceList chunked = StreamPipeline.create(size, overlap).processChunked(text);
+
+		if (chunked.size() != whole.size()) {
+			return "expected " + whole.size() + " sentences, got " + chunked.size();
+		}
+		for (int i = 0; i < whole.size(); i++) {
+			String expected = whole.get(i).getSentence() + " " + whole.get(i).getTokens().toCompactString();
+			String got      = chunked.get(i).getSentence() + " " + chunked.get(i).getTokens().toCompactString();
+			if (!got.equals(expected)) {
+				return "sentence " + i + ": expected " + expected + ", got " + got;
+			}
+		}
+
+		Set<String> seen = new HashSet<String>();
+		for (PipelineSentence sentence : chunked) {
+			for (PipelineCorefChain chain : sentence.getCorefChains()) {
+				for (PipelineCorefMention m : chain.getMentions()) {
+					String key = m.getSentNum() + ":" + m.getStartIndex() + "-" + m.getEndIndex();
+					if (!seen.add(key)) {
+						return "mention " + key + " is in more than one chain";
+					}
+				}
+			}
+		}
+		if (overlap > 0 && !chains(chunked).equals(chains(whole))) {
+			return "expected chains " + chains(whole) + ", got " + chains(chunked);
+		}
+		return "";
+	}
+
+	// each chain as its mentions, sentence:start-end, and the chains sorted
+	public static String chains(PipelineSentenceList result) {
+		Set<String> chains = new TreeSet<String>();
+		for (PipelineSentence sentence : result) {
+			for (PipelineCorefChain chain : sentence.getCorefChains()) {
+				Set<String> mentions = new TreeSet<String>();
+				for (PipelineCorefMention m : chain.getMentions()) {
+					mentions.add(m.getSentNum() + ":" + m.getStartIndex() + "-" + m.getEndIndex());
+				}
+				StringBuilder sb = new StringBuilder();
+				for (String m : mentions) {
+					sb.append(sb.length() > 0 ? "," : "").append(m);
+				}
+				chains.add(sb.toString());
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String chain : chains) {
+			sb.append(sb.length() > 0 ? "|" : "").append(chain);
+		}
+		return sb.toString();
+	}
+}
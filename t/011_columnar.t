@@ -0,0 +1,269 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## processColumnar against process, with stub annotators standing in for the
+## CoreNLP models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $pipeline = ColumnarPipeline->create;
+my $text     = 'Jane met Bob at noon. Bob said hello. Then Jane left.';
+my $doc      = $pipeline->processColumnar($text);
+
+is($doc->size, 3, 'Lingua::StanfordCoreNLP::PipelineColumnarDocument->size()');
+is($doc->get(1)->getSentence, 'Bob said hello.', 'Lingua::StanfordCoreNLP::PipelineColumnarSentence->getSentence()');
+is($doc->get(0)->getWord(2), 'Bob', 'Lingua::StanfordCoreNLP::PipelineColumnarSentence->getWord()');
+is($doc->get(0)->getNERTag(2), 'PERSON', 'Lingua::StanfordCoreNLP::PipelineColumnarSentence->getNERTag()');
+is($doc->getChainCount, 2, 'Lingua::StanfordCoreNLP::PipelineColumnarDocument->getChainCount()');
+
+is(
+	Columnar->compare($pipeline, $text),
+	'',
+	'Lingua::StanfordCoreNLP::Pipeline->processColumnar() agrees with process()'
+);
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.stanford.nlp.dcoref.CorefChain;
+import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
+import edu.stanford.nlp.dcoref.CorefCoreAnnotations.CorefChainAnnotation;
+import edu.stanford.nlp.dcoref.Dictionaries;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.trees.EnglishGrammaticalRelations;
+import edu.stanford.nlp.trees.semgraph.SemanticGraph;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.IntPair;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineColumnarDocument;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineColumnarSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefChain;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCorefMention;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependency;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+
+class ColumnarPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	static final Set<String> NAMES = new HashSet<String>(Arrays.asList("Jane", "Bob"));
+
+	public ColumnarPipeline(Properties props) {
+		super(props);
+	}
+
+	public static ColumnarPipeline create() {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse, dcoref");
+		return new ColumnarPipeline(props);
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreMap> sentences = new ArrayList<CoreMap>();
+					for (String str : doc.get(TextAnnotation.class).split("(?<=\\.)\\s+")) {
+						List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+						for (String word : str.split("\\s+")) {
+							CoreLabel token = new CoreLabel();
+							token.set(TextAnnotation.class, word);
+							token.setWord(word);
+							tokens.add(token);
+						}
+						CoreMap sentence = new ArrayCoreMap();
+						sentence.set(TextAnnotation.class, str);
+						sentence.set(TokensAnnotation.class, tokens);
+						sentences.add(sentence);
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("pos") || name.equals("lemma") || name.equals("ner")) {
+			final String layer = name;
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+							String word = token.word().replaceAll("\\.$", "");
+							if (layer.equals("pos")) {
+								token.setTag(NAMES.contains(word) ? "NNP" : "NN");
+							} else if (layer.equals("lemma")) {
+								// a lemma that differs from the word, and one that does not
+								token.setLemma(word.toLowerCase());
+							} else {
+								token.setNER(NAMES.contains(word) ? "PERSON" : "O");
+							}
+						}
+					}
+				}
+			};
+		} else if (name.equals("parse")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+						SemanticGraph graph = new SemanticGraph();
+						IndexedWord[] words = new IndexedWord[tokens.size() + 1];
+						for (int i = 1; i <= tokens.size(); i++) {
+							words[i] = new IndexedWord(tokens.get(i - 1));
+							words[i].setIndex(i);
+							graph.addVertex(words[i]);
+						}
+						graph.setRoot(words[2]);
+						graph.addEdge(words[2], words[1], EnglishGrammaticalRelations.NOMINAL_SUBJECT, 1.0);
+						graph.addEdge(words[2], words[3], EnglishGrammaticalRelations.DIRECT_OBJECT, 1.0);
+
+						sentence.set(CollapsedCCProcessedDependenciesAnnotation.class, graph);
+					}
+				}
+			};
+		} else if (name.equals("dcoref")) {
+			// one chain per name that occurs more than once
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					Map<String, List<CorefMention>> byName = new LinkedHashMap<String, List<CorefMention>>();
+					List<CoreMap> sentences = doc.get(SentencesAnnotation.class);
+					int id = 0;
+					for (int s = 0; s < sentences.size(); s++) {
+						List<CoreLabel> tokens = sentences.get(s).get(TokensAnnotation.class);
+						for (int t = 0; t < tokens.size(); t++) {
+							String word = tokens.get(t).word();
+							if (!NAMES.contains(word)) {
+								continue;
+							}
+							List<CorefMention> mentions = byName.get(word);
+							if (mentions == null) {
+								mentions = new ArrayList<CorefMention>();
+								byName.put(word, mentions);
+							}
+							mentions.add(new CorefMention(
+								Dictionaries.MentionType.PROPER, Dictionaries.Number.SINGULAR,
+								Dictionaries.Gender.UNKNOWN, Dictionaries.Animacy.ANIMATE,
+								t + 1, t + 2, t + 1, byName.size(), ++id, s + 1,
+								new IntPair(s + 1, t + 1), word
+							));
+						}
+					}
+
+					Map<Integer, CorefChain> chains = new HashMap<Integer, CorefChain>();
+					for (List<CorefMention> mentions : byName.values()) {
+						if (mentions.size() < 2) {
+							continue;
+						}
+						Map<IntPair, Set<CorefMention>> map = new HashMap<IntPair, Set<CorefMention>>();
+						for (CorefMention m : mentions) {
+							Set<CorefMention> one = new HashSet<CorefMention>();
+							one.add(m);
+							map.put(new IntPair(m.sentNum, m.headIndex), one);
+						}
+						int cluster = mentions.get(0).corefClusterID;
+						chains.put(cluster, new CorefChain(cluster, map, mentions.get(0)));
+					}
+					doc.set(CorefChainAnnotation.class, chains);
+				}
+			};
+		}
+		return new AnnotationPipeline();
+	}
+}
+
+class Columnar {
+	public static String compare(be.fivebyfive.lingua.stanfordcorenlp.Pipeline pipeline, String text) {
+		PipelineSentenceList     list = pipeline.process(text);
+		PipelineColumnarDocument doc  = pipeline.processColumnar(text);
+
+		if (doc.size() != list.size()) {
+			return "expected " + list.size() + " sentences, got " + doc.size();
+		}
+		Set<String> expectedMentions = new TreeSet<String>();
+		for (int i = 0; i < list.size(); i++) {
+			PipelineSentence         s = list.get(i);
+			PipelineColumnarSentence c = doc.get(i);
+
+			if (!c.getSentence().equals(s.getSentence())) {
+				return "sentence " + i + ": " + c.getSentence();
+			}
+			if (c.size() != s.getTokens().size()) {
+				return "sentence " + i + ": " + c.size() + " tokens";
+			}
+			for (int t = 0; t < c.size(); t++) {
+				PipelineToken token = s.getTokens().get(t);
+				String expected = token.getWord() + "/" + token.getLemma() + "/" + token.getPOSTag() + "/" + token.getNERTag();
+				String got      = c.getWord(t) + "/" + c.getLemma(t) + "/" + c.getPOSTag(t) + "/" + c.getNERTag(t);
+				if (!got.equals(expected)) {
+					return "sentence " + i + ", token " + t + ": expected " + expected + ", got " + got;
+				}
+			}
+
+			if (c.getDependencyCount() != s.getDependencies().size()) {
+				return "sentence " + i + ": " + c.getDependencyCount() + " dependencies";
+			}
+			int[]    govs = c.getGovernorIndices();
+			int[]    deps = c.getDependentIndices();
+			String[] rels = c.getRelations();
+			for (int d = 0; d < govs.length; d++) {
+				PipelineDependency dep = s.getDependencies().get(d);
+				String expected = dep.getRelation() + "(" + dep.getGovernorIndex() + "," + dep.getDependentIndex() + ")";
+				String got      = rels[d] + "(" + govs[d] + "," + deps[d] + ")";
+				if (!got.equals(expected)) {
+					return "sentence " + i + ", dependency " + d + ": expected " + expected + ", got " + got;
+				}
+			}
+
+			for (PipelineCorefChain chain : s.getCorefChains()) {
+				PipelineCorefMention rep = chain.getRepresentativeMention();
+				for (PipelineCorefMention m : chain.getMentions()) {
+					expectedMentions.add(rep.getSentNum() + "." + rep.getStartIndex() + " "
+						+ m.getSentNum() + ":" + m.getStartIndex() + "-" + m.getEndIndex() + "@" + m.getHeadIndex());
+				}
+			}
+		}
+
+		int[] chains = doc.getMentionChains();
+		int[] sents  = doc.getMentionSentNums();
+		int[] starts = doc.getMentionStartIndices();
+		int[] ends   = doc.getMentionEndIndices();
+		int[] heads  = doc.getMentionHeadIndices();
+		int[] reps   = doc.getRepresentativeMentions();
+		Set<String> gotMentions = new TreeSet<String>();
+		for (int m = 0; m < chains.length; m++) {
+			int rep = reps[chains[m]];
+			gotMentions.add(sents[rep] + "." + starts[rep] + " "
+				+ sents[m] + ":" + starts[m] + "-" + ends[m] + "@" + heads[m]);
+		}
+		if (!gotMentions.equals(expectedMentions)) {
+			return "expected mentions " + expectedMentions + ", got " + gotMentions;
+		}
+		return "";
+	}
+}
@@ -0,0 +1,207 @@
+#!/usr/bin/perl
+
+use Test::More;
+use File::Temp qw(tempdir);
+
+##
+## PipelineCache on its own, with hand-made results.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+is(CacheCheck->hitsAndMisses, '', 'Lingua::StanfordCoreNLP::PipelineCache hits and misses');
+is(CacheCheck->evictByCount, '', 'Lingua::StanfordCoreNLP::PipelineCache evicts by count, least recently used first');
+is(CacheCheck->evictByWeight, '', 'Lingua::StanfordCoreNLP::PipelineCache evicts by token weight');
+
+my $dir = tempdir(CLEANUP => 1);
+is(CacheCheck->diskRoundTrip($dir), '', 'Lingua::StanfordCoreNLP::PipelineCache reads back what it wrote to disk');
+is(CacheCheck->damagedFile($dir), '', 'Lingua::StanfordCoreNLP::PipelineCache counts and drops files it can not read');
+is(CacheCheck->foreignClass($dir), '', 'Lingua::StanfordCoreNLP::PipelineCache refuses files holding other classes');
+
+is(CacheCheck->sameSignature, '', 'Lingua::StanfordCoreNLP::PipelineCache signature ignores threads, caches and metrics');
+is(CacheCheck->otherSignature, '', 'Lingua::StanfordCoreNLP::PipelineCache signature follows annotator and output properties');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineCache;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependencyList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class CacheCheck {
+	// one sentence of the given words; weighs one more than it has tokens
+	static PipelineSentenceList result(String... words) {
+		PipelineTokenList tokens = new PipelineTokenList();
+		StringBuilder     text   = new StringBuilder();
+		for (String word : words) {
+			tokens.add(new PipelineToken(word, "NN", "O", word));
+			text.append(text.length() > 0 ? " " : "").append(word);
+		}
+		PipelineSentenceList result = new PipelineSentenceList();
+		result.add(new PipelineSentence(text.toString(), tokens, new PipelineDependencyList()));
+		return result;
+	}
+
+	public static String hitsAndMisses() {
+		PipelineCache cache = new PipelineCache(10);
+		PipelineSentenceList a = result("a");
+
+		if (cache.get("a") != null || cache.getMisses() != 1) {
+			return "empty cache: misses = " + cache.getMisses();
+		}
+		cache.put("a", a);
+		if (cache.get("a") != a || cache.getHits() != 1) {
+			return "after put: hits = " + cache.getHits();
+		}
+		if (!a.isFrozen()) {
+			return "cached result is not frozen";
+		}
+		return cache.get("b") == null && cache.getMisses() == 2 ? "" : "b was found";
+	}
+
+	public static String evictByCount() {
+		PipelineCache cache = new PipelineCache(2);
+		cache.put("a", result("a"));
+		cache.put("b", result("b"));
+		cache.get("a");
+		cache.put("c", result("c"));
+
+		if (cache.size() != 2 || cache.getEvictions() != 1) {
+			return "size " + cache.size() + ", evictions " + cache.getEvictions();
+		}
+		return cache.get("b") == null && cache.get("a") != null && cache.get("c") != null
+			? "" : "evicted the wrong entry";
+	}
+
+	public static String evictByWeight() {
+		PipelineCache cache = new PipelineCache(100, 10, null);
+		cache.put("a", result("one", "two", "three", "four"));
+		cache.put("b", result("one", "two", "three", "four"));
+		if (cache.getWeight() != 10 || cache.getEvictions() != 0) {
+			return "weight " + cache.getWeight() + " after two results";
+		}
+		cache.put("c", result("one", "two"));
+		if (cache.getWeight() != 8 || cache.size() != 2 || cache.get("a") != null) {
+			return "weight " + cache.getWeight() + ", size " + cache.size() + " after a third";
+		}
+
+		// one result over the limit is still kept
+		cache.put("d", result("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11"));
+		return cache.size() == 1 && cache.get("d") != null ? "" : "size " + cache.size() + " with a heavy result";
+	}
+
+	public static String diskRoundTrip(String dir) {
+		String key = PipelineCache.key("signature", "Some text.");
+		new PipelineCache(10, Long.MAX_VALUE, new File(dir)).put(key, result("Some", "text."));
+
+		PipelineCache cache = new PipelineCache(10, Long.MAX_VALUE, new File(dir));
+		PipelineSentenceList back = cache.get(key);
+		if (back == null || cache.getDiskHits() != 1) {
+			return "not found on disk: " + cache.getLastDiskError();
+		}
+		if (!back.get(0).getSentence().equals("Some text.")
+				|| !back.get(0).getTokens().toCompactString().equals("Some/NN text./NN")) {
+			return "read back " + back;
+		}
+		if (!back.isFrozen() || cache.get(key) != back || cache.getHits() != 1) {
+			return "not kept in memory after reading it";
+		}
+		return cache.getDiskErrors() == 0 ? "" : "disk errors: " + cache.getLastDiskError();
+	}
+
+	public static String damagedFile(String dir) throws Exception {
+		String key  = PipelineCache.key("signature", "Damaged.");
+		File   file = new File(dir, key + ".ser");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("not a serialized result".getBytes("UTF-8"));
+		out.close();
+
+		PipelineCache cache = new PipelineCache(10, Long.MAX_VALUE, new File(dir));
+		if (cache.get(key) != null || cache.getMisses() != 1) {
+			return "damaged file was not a miss";
+		}
+		if (cache.getDiskErrors() != 1 || cache.getLastDiskError() == null) {
+			return "disk errors: " + cache.getDiskErrors();
+		}
+		return file.exists() ? "damaged file was kept" : "";
+	}
+
+	public static String foreignClass(String dir) throws Exception {
+		String key  = PipelineCache.key("signature", "Foreign.");
+		File   file = new File(dir, key + ".ser");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+		out.writeObject(new Date());
+		out.close();
+
+		PipelineCache cache = new PipelineCache(10, Long.MAX_VALUE, new File(dir));
+		if (cache.get(key) != null || cache.getDiskErrors() != 1) {
+			return "disk errors: " + cache.getDiskErrors();
+		}
+		if (!(cache.getLastDiskError() instanceof InvalidClassException)) {
+			return "last error: " + cache.getLastDiskError();
+		}
+		return file.exists() ? "foreign file was kept" : "";
+	}
+
+	static Properties props(String... pairs) {
+		Properties props = new Properties();
+		props.setProperty("annotators", "tokenize, ssplit, pos");
+		props.setProperty("pos.model", "tagger");
+		for (int i = 0; i < pairs.length; i += 2) {
+			props.setProperty(pairs[i], pairs[i + 1]);
+		}
+		return props;
+	}
+
+	public static String sameSignature() {
+		String sig = PipelineCache.signature(props());
+		String[][] variants = {
+			{ "lingua.threads", "4", "lingua.sentence-threads", "2" },
+			{ "lingua.cache-size", "100", "lingua.cache-dir", "/tmp/elsewhere" },
+			{ "lingua.metrics", "true", "lingua.metrics-name", "other" },
+			{ "lingua.timeout", "1000", "lingua.max-input", "5000", "lingua.queue-size", "8" },
+			{ "parse.model", "unused", "dcoref.sievePasses", "unused" }
+		};
+		for (String[] v : variants) {
+			if (!PipelineCache.signature(props(v)).equals(sig)) {
+				return "signature changed with " + v[0];
+			}
+		}
+		return "";
+	}
+
+	public static String otherSignature() {
+		String sig = PipelineCache.signature(props());
+		String[][] variants = {
+			{ "annotators", "tokenize, ssplit" },
+			{ "pos.model", "other" },
+			{ "tokenize.options", "americanize=false" },
+			{ "lingua.dependency-mode", "basic" },
+			{ "lingua.layers", "tokens" },
+			{ "lingua.max-sentence-length", "40" }
+		};
+		for (String[] v : variants) {
+			if (PipelineCache.signature(props(v)).equals(sig)) {
+				return "signature did not change with " + v[0];
+			}
+		}
+		return "";
+	}
+}
@@ -0,0 +1,284 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## PipelineSentenceCache, with stub annotators standing in for the CoreNLP
+## models.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+my $pipeline = CachingPipeline->create(10);
+my $cache    = $pipeline->getSentenceCache;
+
+$pipeline->process('Jane met Bob. Bob left.');
+is($cache->getMisses, 2, 'Lingua::StanfordCoreNLP::PipelineSentenceCache->getMisses()');
+is($cache->getHits, 0, 'Lingua::StanfordCoreNLP::PipelineSentenceCache->getHits()');
+is($cache->size, 2, 'Lingua::StanfordCoreNLP::PipelineSentenceCache->size()');
+
+$pipeline->process('Bob left. Jane stayed.');
+is($cache->getHits, 1, 'Lingua::StanfordCoreNLP::PipelineSentenceCache hit on a sentence seen before');
+is($cache->getMisses, 3, 'Lingua::StanfordCoreNLP::PipelineSentenceCache miss on a new one');
+is($cache->getHitRate, 0.25, 'Lingua::StanfordCoreNLP::PipelineSentenceCache->getHitRate()');
+is(CachingPipeline->tagged, 7, 'Lingua::StanfordCoreNLP::PipelineSentenceCache hits skip the sentence annotators');
+
+is(
+	SentenceCacheCheck->sameAsUncached('Jane met Bob. Bob left. Jane met Bob.'),
+	'',
+	'Lingua::StanfordCoreNLP::PipelineSentenceCache restores what process() found'
+);
+is(
+	SentenceCacheCheck->ownIDs('Jane met Bob. Bob left.'),
+	'',
+	'Lingua::StanfordCoreNLP::PipelineSentenceCache hits get tokens with IDs of their own'
+);
+is(
+	SentenceCacheCheck->mutable('Jane met Bob. Bob left.'),
+	'',
+	'Lingua::StanfordCoreNLP::PipelineSentenceCache leaves the lists process() returns open to change'
+);
+is(
+	SentenceCacheCheck->restoredForCoref('Jane met Bob. Bob left.', 'Bob left. Jane met Bob.'),
+	'',
+	'Lingua::StanfordCoreNLP::PipelineSentenceCache gives dcoref dependency graphs of the new document'
+);
+is(SentenceCacheCheck->eviction, '', 'Lingua::StanfordCoreNLP::PipelineSentenceCache evicts the least recently used sentence');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.trees.EnglishGrammaticalRelations;
+import edu.stanford.nlp.trees.semgraph.SemanticGraph;
+import edu.stanford.nlp.trees.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceCache;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class CachingPipeline extends be.fivebyfive.lingua.stanfordcorenlp.Pipeline {
+	// tokens the pos stub has tagged, over all pipelines
+	static int tagged = 0;
+
+	// what the dcoref stub found wrong with the graphs it was given
+	final StringBuilder corefErrors = new StringBuilder();
+	final Set<IndexedWord> corefNodes = Collections.newSetFromMap(new IdentityHashMap<IndexedWord, Boolean>());
+
+	public CachingPipeline(Properties props) {
+		super(props);
+	}
+
+	public static CachingPipeline create(int size) {
+		return create(size, "tokenize, ssplit, pos, parse");
+	}
+
+	public static CachingPipeline create(int size, String annotators) {
+		Properties props = new Properties();
+		props.setProperty("annotators", annotators);
+		if (size > 0) {
+			props.setProperty("lingua.sentence-cache-size", "" + size);
+		}
+		CachingPipeline pipeline = new CachingPipeline(props);
+		pipeline.initPipeline();
+		return pipeline;
+	}
+
+	public static int tagged() {
+		return tagged;
+	}
+
+	protected Annotator createAnnotator(String name, Properties props) {
+		if (name.equals("tokenize")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+					String          text   = doc.get(TextAnnotation.class);
+					int             end    = 0;
+					for (String word : text.trim().split("\\s+")) {
+						CoreLabel token = new CoreLabel();
+						token.set(TextAnnotation.class, word);
+						token.setWord(word);
+						token.setBeginPosition(text.indexOf(word, end));
+						end = token.beginPosition() + word.length();
+						tokens.add(token);
+					}
+					doc.set(TokensAnnotation.class, tokens);
+				}
+			};
+		} else if (name.equals("ssplit")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					List<CoreMap>   sentences = new ArrayList<CoreMap>();
+					List<CoreLabel> tokens    = new ArrayList<CoreLabel>();
+					StringBuilder   text      = new StringBuilder();
+					for (CoreLabel token : doc.get(TokensAnnotation.class)) {
+						tokens.add(token);
+						text.append(text.length() > 0 ? " " : "").append(token.word());
+						if (token.word().endsWith(".")) {
+							CoreMap sentence = new ArrayCoreMap();
+							sentence.set(TextAnnotation.class, text.toString());
+							sentence.set(TokensAnnotation.class, tokens);
+							sentences.add(sentence);
+							tokens = new ArrayList<CoreLabel>();
+							text   = new StringBuilder();
+						}
+					}
+					doc.set(SentencesAnnotation.class, sentences);
+				}
+			};
+		} else if (name.equals("pos")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+							token.setTag(Character.isUpperCase(token.word().charAt(0)) ? "NNP" : "VBD");
+							tagged++;
+						}
+					}
+				}
+			};
+		} else if (name.equals("parse")) {
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+						SemanticGraph graph = new SemanticGraph();
+						IndexedWord[] words = new IndexedWord[tokens.size() + 1];
+						for (int i = 1; i <= tokens.size(); i++) {
+							words[i] = new IndexedWord(tokens.get(i - 1));
+							words[i].setIndex(i);
+							graph.addVertex(words[i]);
+						}
+						graph.setRoot(words[2]);
+						graph.addEdge(words[2], words[1], EnglishGrammaticalRelations.NOMINAL_SUBJECT, 1.0);
+
+						sentence.set(CollapsedCCProcessedDependenciesAnnotation.class, graph);
+					}
+				}
+			};
+		} else if (name.equals("dcoref")) {
+			// checks that each node is new, and stands for the token it indexes
+			return new AnnotationPipeline() {
+				public void annotate(Annotation doc) {
+					for (CoreMap sentence : doc.get(SentencesAnnotation.class)) {
+						List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+						SemanticGraph   graph  = sentence.get(CollapsedCCProcessedDependenciesAnnotation.class);
+						for (IndexedWord node : graph.vertexSet()) {
+							CoreLabel token = tokens.get(node.index() - 1);
+							if (!corefNodes.add(node)) {
+								corefErrors.append(node.word()).append(" seen before; ");
+							}
+							if (node.beginPosition() != token.beginPosition() || !token.tag().equals(node.tag())) {
+								corefErrors.append(node.word()).append(" at ").append(node.beginPosition())
+									.append(", token at ").append(token.beginPosition()).append("; ");
+							}
+						}
+					}
+				}
+			};
+		}
+		return new AnnotationPipeline();
+	}
+}
+
+class SentenceCacheCheck {
+	public static String sameAsUncached(String text) {
+		String expected = CachingPipeline.create(0).process(text).toCompactString();
+		String got      = CachingPipeline.create(10).process(text).toCompactString();
+		return got.equals(expected) ? "" : "expected " + expected + ", got " + got;
+	}
+
+	public static String ownIDs(String text) {
+		CachingPipeline      pipeline = CachingPipeline.create(10);
+		PipelineSentenceList first    = pipeline.process(text);
+		PipelineSentenceList second   = pipeline.process(text);
+
+		if (pipeline.getSentenceCache().getHits() != 2) {
+			return "hits: " + pipeline.getSentenceCache().getHits();
+		}
+		PipelineTokenList all = new PipelineTokenList();
+		for (int i = 0; i < first.size(); i++) {
+			all.addAll(first.get(i).getTokens());
+			all.addAll(second.get(i).getTokens());
+
+			PipelineToken gov = second.get(i).getDependencies().get(0).getGovernor();
+			if (gov != second.get(i).getTokens().get(1)) {
+				return "sentence " + i + ": dependency does not point into its own tokens";
+			}
+		}
+		if (all.toIDMap().size() != all.size()) {
+			return all.size() + " tokens, but " + all.toIDMap().size() + " IDs";
+		}
+		return second.get(0).getTokens().isFrozen() ? "restored tokens are frozen" : "";
+	}
+
+	// changes the lists of a missed and of a restored sentence, then checks
+	// that the cache still hands back what it had
+	public static String mutable(String text) {
+		CachingPipeline      pipeline = CachingPipeline.create(10);
+		PipelineSentenceList first    = pipeline.process(text);
+		String               expected = first.toCompactString();
+		PipelineSentenceList second   = pipeline.process(text);
+
+		try {
+			for (PipelineSentenceList result : Arrays.asList(first, second)) {
+				result.get(0).getTokens().add(new PipelineToken("extra", "NN", "O", "extra"));
+				result.get(0).getTokens().remove(0);
+				result.get(0).getDependencies().clear();
+			}
+		} catch (UnsupportedOperationException e) {
+			return "process() returned a frozen list";
+		}
+		String got = pipeline.process(text).toCompactString();
+		return got.equals(expected) ? "" : "expected " + expected + ", got " + got;
+	}
+
+	public static String restoredForCoref(String first, String second) {
+		CachingPipeline pipeline = CachingPipeline.create(10, "tokenize, ssplit, pos, parse, dcoref");
+		pipeline.process(first);
+		pipeline.process(second);
+		if (pipeline.getSentenceCache().getHits() != 2) {
+			return "hits: " + pipeline.getSentenceCache().getHits();
+		}
+		return pipeline.corefErrors.toString();
+	}
+
+	public static String eviction() {
+		CachingPipeline       pipeline = CachingPipeline.create(2);
+		PipelineSentenceCache cache    = pipeline.getSentenceCache();
+
+		pipeline.process("Jane met Bob. Bob left.");
+		pipeline.process("Jane met Bob. Jane stayed.");
+		if (cache.size() != 2 || cache.getEvictions() != 1) {
+			return "size " + cache.size() + ", evictions " + cache.getEvictions();
+		}
+		pipeline.process("Bob left.");
+		return cache.getMisses() == 4 && cache.getHits() == 1 ? "" : "Bob left. was not evicted";
+	}
+}
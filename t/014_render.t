@@ -0,0 +1,137 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## writeTo and writeCompactTo against the strings the items have always
+## rendered to.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+is(Render->token(0), 'Jane/jane/NNP/PERSON', 'Lingua::StanfordCoreNLP::PipelineToken->writeTo()');
+is(Render->token(1), 'jane/NNP', 'Lingua::StanfordCoreNLP::PipelineToken->writeCompactTo()');
+is(Render->tokens(0), "Jane/jane/NNP/PERSON met/meet/VBD/O Bob./bob/NNP/PERSON", 'Lingua::StanfordCoreNLP::PipelineTokenList->writeTo()');
+is(Render->tokens(1), "jane/NNP meet/VBD bob/NNP", 'Lingua::StanfordCoreNLP::PipelineTokenList->writeCompactTo()');
+is(Render->sentence(0), Render->joined("\n\n"), 'Lingua::StanfordCoreNLP::PipelineSentence->writeTo()');
+is(Render->sentence(1), Render->joined("\n"), 'Lingua::StanfordCoreNLP::PipelineSentence->writeCompactTo()');
+is(Render->consistent, '', 'Lingua::StanfordCoreNLP::PipelineItem->toString() and toCompactString() agree with writeTo()');
+
+is(Render->withEmpty(['', 'a', '', 'b']), "a\n\nb", 'Lingua::StanfordCoreNLP::PipelineList skips the separator until something is written');
+is(Render->withEmpty(['', '']), '', 'Lingua::StanfordCoreNLP::PipelineList of empty elements renders empty');
+is(Render->withEmpty(['a', 'b']), "a\nb", 'Lingua::StanfordCoreNLP::PipelineList->joinList()');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.io.IOException;
+import java.io.StringWriter;
+
+import edu.stanford.nlp.trees.EnglishGrammaticalRelations;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependency;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependencyList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineItem;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentenceList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class Render {
+	static PipelineTokenList tokenList() {
+		PipelineTokenList tokens = new PipelineTokenList();
+		tokens.add(new PipelineToken("Jane", "NNP", "PERSON", "jane"));
+		tokens.add(new PipelineToken("met", "VBD", "O", "meet"));
+		tokens.add(new PipelineToken("Bob.", "NNP", "PERSON", "bob"));
+		return tokens;
+	}
+
+	static PipelineSentence sentence() {
+		PipelineTokenList      tokens = tokenList();
+		PipelineDependencyList deps   = new PipelineDependencyList();
+		deps.add(new PipelineDependency(tokens.get(1), tokens.get(0), 1, 0, EnglishGrammaticalRelations.NOMINAL_SUBJECT));
+		deps.add(new PipelineDependency(tokens.get(1), tokens.get(2), 1, 2, EnglishGrammaticalRelations.DIRECT_OBJECT));
+		return new PipelineSentence("Jane met Bob.", tokens, deps);
+	}
+
+	// through a Writer rather than a StringBuilder
+	static String write(PipelineItem item, boolean compact) throws IOException {
+		StringWriter out = new StringWriter();
+		if (compact) {
+			item.writeCompactTo(out);
+		} else {
+			item.writeTo(out);
+		}
+		return out.toString();
+	}
+
+	static String write(PipelineList<?> list, boolean compact) throws IOException {
+		StringWriter out = new StringWriter();
+		if (compact) {
+			list.writeCompactTo(out);
+		} else {
+			list.writeTo(out);
+		}
+		return out.toString();
+	}
+
+	public static String token(int compact) throws IOException {
+		return write(tokenList().get(0), compact != 0);
+	}
+
+	public static String tokens(int compact) throws IOException {
+		return write(tokenList(), compact != 0);
+	}
+
+	public static String sentence(int compact) throws IOException {
+		return write(sentence(), compact != 0);
+	}
+
+	// PipelineSentence as it was rendered before writeTo existed
+	public static String joined(String sep) {
+		PipelineSentence s = sentence();
+		String tokens = "";
+		for (PipelineToken t : s.getTokens()) {
+			tokens += (tokens.length() > 0 ? " " : "") + t.getWord() + "/" + t.getLemma() + "/" + t.getPOSTag() + "/" + t.getNERTag();
+		}
+		String deps = "";
+		for (PipelineDependency d : s.getDependencies()) {
+			deps += (deps.length() > 0 ? "\n" : "") + d.toString();
+		}
+		return s.getSentence() + sep + tokens + sep + deps + sep;
+	}
+
+	public static String consistent() throws IOException {
+		PipelineSentenceList list = new PipelineSentenceList();
+		list.add(sentence());
+		list.add(sentence());
+
+		if (!write(list, false).equals(list.toString())) {
+			return "sentence list: " + write(list, false);
+		}
+		if (!write(list, true).equals(list.toCompactString())) {
+			return "compact sentence list: " + write(list, true);
+		}
+		PipelineDependency dep = list.get(0).getDependencies().get(0);
+		if (!write(dep, false).equals(dep.toString()) || !write(dep, true).equals(dep.toCompactString())) {
+			return "dependency: " + write(dep, false);
+		}
+		return "";
+	}
+
+	public static String withEmpty(String[] elements) {
+		PipelineList<String> list = new PipelineList<String>();
+		for (String e : elements) {
+			list.add(e);
+		}
+		return list.joinList("\n");
+	}
+}
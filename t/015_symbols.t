@@ -0,0 +1,123 @@
+#!/usr/bin/perl
+
+use Test::More;
+
+##
+## PipelineSymbolTable, and the tokens and dependencies whose labels do not
+## fit in it.
+##
+BEGIN {
+	use_ok('Lingua::StanfordCoreNLP');
+}
+
+use Inline (
+	Java      => 'DATA',
+	CLASSPATH => $Lingua::StanfordCoreNLP::JAR_PATH,
+);
+
+is(Symbols->table, '', 'Lingua::StanfordCoreNLP::PipelineSymbolTable stops at its limit');
+is(Symbols->fillTables, '', 'the shared tables fill up');
+is(Symbols->token, '', 'Lingua::StanfordCoreNLP::PipelineToken keeps tags without a code');
+is(Symbols->dependency, '', 'Lingua::StanfordCoreNLP::PipelineDependency keeps relations without a code');
+is(Symbols->roundTrip, '', 'labels without a code survive serialization');
+
+done_testing;
+
+__DATA__
+__Java__
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependency;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineDependencyList;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSentence;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineSymbolTable;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineToken;
+import be.fivebyfive.lingua.stanfordcorenlp.PipelineTokenList;
+
+class Symbols {
+	public static String table() {
+		PipelineSymbolTable table = new PipelineSymbolTable(2);
+		short nn  = table.code("NN");
+		short vbd = table.code("VBD");
+		if (nn != 0 || vbd != 1 || table.code("NN") != 0) {
+			return "codes " + nn + ", " + vbd;
+		}
+		if (table.code("JJ") != PipelineSymbolTable.UNCODED || table.size() != 2) {
+			return "a third symbol got a code";
+		}
+		if (table.find("VBD") != 1 || table.code(null) != PipelineSymbolTable.NONE) {
+			return "find or null";
+		}
+		return table.symbol(1).equals("VBD") && table.symbol(PipelineSymbolTable.UNCODED) == null
+			? "" : "symbol()";
+	}
+
+	// every shared table to its limit, so that the labels below get no code
+	public static String fillTables() {
+		PipelineSymbolTable[] tables = {
+			PipelineSymbolTable.POS_TAGS, PipelineSymbolTable.NER_TAGS,
+			PipelineSymbolTable.RELATIONS, PipelineSymbolTable.LONG_RELATIONS
+		};
+		for (PipelineSymbolTable table : tables) {
+			for (int i = 0; table.size() < table.getLimit(); i++) {
+				table.code("filler-" + i);
+			}
+			if (table.code("one too many") != PipelineSymbolTable.UNCODED) {
+				return "a full table took another symbol";
+			}
+		}
+		return "";
+	}
+
+	public static String token() {
+		PipelineToken token = new PipelineToken("Jane", "NNP-odd", "PERSON-odd", "jane");
+		if (token.getPOSCode() != PipelineSymbolTable.UNCODED || token.getNERCode() != PipelineSymbolTable.UNCODED) {
+			return "codes " + token.getPOSCode() + ", " + token.getNERCode();
+		}
+		if (!token.toString().equals("Jane/jane/NNP-odd/PERSON-odd")) {
+			return "token " + token;
+		}
+		PipelineToken copy = new PipelineToken(token);
+		return copy.getPOSTag().equals("NNP-odd") && copy.getNERTag().equals("PERSON-odd")
+			? "" : "copy " + copy;
+	}
+
+	static PipelineSentence sentence() {
+		PipelineTokenList tokens = new PipelineTokenList();
+		tokens.add(new PipelineToken("Jane", "NNP-odd", "PERSON-odd", "jane"));
+		tokens.add(new PipelineToken("left", "VBD", "O", "leave"));
+		PipelineDependencyList deps = new PipelineDependencyList();
+		deps.add(new PipelineDependency(tokens.get(1), tokens.get(0), 1, 0, "nsubj-odd", "odd subject"));
+		return new PipelineSentence("Jane left", tokens, deps);
+	}
+
+	public static String dependency() {
+		PipelineSentence   s = sentence();
+		PipelineDependency d = s.getDependencies().get(0);
+		if (d.getRelationCode() != PipelineSymbolTable.UNCODED) {
+			return "code " + d.getRelationCode();
+		}
+		if (!d.getRelation().equals("nsubj-odd") || !d.getLongRelation().equals("odd subject")) {
+			return "relation " + d.getRelation() + ", " + d.getLongRelation();
+		}
+		PipelineDependency copy = new PipelineDependency(d, d.getGovernor(), d.getDependent());
+		return copy.getRelation().equals("nsubj-odd") && copy.getLongRelation().equals("odd subject")
+			? "" : "copy " + copy.getRelation();
+	}
+
+	public static String roundTrip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream    out   = new ObjectOutputStream(bytes);
+		out.writeObject(sentence());
+		out.close();
+
+		PipelineSentence back = (PipelineSentence)new ObjectInputStream(
+			new ByteArrayInputStream(bytes.toByteArray())
+		).readObject();
+		String expected = sentence().toString();
+		return back.toString().equals(expected) ? "" : "expected " + expected + ", got " + back;
+	}
+}